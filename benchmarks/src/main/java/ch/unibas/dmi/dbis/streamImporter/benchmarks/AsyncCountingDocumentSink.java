@@ -0,0 +1,75 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.benchmarks;
+
+import ch.unibas.dmi.dbis.streamImporter.storage.AsyncDocumentSink;
+import ch.unibas.dmi.dbis.streamImporter.storage.InsertCallback;
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting document sink which completes its inserts asynchronously after the simulated insert latency (without blocking a thread per insert).
+ */
+public class AsyncCountingDocumentSink extends CountingDocumentSink implements AsyncDocumentSink {
+
+    /**
+     * Timer which completes the inserts (shared by all asynchronous sinks like the event loop of a driver)
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "AsyncCountingDocumentSink-Timer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Simulated insert latency (in ms) per batch
+     */
+    private final long insertLatency;
+
+    /**
+     * AsyncCountingDocumentSink constructor.
+     *
+     * @param name          Name of the collection
+     * @param insertLatency Simulated insert latency (in ms) per batch
+     */
+    public AsyncCountingDocumentSink(String name, long insertLatency) {
+        super(name, insertLatency);
+        this.insertLatency = insertLatency;
+    }
+
+    @Override
+    public void insertManyAsync(final List<RawBsonDocument> documents, final InsertCallback callback) {
+        TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                count(documents);
+                callback.onSuccess();
+            }
+        }, this.insertLatency, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.benchmarks;
+
+import ch.unibas.dmi.dbis.streamImporter.dataItems.DataItem;
+import ch.unibas.dmi.dbis.streamImporter.dataItems.DataItemEncoder;
+import ch.unibas.dmi.dbis.streamImporter.decoding.DataStreamElementFactoryRegistry;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the steps of the conversion of a Kafka record to a BSON document (decoding via the generic path and via the factory registry, DataItem construction, toDocument, and BSON encoding).
+ * Run with "java -jar target/benchmarks.jar -prof gc" or via the main method (which adds the GC profiler to report the allocation rate).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    /**
+     * Codec which is used by the collection writers to encode documents
+     */
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    /**
+     * Encoder context which writes the _id as first field (as done by the collection writers)
+     */
+    private static final EncoderContext COLLECTIBLE_ENCODER_CONTEXT = EncoderContext.builder().isEncodingCollectibleDocument(true).build();
+
+    /**
+     * Stream category of the synthetic elements
+     */
+    @Param({"STATE", "EVENT", "STATISTICS"})
+    public AbstractImmutableDataStreamElement.StreamCategory category;
+
+    /**
+     * Serialized data stream element (as received from Kafka)
+     */
+    private byte[] contentByteArray;
+
+    /**
+     * Registry of the factories which create the data stream elements (with the factory of the topic already resolved)
+     */
+    private DataStreamElementFactoryRegistry dataStreamElementFactoryRegistry;
+
+    /**
+     * Decoded data stream element
+     */
+    private AbstractImmutableDataStreamElement dataStreamElement;
+
+    /**
+     * Data item generated from the data stream element
+     */
+    private DataItem dataItem;
+
+    /**
+     * Document generated from the data item
+     */
+    private Document document;
+
+    /**
+     * Generates the synthetic element and the intermediate results of all steps.
+     *
+     * @throws Exception Thrown if the synthetic element cannot be generated or converted
+     */
+    @Setup
+    public void setup() throws Exception {
+        this.contentByteArray = SyntheticPayloads.generateByteArray(this.category);
+        this.dataStreamElement = decode();
+        this.dataStreamElementFactoryRegistry = new DataStreamElementFactoryRegistry();
+        decodeWithFactoryRegistry();
+        this.dataItem = constructDataItem();
+        this.document = toDocument();
+        this.document.put("_id", new ObjectId());
+    }
+
+    /**
+     * Decodes the serialized data stream element.
+     *
+     * @return Data stream element
+     * @throws Exception Thrown if the element cannot be decoded
+     */
+    @Benchmark
+    public AbstractImmutableDataStreamElement decode() throws Exception {
+        return AbstractImmutableDataStreamElement.generateDataStreamElementFromByteArray(SyntheticPayloads.MATCH_ID, this.contentByteArray, 0L, null, null);
+    }
+
+    /**
+     * Decodes the serialized data stream element with the factory the registry has resolved for its topic.
+     *
+     * @return Data stream element
+     * @throws Exception Thrown if the element cannot be decoded
+     */
+    @Benchmark
+    public AbstractImmutableDataStreamElement decodeWithFactoryRegistry() throws Exception {
+        return this.dataStreamElementFactoryRegistry.create(this.dataStreamElement.getStreamName(), SyntheticPayloads.MATCH_ID, this.contentByteArray, 0L);
+    }
+
+    /**
+     * Constructs the data item.
+     *
+     * @return Data item
+     * @throws Exception Thrown if an information could not be retrieved from the data stream element
+     */
+    @Benchmark
+    public DataItem constructDataItem() throws Exception {
+        return new DataItem(this.dataStreamElement, SyntheticPayloads.GENERATION_TIMESTAMP_FIRST_DATA_STREAM_ELEMENT, SyntheticPayloads.MATCH_START_VIDEO_OFFSET);
+    }
+
+    /**
+     * Generates the document from the data item.
+     *
+     * @return Document
+     */
+    @Benchmark
+    public Document toDocument() {
+        return this.dataItem.toDocument();
+    }
+
+    /**
+     * Encodes the document to BSON (as done by the collection writers for documents).
+     *
+     * @return BSON document
+     */
+    @Benchmark
+    public RawBsonDocument encodeDocument() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            DOCUMENT_CODEC.encode(writer, this.document, COLLECTIBLE_ENCODER_CONTEXT);
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    /**
+     * Converts the data stream element via DataItem, toDocument, and the document codec (complete conversion of the generic path).
+     *
+     * @return BSON document
+     * @throws Exception Thrown if an information could not be retrieved from the data stream element
+     */
+    @Benchmark
+    public RawBsonDocument convertViaDocument() throws Exception {
+        Document document = new DataItem(this.dataStreamElement, SyntheticPayloads.GENERATION_TIMESTAMP_FIRST_DATA_STREAM_ELEMENT, SyntheticPayloads.MATCH_START_VIDEO_OFFSET).toDocument();
+        document.put("_id", new ObjectId());
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            DOCUMENT_CODEC.encode(writer, document, COLLECTIBLE_ENCODER_CONTEXT);
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    /**
+     * Converts the data stream element with the DataItemEncoder (complete conversion as done by the consumption loop).
+     *
+     * @return BSON document
+     * @throws Exception Thrown if an information could not be retrieved from the data stream element
+     */
+    @Benchmark
+    public RawBsonDocument convertDirectly() throws Exception {
+        return DataItemEncoder.encode(this.dataStreamElement, SyntheticPayloads.GENERATION_TIMESTAMP_FIRST_DATA_STREAM_ELEMENT, SyntheticPayloads.MATCH_START_VIDEO_OFFSET, new BsonObjectId(new ObjectId()));
+    }
+
+    /**
+     * Runs all benchmarks of this class with the GC profiler (which reports the allocation rate).
+     *
+     * @param args Parameters (not used)
+     * @throws RunnerException Thrown if the benchmarks cannot be run
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ConversionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.benchmarks;
+
+import ch.unibas.dmi.dbis.streamImporter.storage.DocumentSink;
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Document sink which only counts the documents (optionally with a simulated insert latency per batch).
+ */
+public class CountingDocumentSink implements DocumentSink {
+
+    /**
+     * Name of the collection
+     */
+    private final String name;
+
+    /**
+     * Simulated insert latency (in ms) per batch
+     */
+    private final long insertLatency;
+
+    /**
+     * Number of inserted documents
+     */
+    private final AtomicLong documents;
+
+    /**
+     * BSON size (in bytes) of the inserted documents
+     */
+    private final AtomicLong bytes;
+
+    /**
+     * Number of inserted batches
+     */
+    private final AtomicLong batches;
+
+    /**
+     * CountingDocumentSink constructor.
+     *
+     * @param name          Name of the collection
+     * @param insertLatency Simulated insert latency (in ms) per batch
+     */
+    public CountingDocumentSink(String name, long insertLatency) {
+        this.name = name;
+        this.insertLatency = insertLatency;
+        this.documents = new AtomicLong();
+        this.bytes = new AtomicLong();
+        this.batches = new AtomicLong();
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public void insertMany(List<RawBsonDocument> documents) {
+        if (this.insertLatency > 0) {
+            try {
+                Thread.sleep(this.insertLatency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        count(documents);
+    }
+
+    /**
+     * Counts the documents of an inserted batch.
+     *
+     * @param documents Documents
+     */
+    void count(List<RawBsonDocument> documents) {
+        long batchBytes = 0;
+        for (RawBsonDocument document : documents) {
+            batchBytes += document.getByteBuffer().remaining();
+        }
+        this.bytes.addAndGet(batchBytes);
+        this.batches.incrementAndGet();
+        this.documents.addAndGet(documents.size());
+    }
+
+    /**
+     * Returns the number of inserted documents.
+     *
+     * @return Number of inserted documents
+     */
+    public long getDocuments() {
+        return this.documents.get();
+    }
+
+    /**
+     * Returns the BSON size (in bytes) of the inserted documents.
+     *
+     * @return BSON size (in bytes)
+     */
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * Returns the number of inserted batches.
+     *
+     * @return Number of inserted batches
+     */
+    public long getBatches() {
+        return this.batches.get();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.benchmarks;
+
+import ch.unibas.dmi.dbis.streamImporter.offsets.OffsetStore;
+import ch.unibas.dmi.dbis.streamImporter.storage.DocumentSink;
+import ch.unibas.dmi.dbis.streamImporter.storage.Storage;
+import org.apache.kafka.common.TopicPartition;
+import org.bson.Document;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for MongoDB with counting document sinks.
+ */
+public class InMemoryStorage implements Storage {
+
+    /**
+     * Simulated insert latency (in ms) per batch
+     */
+    private final long insertLatency;
+
+    /**
+     * Flag that indicates if the document sinks insert asynchronously
+     */
+    private final boolean asyncInserts;
+
+    /**
+     * Match contexts which are returned at startup
+     */
+    private final List<Document> matchContexts;
+
+    /**
+     * Document sink per collection
+     */
+    private final Map<String, CountingDocumentSink> documentSinks;
+
+    /**
+     * Stored offsets
+     */
+    private final Map<TopicPartition, Long> offsets;
+
+    /**
+     * InMemoryStorage constructor.
+     *
+     * @param insertLatency Simulated insert latency (in ms) per batch
+     * @param asyncInserts  Flag that indicates if the document sinks insert asynchronously (like the reactive streams driver)
+     * @param matchContexts Match contexts which are returned at startup
+     */
+    public InMemoryStorage(long insertLatency, boolean asyncInserts, List<Document> matchContexts) {
+        this.insertLatency = insertLatency;
+        this.asyncInserts = asyncInserts;
+        this.matchContexts = matchContexts;
+        this.documentSinks = new ConcurrentHashMap<>();
+        this.offsets = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public DocumentSink getDocumentSink(String collectionName) {
+        CountingDocumentSink documentSink = this.documentSinks.get(collectionName);
+        if (documentSink == null) {
+            documentSink = this.asyncInserts ? new AsyncCountingDocumentSink(collectionName, this.insertLatency) : new CountingDocumentSink(collectionName, this.insertLatency);
+            this.documentSinks.put(collectionName, documentSink);
+        }
+        return documentSink;
+    }
+
+    @Override
+    public OffsetStore getOffsetStore(String collectionName, String groupId) {
+        return new OffsetStore() {
+            @Override
+            public Map<TopicPartition, Long> load(Collection<TopicPartition> topicPartitions) {
+                Map<TopicPartition, Long> storedOffsets = new HashMap<>();
+                for (TopicPartition topicPartition : topicPartitions) {
+                    Long offset = InMemoryStorage.this.offsets.get(topicPartition);
+                    if (offset != null) {
+                        storedOffsets.put(topicPartition, offset);
+                    }
+                }
+                return storedOffsets;
+            }
+
+            @Override
+            public void store(Map<TopicPartition, Long> offsets) {
+                InMemoryStorage.this.offsets.putAll(offsets);
+            }
+        };
+    }
+
+    @Override
+    public List<Document> loadMatchContexts(String collectionName) {
+        return this.matchContexts;
+    }
+
+    @Override
+    public int dropSecondaryIndexes(String collectionName, String droppedIndexesCollectionName) {
+        return 0; // the in-memory collections have no indexes
+    }
+
+    @Override
+    public int rebuildSecondaryIndexes(String collectionName, String droppedIndexesCollectionName) {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns the document sinks of all collections.
+     *
+     * @return Document sinks
+     */
+    public Collection<CountingDocumentSink> getDocumentSinks() {
+        return this.documentSinks.values();
+    }
+
+    /**
+     * Returns the number of inserted documents (over all collections).
+     *
+     * @return Number of inserted documents
+     */
+    public long getDocuments() {
+        long documents = 0;
+        for (CountingDocumentSink documentSink : this.documentSinks.values()) {
+            documents += documentSink.getDocuments();
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.benchmarks;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.football.BallPossessionStatisticsStreamElement;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.football.FieldObjectStateStreamElement;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.football.KickEventStreamElement;
+import ch.unibas.dmi.dbis.streamTeam.dataStructures.Geometry;
+
+/**
+ * Generator for synthetic data stream elements (such that the benchmarks run without Kafka and without recorded matches).
+ * All dependencies on the element specific factory methods of the data model are kept in this class.
+ */
+public final class SyntheticPayloads {
+
+    /**
+     * Match identifier of the synthetic elements
+     */
+    public static final String MATCH_ID = "benchmarkMatch";
+
+    /**
+     * Generation timestamp (in ms) of the first data stream element of the synthetic match
+     */
+    public static final long GENERATION_TIMESTAMP_FIRST_DATA_STREAM_ELEMENT = 1500000000000L;
+
+    /**
+     * Video offset (in s) of the start of the synthetic match
+     */
+    public static final long MATCH_START_VIDEO_OFFSET = 30L;
+
+    /**
+     * Generation timestamp (in ms) of the synthetic elements (20 minutes after the first element of the match)
+     */
+    private static final long GENERATION_TIMESTAMP = GENERATION_TIMESTAMP_FIRST_DATA_STREAM_ELEMENT + 20 * 60 * 1000;
+
+    /**
+     * SyntheticPayloads constructor (not instantiable).
+     */
+    private SyntheticPayloads() {
+    }
+
+    /**
+     * Generates a synthetic data stream element of the given category.
+     *
+     * @param category Stream category (STATE, EVENT, or STATISTICS)
+     * @return Data stream element
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if the element cannot be generated
+     */
+    public static AbstractImmutableDataStreamElement generate(AbstractImmutableDataStreamElement.StreamCategory category) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException {
+        switch (category) {
+            case STATE: // position of a single player (one position, as most tracking data)
+                return FieldObjectStateStreamElement.generateFieldObjectStateStreamElement(MATCH_ID, GENERATION_TIMESTAMP, "A1", "A", new Geometry.Vector(12.3, -4.5, 0.0), new Geometry.Vector(1.2, 0.8, 0.0), 1.44);
+            case EVENT: // kick of a player (position of the player and of the ball)
+                return KickEventStreamElement.generateKickEventStreamElement(MATCH_ID, GENERATION_TIMESTAMP, "A1", "A", new Geometry.Vector(12.3, -4.5, 0.0), new Geometry.Vector(12.6, -4.4, 0.11), 17.5, 3L);
+            case STATISTICS: // ball possession of a team (no position)
+                return BallPossessionStatisticsStreamElement.generateBallPossessionStatisticsStreamElement(MATCH_ID, GENERATION_TIMESTAMP, "A", 613000L, 0.54);
+            default:
+                throw new IllegalArgumentException("No synthetic element for stream category " + category);
+        }
+    }
+
+    /**
+     * Generates the serialized form (as received from Kafka) of a synthetic data stream element of the given category.
+     *
+     * @param category Stream category (STATE, EVENT, or STATISTICS)
+     * @return Serialized data stream element
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if the element cannot be generated
+     */
+    public static byte[] generateByteArray(AbstractImmutableDataStreamElement.StreamCategory category) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException {
+        return generate(category).getContentAsByteArray();
+    }
+}
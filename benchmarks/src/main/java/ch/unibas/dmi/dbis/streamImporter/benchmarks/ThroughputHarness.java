@@ -0,0 +1,297 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.benchmarks;
+
+import ch.unibas.dmi.dbis.streamImporter.ConsumptionLoopStatistics;
+import ch.unibas.dmi.dbis.streamImporter.StreamImporter;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * End-to-end throughput harness which drives the complete consumption loop of the StreamImporter with synthetic data stream elements from a MockConsumer and writes to an in-memory storage.
+ * Reports the sustained throughput, the time spent in the stages of the consumption loop, and the heap usage.
+ * <p>
+ * Parameters: [number of elements (default: 1000000)] [simulated insert latency in ms per batch (default: 0)] [elements per poll (default: 500)]
+ */
+public class ThroughputHarness {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ThroughputHarness.class);
+
+    /**
+     * Stream categories of the synthetic elements in the order in which they are generated (mix of a typical match: mostly states)
+     */
+    private static final AbstractImmutableDataStreamElement.StreamCategory[] CATEGORY_MIX = {
+            AbstractImmutableDataStreamElement.StreamCategory.STATE, AbstractImmutableDataStreamElement.StreamCategory.STATE, AbstractImmutableDataStreamElement.StreamCategory.STATE,
+            AbstractImmutableDataStreamElement.StreamCategory.STATE, AbstractImmutableDataStreamElement.StreamCategory.STATE, AbstractImmutableDataStreamElement.StreamCategory.STATE,
+            AbstractImmutableDataStreamElement.StreamCategory.STATE, AbstractImmutableDataStreamElement.StreamCategory.STATE, AbstractImmutableDataStreamElement.StreamCategory.EVENT,
+            AbstractImmutableDataStreamElement.StreamCategory.STATISTICS
+    };
+
+    /**
+     * Interval (in ms) in which the progress is checked and the heap usage is sampled
+     */
+    private static final long SAMPLING_INTERVAL = 100;
+
+    /**
+     * Runs the harness.
+     *
+     * @param args Parameters
+     * @throws Exception Thrown if the harness cannot be set up
+     */
+    public static void main(String[] args) throws Exception {
+        long numberOfElements = args.length > 0 ? Long.parseLong(args[0]) : 1000000L;
+        long insertLatency = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+        int elementsPerPoll = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        boolean asyncInserts = args.length > 3 && Boolean.parseBoolean(args[3]);
+
+        Properties properties = loadImporterProperties();
+        properties.setProperty("kafka.pollTimeout", "10");
+        properties.setProperty("mongodb.writerStatisticsInterval", "3600000");
+        properties.setProperty("pending.spillDirectory", "");
+        properties.setProperty("metrics.httpPort", "-1");
+        properties.setProperty("metrics.jmxEnabled", "false");
+        properties.setProperty("states.bucketing", "false"); // the harness waits until one document per element has been written
+
+        // Synthetic payloads (one topic per category since the topic has to match the stream name of the element)
+        Map<AbstractImmutableDataStreamElement.StreamCategory, byte[]> payloads = new HashMap<>();
+        Map<AbstractImmutableDataStreamElement.StreamCategory, TopicPartition> topicPartitions = new HashMap<>();
+        for (AbstractImmutableDataStreamElement.StreamCategory category : CATEGORY_MIX) {
+            if (!payloads.containsKey(category)) {
+                AbstractImmutableDataStreamElement dataStreamElement = SyntheticPayloads.generate(category);
+                payloads.put(category, dataStreamElement.getContentAsByteArray());
+                topicPartitions.put(category, new TopicPartition(dataStreamElement.getStreamName(), 0));
+            }
+        }
+
+        // The match context is known from the start such that no element waits for a matchMetadata stream element
+        Document matchContext = new Document("matchId", SyntheticPayloads.MATCH_ID)
+                .append("generationTimestampFirstDataStreamElement", SyntheticPayloads.GENERATION_TIMESTAMP_FIRST_DATA_STREAM_ELEMENT)
+                .append("matchStartVideoOffset", SyntheticPayloads.MATCH_START_VIDEO_OFFSET);
+        InMemoryStorage storage = new InMemoryStorage(insertLatency, asyncInserts, Collections.singletonList(matchContext));
+
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        for (TopicPartition topicPartition : topicPartitions.values()) {
+            Node node = new Node(0, "localhost", 9092);
+            consumer.updatePartitions(topicPartition.topic(), Collections.singletonList(new PartitionInfo(topicPartition.topic(), 0, node, new Node[]{node}, new Node[]{node})));
+            beginningOffsets.put(topicPartition, 0L);
+        }
+        consumer.updateBeginningOffsets(beginningOffsets);
+        consumer.updateEndOffsets(beginningOffsets); // required for the consumer lag metric
+
+        final StreamImporter streamImporter = new StreamImporter(properties, consumer, storage);
+        Thread importerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                streamImporter.run();
+            }
+        }, "StreamImporter");
+        importerThread.start();
+
+        // Wait until the importer has subscribed all topics and assign their partitions
+        while (!consumer.subscription().containsAll(topicPartitionsToTopics(topicPartitions.values()))) {
+            Thread.sleep(SAMPLING_INTERVAL);
+        }
+        consumer.rebalance(new ArrayList<>(topicPartitions.values()));
+
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        long gcCountBefore = getGcCount();
+        long gcTimeBefore = getGcTime();
+        long maxHeapUsed = 0;
+        long startTime = System.nanoTime();
+
+        // Every poll returns the next elementsPerPoll records (generated lazily such that the harness itself does not occupy the heap)
+        Map<TopicPartition, Long> nextOffsets = new HashMap<>(beginningOffsets);
+        long scheduledElements = 0;
+        while (scheduledElements < numberOfElements) {
+            int elementsOfThisPoll = (int) Math.min(elementsPerPoll, numberOfElements - scheduledElements);
+            consumer.schedulePollTask(new RecordGenerator(consumer, payloads, topicPartitions, nextOffsets, scheduledElements, elementsOfThisPoll));
+            scheduledElements += elementsOfThisPoll;
+        }
+
+        while (storage.getDocuments() < numberOfElements) {
+            Thread.sleep(SAMPLING_INTERVAL);
+            maxHeapUsed = Math.max(maxHeapUsed, memoryMXBean.getHeapMemoryUsage().getUsed());
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        streamImporter.stop();
+        importerThread.join();
+
+        ConsumptionLoopStatistics statistics = streamImporter.getConsumptionLoopStatistics();
+        double elapsedSeconds = elapsedNanos / 1e9;
+        logger.info("Imported {} elements in {} s: {} elements/s", numberOfElements, String.format("%.2f", elapsedSeconds), String.format("%.0f", numberOfElements / elapsedSeconds));
+        logger.info("Consumption loop: {} polls, poll {} ms, prepare {} ms (decode {} ms summed over all decode workers), handling and batching {} ms (incl. waiting for the collection writers)", statistics.getPolls(), statistics.getPollNanos() / 1000000, statistics.getPrepareNanos() / 1000000, statistics.getDecodeNanos() / 1000000, statistics.getHandleNanos() / 1000000);
+        logger.info("Per element: prepare {} ns, handling and batching {} ns", statistics.getPrepareNanos() / Math.max(1, statistics.getRecords()), statistics.getHandleNanos() / Math.max(1, statistics.getRecords()));
+        for (CountingDocumentSink documentSink : storage.getDocumentSinks()) {
+            if (documentSink.getDocuments() > 0) {
+                logger.info("Collection {}: {} documents in {} batches ({} bytes)", documentSink.getName(), documentSink.getDocuments(), documentSink.getBatches(), documentSink.getBytes());
+            }
+        }
+        logger.info("Heap: max used {} MB (max heap {} MB), {} GCs taking {} ms", maxHeapUsed / (1024 * 1024), memoryMXBean.getHeapMemoryUsage().getMax() / (1024 * 1024), getGcCount() - gcCountBefore, getGcTime() - gcTimeBefore);
+    }
+
+    /**
+     * Loads the default properties of the StreamImporter.
+     *
+     * @return Properties
+     * @throws IOException Thrown if the properties cannot be loaded
+     */
+    private static Properties loadImporterProperties() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = StreamImporter.class.getResourceAsStream("/streamImporter.properties")) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the topics of partitions.
+     *
+     * @param topicPartitions Partitions
+     * @return Topics
+     */
+    private static List<String> topicPartitionsToTopics(Iterable<TopicPartition> topicPartitions) {
+        List<String> topics = new ArrayList<>();
+        for (TopicPartition topicPartition : topicPartitions) {
+            topics.add(topicPartition.topic());
+        }
+        return topics;
+    }
+
+    /**
+     * Returns the number of garbage collections (over all collectors).
+     *
+     * @return Number of garbage collections
+     */
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean garbageCollectorMXBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, garbageCollectorMXBean.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Returns the time (in ms) spent in garbage collections (over all collectors).
+     *
+     * @return Time (in ms) spent in garbage collections
+     */
+    private static long getGcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean garbageCollectorMXBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, garbageCollectorMXBean.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * Poll task which adds the records of one poll to the MockConsumer.
+     * While partitions are paused (backpressure), the records are postponed to a later poll since the MockConsumer drops the records of paused partitions (the KafkaConsumer fetches them again after they have been resumed).
+     */
+    private static class RecordGenerator implements Runnable {
+
+        /**
+         * MockConsumer
+         */
+        private final MockConsumer<String, byte[]> consumer;
+
+        /**
+         * Synthetic payload per stream category
+         */
+        private final Map<AbstractImmutableDataStreamElement.StreamCategory, byte[]> payloads;
+
+        /**
+         * Partition per stream category
+         */
+        private final Map<AbstractImmutableDataStreamElement.StreamCategory, TopicPartition> topicPartitions;
+
+        /**
+         * Next offset per partition (shared by all poll tasks, which are executed sequentially)
+         */
+        private final Map<TopicPartition, Long> nextOffsets;
+
+        /**
+         * Index of the first element of this poll
+         */
+        private final long firstElementIndex;
+
+        /**
+         * Number of elements of this poll
+         */
+        private final int numberOfElements;
+
+        /**
+         * RecordGenerator constructor.
+         *
+         * @param consumer          MockConsumer
+         * @param payloads          Synthetic payload per stream category
+         * @param topicPartitions   Partition per stream category
+         * @param nextOffsets       Next offset per partition
+         * @param firstElementIndex Index of the first element of this poll
+         * @param numberOfElements  Number of elements of this poll
+         */
+        private RecordGenerator(MockConsumer<String, byte[]> consumer, Map<AbstractImmutableDataStreamElement.StreamCategory, byte[]> payloads, Map<AbstractImmutableDataStreamElement.StreamCategory, TopicPartition> topicPartitions, Map<TopicPartition, Long> nextOffsets, long firstElementIndex, int numberOfElements) {
+            this.consumer = consumer;
+            this.payloads = payloads;
+            this.topicPartitions = topicPartitions;
+            this.nextOffsets = nextOffsets;
+            this.firstElementIndex = firstElementIndex;
+            this.numberOfElements = numberOfElements;
+        }
+
+        @Override
+        public void run() {
+            if (!this.consumer.paused().isEmpty()) {
+                this.consumer.schedulePollTask(this);
+                return;
+            }
+            for (long i = this.firstElementIndex; i < this.firstElementIndex + this.numberOfElements; ++i) {
+                AbstractImmutableDataStreamElement.StreamCategory category = CATEGORY_MIX[(int) (i % CATEGORY_MIX.length)];
+                TopicPartition topicPartition = this.topicPartitions.get(category);
+                long offset = this.nextOffsets.get(topicPartition);
+                this.nextOffsets.put(topicPartition, offset + 1);
+                this.consumer.addRecord(new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), offset, SyntheticPayloads.MATCH_ID, this.payloads.get(category)));
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 
 cd $DIR
 
+# Start with an empty database before enabling mongodb.idempotentWrites (the _id of the documents changes from ObjectId to "topic/partition/offset")
 echo "Drop sportsense database from MongoDB"
 mongo sportsense --eval "db.dropDatabase()"
 
@@ -115,6 +116,14 @@ mongo sportsense --eval 'db.createCollection("matches", {
         awayTeamColor: {
           description: "Color of the away team",
           bsonType: "string"
+        },
+        generationTimestampFirstDataStreamElement: {
+          description: "Generation timestamp (in ms) of the first data stream element of the match",
+          bsonType: "long"
+        },
+        matchStartVideoOffset: {
+          description: "Video offset (in s) of the start of the match",
+          bsonType: "long"
         }
       },
       required: ["matchId", "sport", "fieldSize", "date", "competition", "venue", "homeTeamId", "awayTeamId", "homePlayerIds", "awayPlayerIds", "homeTeamName", "awayTeamName", "homePlayerNames", "awayPlayerNames", "videoPath", "homeTeamColor", "awayTeamColor"]
@@ -301,6 +310,93 @@ mongo sportsense --eval 'db.createCollection("states", {
     }
   }
 });'
+mongo sportsense --eval 'db.createCollection("stateBuckets", {
+  validator: {
+    $jsonSchema: {
+      properties: {
+        type: {
+          description: "Type of the data items (stream name of the data stream elements)",
+          bsonType: "string"
+        },
+        matchId: {
+          description: "Identifier of the match the data items belong to",
+          bsonType: "string"
+        },
+        playerIds: {
+          description: "Array containing the involved players (object identifiers tuple of the data stream elements)",
+          bsonType: "array",
+          items: {
+            bsonType: "string"
+          }
+        },
+        teamIds: {
+          description: "Array containing the involved teams (group identifiers tuple of the data stream elements)",
+          bsonType: "array",
+          items: {
+            bsonType: "string"
+          }
+        },
+        minTs: {
+          description: "Minimum time in ms since the start of the match of all samples",
+          bsonType: "int"
+        },
+        maxTs: {
+          description: "Maximum time in ms since the start of the match of all samples",
+          bsonType: "int"
+        },
+        count: {
+          description: "Number of samples",
+          bsonType: "int"
+        },
+        ts: {
+          description: "Time in ms since the start of the match per sample",
+          bsonType: "array",
+          items: {
+            bsonType: "int"
+          }
+        },
+        videoTs: {
+          description: "Video offset (in s) per sample",
+          bsonType: "array",
+          items: {
+            bsonType: "int"
+          }
+        },
+        xyCoords: {
+          description: "Array containing the planar position(s) per sample",
+          bsonType: "array",
+          items: {
+            bsonType: "array",
+            items: {
+              bsonType: "array",
+              items: {
+                bsonType: "double"
+              }
+            }
+          }
+        },
+        zCoords: {
+          description: "Array containing the z coordinates of the position(s) per sample",
+          bsonType: "array",
+          items: {
+            bsonType: "array",
+            items: {
+              bsonType: "double"
+            }
+          }
+        },
+        additionalInfo: {
+          description: "Additional information (payload fields of the data stream element) per sample",
+          bsonType: "array",
+          items: {
+            bsonType: "object"
+          }
+        }
+      },
+      required: ["type", "matchId", "playerIds", "teamIds", "minTs", "maxTs", "count", "ts", "videoTs", "xyCoords", "zCoords", "additionalInfo"]
+    }
+  }
+});'
 mongo sportsense --eval 'db.createCollection("nonatomicEvents", {
   validator: {
     $jsonSchema: {
@@ -380,4 +476,5 @@ mongo sportsense --eval 'db.matches.createIndexes( [ {matchId: 1}, {sport: 1}, {
 mongo sportsense --eval 'db.events.createIndexes( [ {type: 1}, {matchId: 1}, {ts: 1}, {videoTs: 1}, {xyCoords: "2d"}, {zCoords: 1}, {playerIds: 1}, {teamIds: 1} ]);'
 mongo sportsense --eval 'db.statistics.createIndexes( [ {type: 1}, {matchId: 1}, {ts: 1}, {videoTs: 1}, {xyCoords: "2d"}, {zCoords: 1}, {playerIds: 1}, {teamIds: 1} ]);'
 mongo sportsense --eval 'db.states.createIndexes( [ {type: 1}, {matchId: 1}, {ts: 1}, {videoTs: 1}, {xyCoords: "2d"}, {zCoords: 1}, {playerIds: 1}, {teamIds: 1} ]);'
+mongo sportsense --eval 'db.stateBuckets.createIndexes( [ {type: 1, matchId: 1, minTs: 1}, {matchId: 1, maxTs: 1}, {playerIds: 1}, {teamIds: 1} ]);'
 mongo sportsense --eval 'db.nonatomicEvents.createIndexes( [ {type: 1}, {matchId: 1}, {ts: 1}, {videoTs: 1}, {xyCoords: "2d"}, {zCoords: 1}, {playerIds: 1}, {teamIds: 1}, {eventId: 1}, {phase: 1}, {seqNo: 1} ]);'
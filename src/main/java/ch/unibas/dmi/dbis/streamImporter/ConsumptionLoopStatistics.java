@@ -0,0 +1,151 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time spent in the stages of the consumption loop (polling, preparing, i.e., decoding and encoding, and handling/batching).
+ * Updated by the consumption loop and read by other threads.
+ */
+public class ConsumptionLoopStatistics {
+
+    /**
+     * Number of polls
+     */
+    private final AtomicLong polls = new AtomicLong();
+
+    /**
+     * Number of polled records
+     */
+    private final AtomicLong records = new AtomicLong();
+
+    /**
+     * Time (in ns) spent in poll
+     */
+    private final AtomicLong pollNanos = new AtomicLong();
+
+    /**
+     * Time (in ns) the consumption loop spent preparing the polled records (wall-clock time, the records are prepared in parallel if decode workers are configured)
+     */
+    private final AtomicLong prepareNanos = new AtomicLong();
+
+    /**
+     * Time (in ns) spent decoding records to data stream elements (summed over all decode workers)
+     */
+    private final AtomicLong decodeNanos = new AtomicLong();
+
+    /**
+     * Time (in ns) spent handling the prepared records (including the conversion of records which could not be prepared and waiting for free space in the queues of the collection writers)
+     */
+    private final AtomicLong handleNanos = new AtomicLong();
+
+    /**
+     * Records a poll.
+     *
+     * @param numberOfRecords Number of polled records
+     * @param nanos           Time (in ns) spent in poll
+     */
+    void recordPoll(int numberOfRecords, long nanos) {
+        this.polls.incrementAndGet();
+        this.records.addAndGet(numberOfRecords);
+        this.pollNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records the preparation of the polled records.
+     *
+     * @param nanos Time (in ns) the consumption loop spent preparing the records
+     */
+    void recordPrepare(long nanos) {
+        this.prepareNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records the decoding of a record (called by the decode workers).
+     *
+     * @param nanos Time (in ns) spent decoding the record
+     */
+    void recordDecode(long nanos) {
+        this.decodeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records the handling of a record.
+     *
+     * @param nanos Time (in ns) spent handling the prepared record
+     */
+    void recordHandle(long nanos) {
+        this.handleNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Returns the number of polls.
+     *
+     * @return Number of polls
+     */
+    public long getPolls() {
+        return this.polls.get();
+    }
+
+    /**
+     * Returns the number of polled records.
+     *
+     * @return Number of polled records
+     */
+    public long getRecords() {
+        return this.records.get();
+    }
+
+    /**
+     * Returns the time (in ns) spent in poll.
+     *
+     * @return Time (in ns) spent in poll
+     */
+    public long getPollNanos() {
+        return this.pollNanos.get();
+    }
+
+    /**
+     * Returns the time (in ns) the consumption loop spent preparing the polled records.
+     *
+     * @return Time (in ns) spent preparing
+     */
+    public long getPrepareNanos() {
+        return this.prepareNanos.get();
+    }
+
+    /**
+     * Returns the time (in ns) spent decoding records to data stream elements (summed over all decode workers).
+     *
+     * @return Time (in ns) spent decoding
+     */
+    public long getDecodeNanos() {
+        return this.decodeNanos.get();
+    }
+
+    /**
+     * Returns the time (in ns) spent handling the prepared records (including the conversion of records which could not be prepared and waiting for free space in the queues of the collection writers).
+     *
+     * @return Time (in ns) spent handling records
+     */
+    public long getHandleNanos() {
+        return this.handleNanos.get();
+    }
+}
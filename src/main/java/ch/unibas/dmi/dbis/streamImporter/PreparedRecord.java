@@ -0,0 +1,221 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter;
+
+import ch.unibas.dmi.dbis.streamImporter.freshness.DocumentOrigin;
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import ch.unibas.dmi.dbis.streamImporter.writer.CollectionWriter;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.bson.RawBsonDocument;
+
+/**
+ * Kafka record which has been prepared (decoded and, if the context of its match was known, encoded) by a decode worker.
+ * Prepared records are handled in the order in which they have been polled such that the order within a partition and a match is preserved.
+ */
+class PreparedRecord {
+
+    /**
+     * Kafka record
+     */
+    private final ConsumerRecord<String, byte[]> record;
+
+    /**
+     * Position of the Kafka record
+     */
+    private final RecordPosition recordPosition;
+
+    /**
+     * Specifies if the record belongs to an ignored topic (and has thus not been decoded)
+     */
+    private boolean ignored;
+
+    /**
+     * Data stream element (null if the record could not be decoded or has been ignored)
+     */
+    private AbstractImmutableDataStreamElement dataStreamElement;
+
+    /**
+     * Exception thrown while decoding the record (null if the record has been decoded)
+     */
+    private Exception decodeException;
+
+    /**
+     * Collection writer for the encoded document (null if the data stream element has not been encoded)
+     */
+    private CollectionWriter collectionWriter;
+
+    /**
+     * Encoded document (null if the data stream element has not been encoded)
+     */
+    private RawBsonDocument document;
+
+    /**
+     * Origin of the encoded document
+     */
+    private DocumentOrigin origin;
+
+    /**
+     * Generation timestamp (in ms) of the first data stream element of the match the document has been encoded with
+     */
+    private long generationTimestampFirstDataStreamElement;
+
+    /**
+     * Video offset (in s) of the start of the match the document has been encoded with
+     */
+    private long matchStartVideoOffset;
+
+    /**
+     * PreparedRecord constructor.
+     *
+     * @param record         Kafka record
+     * @param recordPosition Position of the Kafka record
+     */
+    PreparedRecord(ConsumerRecord<String, byte[]> record, RecordPosition recordPosition) {
+        this.record = record;
+        this.recordPosition = recordPosition;
+    }
+
+    /**
+     * Marks the record as record of an ignored topic.
+     */
+    void markIgnored() {
+        this.ignored = true;
+    }
+
+    /**
+     * Sets the decoded data stream element.
+     *
+     * @param dataStreamElement Data stream element
+     */
+    void setDataStreamElement(AbstractImmutableDataStreamElement dataStreamElement) {
+        this.dataStreamElement = dataStreamElement;
+    }
+
+    /**
+     * Sets the exception thrown while decoding the record.
+     *
+     * @param decodeException Exception
+     */
+    void setDecodeException(Exception decodeException) {
+        this.decodeException = decodeException;
+    }
+
+    /**
+     * Sets the encoded document.
+     *
+     * @param collectionWriter                          Collection writer for the document
+     * @param document                                  Encoded document
+     * @param origin                                    Origin of the document
+     * @param generationTimestampFirstDataStreamElement Generation timestamp (in ms) of the first data stream element of the match the document has been encoded with
+     * @param matchStartVideoOffset                     Video offset (in s) of the start of the match the document has been encoded with
+     */
+    void setDocument(CollectionWriter collectionWriter, RawBsonDocument document, DocumentOrigin origin, long generationTimestampFirstDataStreamElement, long matchStartVideoOffset) {
+        this.collectionWriter = collectionWriter;
+        this.document = document;
+        this.origin = origin;
+        this.generationTimestampFirstDataStreamElement = generationTimestampFirstDataStreamElement;
+        this.matchStartVideoOffset = matchStartVideoOffset;
+    }
+
+    /**
+     * Returns the Kafka record.
+     *
+     * @return Kafka record
+     */
+    ConsumerRecord<String, byte[]> getRecord() {
+        return this.record;
+    }
+
+    /**
+     * Returns the position of the Kafka record.
+     *
+     * @return Position of the Kafka record
+     */
+    RecordPosition getRecordPosition() {
+        return this.recordPosition;
+    }
+
+    /**
+     * Checks if the record belongs to an ignored topic.
+     *
+     * @return True if the record has not been decoded since its topic is ignored
+     */
+    boolean isIgnored() {
+        return this.ignored;
+    }
+
+    /**
+     * Returns the data stream element.
+     *
+     * @return Data stream element (null if the record could not be decoded or has been ignored)
+     */
+    AbstractImmutableDataStreamElement getDataStreamElement() {
+        return this.dataStreamElement;
+    }
+
+    /**
+     * Returns the exception thrown while decoding the record.
+     *
+     * @return Exception (null if the record has been decoded)
+     */
+    Exception getDecodeException() {
+        return this.decodeException;
+    }
+
+    /**
+     * Checks if the data stream element has been encoded with the given match context.
+     *
+     * @param generationTimestampFirstDataStreamElement Generation timestamp (in ms) of the first data stream element of the match (null if unknown)
+     * @param matchStartVideoOffset                     Video offset (in s) of the start of the match (null if unknown)
+     * @return True if the document has been encoded with the given match context
+     */
+    boolean isEncodedWith(Long generationTimestampFirstDataStreamElement, Long matchStartVideoOffset) {
+        return this.document != null && generationTimestampFirstDataStreamElement != null && matchStartVideoOffset != null
+                && this.generationTimestampFirstDataStreamElement == generationTimestampFirstDataStreamElement && this.matchStartVideoOffset == matchStartVideoOffset;
+    }
+
+    /**
+     * Returns the collection writer for the encoded document.
+     *
+     * @return Collection writer (null if the data stream element has not been encoded)
+     */
+    CollectionWriter getCollectionWriter() {
+        return this.collectionWriter;
+    }
+
+    /**
+     * Returns the encoded document.
+     *
+     * @return Encoded document (null if the data stream element has not been encoded)
+     */
+    RawBsonDocument getDocument() {
+        return this.document;
+    }
+
+    /**
+     * Returns the origin of the encoded document.
+     *
+     * @return Origin of the document
+     */
+    DocumentOrigin getOrigin() {
+        return this.origin;
+    }
+}
@@ -18,31 +18,70 @@
 
 package ch.unibas.dmi.dbis.streamImporter;
 
-import ch.unibas.dmi.dbis.streamImporter.dataItems.DataItem;
+import ch.unibas.dmi.dbis.streamImporter.backpressure.BackpressureController;
+import ch.unibas.dmi.dbis.streamImporter.bucketing.StateBucketer;
+import ch.unibas.dmi.dbis.streamImporter.dataItems.DataItemEncoder;
 import ch.unibas.dmi.dbis.streamImporter.dataItems.MatchMetadataItem;
 import ch.unibas.dmi.dbis.streamImporter.dataItems.PositionOutOfRangeException;
+import ch.unibas.dmi.dbis.streamImporter.decoding.DataStreamElementFactoryRegistry;
+import ch.unibas.dmi.dbis.streamImporter.dump.DumpFileConsumer;
+import ch.unibas.dmi.dbis.streamImporter.dump.DumpFileWriter;
+import ch.unibas.dmi.dbis.streamImporter.freshness.DocumentOrigin;
+import ch.unibas.dmi.dbis.streamImporter.freshness.FreshnessTracker;
+import ch.unibas.dmi.dbis.streamImporter.metrics.Counter;
+import ch.unibas.dmi.dbis.streamImporter.metrics.Gauge;
+import ch.unibas.dmi.dbis.streamImporter.metrics.MetricsExporter;
+import ch.unibas.dmi.dbis.streamImporter.metrics.MetricsRegistry;
+import ch.unibas.dmi.dbis.streamImporter.offsets.OffsetStore;
+import ch.unibas.dmi.dbis.streamImporter.offsets.OffsetTracker;
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import ch.unibas.dmi.dbis.streamImporter.pending.PendingElement;
+import ch.unibas.dmi.dbis.streamImporter.pending.PendingElementBuffer;
+import ch.unibas.dmi.dbis.streamImporter.pending.SpilledRecordReader;
 import ch.unibas.dmi.dbis.streamImporter.propertiesHelper.PropertyReadHelper;
+import ch.unibas.dmi.dbis.streamImporter.routing.Route;
+import ch.unibas.dmi.dbis.streamImporter.routing.RoutingTable;
+import ch.unibas.dmi.dbis.streamImporter.sampling.SamplingPolicies;
+import ch.unibas.dmi.dbis.streamImporter.storage.MongoStorage;
+import ch.unibas.dmi.dbis.streamImporter.storage.Storage;
+import ch.unibas.dmi.dbis.streamImporter.writer.BatchSettings;
+import ch.unibas.dmi.dbis.streamImporter.writer.CollectionWriter;
+import ch.unibas.dmi.dbis.streamImporter.writer.CollectionWriterStatistics;
+import ch.unibas.dmi.dbis.streamImporter.writer.FailedDocumentChannel;
+import ch.unibas.dmi.dbis.streamImporter.writer.MongoWriter;
+import ch.unibas.dmi.dbis.streamImporter.writer.RetrySettings;
+import ch.unibas.dmi.dbis.streamImporter.writer.SpoolSettings;
 import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
 import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.football.MatchMetadataStreamElement;
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.mongodb.MongoBulkWriteException;
-import com.mongodb.MongoClient;
-import com.mongodb.MongoClientURI;
-import com.mongodb.MongoWriteException;
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
+import com.mongodb.MongoException;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * StreamImporter which consumes data stream elements from Kafka, converts them to MongoDB documents according to our schemata, and adds them to the corresponding MongoDB collection.
@@ -55,9 +94,69 @@ public class StreamImporter {
     private static final Logger logger = LoggerFactory.getLogger(StreamImporter.class);
 
     /**
-     * KafkaConsumer
+     * Command line parameter for the backfill mode
      */
-    private final KafkaConsumer<String, byte[]> kafkaConsumer;
+    private static final String BACKFILL_PARAMETER = "--backfill";
+
+    /**
+     * Suffix of the consumer group identifier in the backfill mode (such that a backfill neither takes the partitions of the live importer nor overwrites its offsets)
+     */
+    private static final String BACKFILL_GROUP_ID_SUFFIX = ".backfill";
+
+    /**
+     * Command line parameter for the replay of dump files
+     */
+    private static final String REPLAY_PARAMETER = "--replay";
+
+    /**
+     * Kafka consumer
+     */
+    private final Consumer<String, byte[]> kafkaConsumer;
+
+    /**
+     * Storage to which the documents and offsets are written
+     */
+    private final Storage storage;
+
+    /**
+     * Time spent in the stages of the consumption loop
+     */
+    private final ConsumptionLoopStatistics consumptionLoopStatistics;
+
+    /**
+     * Registry for the runtime metrics
+     */
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * Tracker for the freshness of the written documents
+     */
+    private final FreshnessTracker freshnessTracker;
+
+    /**
+     * Exporter which exposes the runtime metrics via JMX and HTTP
+     */
+    private final MetricsExporter metricsExporter;
+
+    /**
+     * Number of records which could not be decoded
+     */
+    private final Counter decodeFailures;
+
+    /**
+     * Counter of the records of ignored topics
+     */
+    private final Counter ignoredRecords;
+
+    /**
+     * Interval (in ms) in which the consumer lag is updated
+     */
+    private final long consumerLagInterval;
+
+    /**
+     * Consumer lag (number of records between the position of the consumer and the end of the partition) per assigned partition
+     */
+    private final Map<TopicPartition, Long> consumerLags;
 
     /**
      * Poll timeout
@@ -65,44 +164,124 @@ public class StreamImporter {
     private final long pollTimeout;
 
     /**
-     * Interval in which the SubscriptionUpdater updates the subscriptions
+     * Executor of the decode workers which prepare the polled records in parallel (null if the records are prepared by the consumption loop)
+     */
+    private final ExecutorService decodeExecutor;
+
+    /**
+     * Number of records which are prepared by a decode worker in one task
      */
-    private final long subscriptionInterval;
+    private final int decodeChunkSize;
 
     /**
-     * SubscriptionUpdater
+     * Sampling policies per stream (applied before the data stream elements are encoded)
      */
-    private SubscriptionUpdater subscriptionUpdater;
+    private final SamplingPolicies samplingPolicies;
+
+    /**
+     * Groups the state data stream elements into time-series buckets (null if every state is stored as a separate document)
+     */
+    private final StateBucketer stateBucketer;
+
+    /**
+     * Routing table which decides per topic (before decoding) if and where its records are stored
+     */
+    private final RoutingTable routingTable;
+
+    /**
+     * Registry of the factories which create the data stream elements per topic
+     */
+    private final DataStreamElementFactoryRegistry dataStreamElementFactoryRegistry;
+
+    /**
+     * Pattern of the subscribed topics (new topics are discovered with the metadata refresh of the Kafka consumer)
+     */
+    private final Pattern topicPattern;
+
+    /**
+     * Interval (in ms) in which the committable offsets are stored
+     */
+    private final long offsetCommitInterval;
+
+    /**
+     * Topics which are always consumed from the beginning since they provide the match context (required for matches whose documents do not contain the match context)
+     */
+    private final List<String> contextTopics;
+
+    /**
+     * End offset (at the time of the assignment) of every assigned partition in the backfill mode (null if the importer consumes continuously)
+     */
+    private final Map<TopicPartition, Long> backfillEndOffsets;
+
+    /**
+     * Collection in which the definitions of the indexes which are dropped during the backfill are stored
+     */
+    private final String droppedIndexesCollectionName;
+
+    /**
+     * Specifies if the secondary indexes are dropped before the backfill and rebuilt afterwards
+     */
+    private final boolean deferIndexBuild;
+
+    /**
+     * Writer which dumps the polled records (null if dumping is disabled)
+     */
+    private DumpFileWriter dumpFileWriter;
+
+    /**
+     * Tracker for the offsets of the Kafka records whose documents have not been written yet
+     */
+    private OffsetTracker offsetTracker;
+
+    /**
+     * Store for the offsets from which the consumption is resumed after a restart
+     */
+    private OffsetStore offsetStore;
+
+    /**
+     * Stored offset for every assigned partition of a context topic (records before this offset have already been imported and are only used to restore the match context)
+     */
+    private Map<TopicPartition, Long> contextReplayOffsets;
 
     /**
      * Flag that indicates if the StreamImporter should continue polling new data stream elements or not
      */
-    private boolean runFlag;
+    private volatile boolean runFlag;
 
     /**
-     * MongoDB collection for storing the match metadata
+     * Flag that indicates if the consumption loop has been stopped since a collection writer has failed
      */
-    private MongoCollection<Document> matchesCollection;
+    private boolean failed;
 
     /**
-     * MongoDB collection for storing the (atomic) events
+     * Writer for the MongoDB collection for storing the match metadata
      */
-    private MongoCollection<Document> eventsCollection;
+    private CollectionWriter matchesWriter;
 
     /**
-     * MongoDB collection for storing the non-atomic events
+     * Writer for the MongoDB collection for storing the (atomic) events
      */
-    private MongoCollection<Document> nonatomicEventsCollection;
+    private CollectionWriter eventsWriter;
 
     /**
-     * MongoDB collection for storing the statistics
+     * Writer for the MongoDB collection for storing the non-atomic events
      */
-    private MongoCollection<Document> statisticsCollection;
+    private CollectionWriter nonatomicEventsWriter;
 
     /**
-     * MongoDB collection for storing the states
+     * Writer for the MongoDB collection for storing the statistics
      */
-    private MongoCollection<Document> statesCollection;
+    private CollectionWriter statisticsWriter;
+
+    /**
+     * Writer for the MongoDB collection for storing the states (or the state buckets if bucketing is enabled)
+     */
+    private CollectionWriter statesWriter;
+
+    /**
+     * Writer stage which writes the documents to MongoDB
+     */
+    private MongoWriter mongoWriter;
 
     /**
      * Map containing the generation timestamp (in ms) of the first data stream element for every match
@@ -115,18 +294,33 @@ public class StreamImporter {
     private Map<String, Long> matchStartVideoOffsetMap;
 
     /**
-     * Wait list for data stream elements that cannot be added to MongoDB yet as the corresponding matchMetadata stream element has not been consumed yet
+     * Buffer for data stream elements that cannot be added to MongoDB yet as the corresponding matchMetadata stream element has not been consumed yet (grouped by match)
      */
-    private ArrayDeque<AbstractImmutableDataStreamElement> waitList;
+    private PendingElementBuffer pendingElementBuffer;
+
+    /**
+     * Pauses the partitions whose records cannot be written fast enough (instead of blocking the consumption loop or buffering their records)
+     */
+    private BackpressureController backpressureController;
 
     /**
      * Creates and starts the StreamImporter.
+     * With the parameters --backfill [topicPattern], the importer runs in the backfill mode: it consumes the topics (optionally only those matching topicPattern) from the beginning up to their current end offsets and exits.
+     * With the parameters --replay dumpPath [topicPattern], the importer replays the records of the dump files in dumpPath (a dump file or a directory) in the backfill mode instead of consuming them from Kafka.
      *
      * @param args Parameters
      */
     public static void main(String[] args) {
         String propertiesFilePath = "/streamImporter.properties";
 
+        boolean replay = args.length > 1 && args[0].equals(REPLAY_PARAMETER);
+        boolean backfill = replay || (args.length > 0 && args[0].equals(BACKFILL_PARAMETER));
+        int topicPatternIndex = replay ? 2 : 1;
+        if (args.length > (backfill ? topicPatternIndex + 1 : 0)) {
+            logger.error("Usage: StreamImporter [{} [topicPattern] | {} dumpPath [topicPattern]]", BACKFILL_PARAMETER, REPLAY_PARAMETER);
+            System.exit(1);
+        }
+
         Properties properties = new Properties();
         try {
             //http://stackoverflow.com/questions/29070109/how-to-read-properties-file-inside-jar
@@ -136,264 +330,1016 @@ public class StreamImporter {
             logger.error("Unable to load {}", propertiesFilePath, e);
             System.exit(1);
         }
+        if (backfill && args.length == topicPatternIndex + 1) {
+            properties.setProperty("kafka.includedTopics", args[topicPatternIndex]);
+        }
+        if (replay) {
+            // The replayed records are not dumped again
+            properties.setProperty("dump.directory", "");
+        }
+
+        logger.info("Initialize MongoDB");
+        String connectionString = PropertyReadHelper.readStringOrDie(properties, "mongodb.connectionString");
+        String databaseName = PropertyReadHelper.readStringOrDie(properties, "mongodb.database");
+        boolean asyncWrites = PropertyReadHelper.readBooleanOrDie(properties, "mongodb.asyncWrites");
+        Storage storage = new MongoStorage(connectionString, databaseName, asyncWrites);
+
+        logger.info("Initializing StreamConsumer");
+        Consumer<String, byte[]> kafkaConsumer = null;
+        if (replay) {
+            try {
+                kafkaConsumer = new DumpFileConsumer(new File(args[1]));
+            } catch (IOException e) {
+                logger.error("Unable to open the dump files in {}", args[1], e);
+                System.exit(1);
+            }
+        } else {
+            kafkaConsumer = createKafkaConsumer(properties, backfill);
+        }
 
-        StreamImporter streamImporter = new StreamImporter(properties);
+        StreamImporter streamImporter = new StreamImporter(properties, kafkaConsumer, storage, backfill);
+        streamImporter.run();
+        if (streamImporter.hasFailed()) {
+            System.exit(1);
+        }
     }
 
     /**
-     * StreamImporter constructor.
+     * Reads the consumer group identifier.
      *
      * @param properties Properties
+     * @param backfill   Specifies if the importer runs in the backfill mode
+     * @return Consumer group identifier
      */
-    public StreamImporter(Properties properties) {
-        logger.info("Read properties");
-        this.pollTimeout = PropertyReadHelper.readLongOrDie(properties, "kafka.pollTimeout");
-        this.subscriptionInterval = PropertyReadHelper.readLongOrDie(properties, "kafka.subscriptionInterval");
-        List<String> forbiddenTopics = PropertyReadHelper.readListOfStringsOrDie(properties, "kafka.forbiddenTopics");
+    private static String readGroupId(Properties properties, boolean backfill) {
+        String groupId = PropertyReadHelper.readStringOrDie(properties, "kafka.groupId");
+        return backfill ? groupId + BACKFILL_GROUP_ID_SUFFIX : groupId;
+    }
+
+    /**
+     * Creates the Kafka consumer.
+     *
+     * @param properties Properties
+     * @param backfill   Specifies if the importer runs in the backfill mode
+     * @return Kafka consumer
+     */
+    private static Consumer<String, byte[]> createKafkaConsumer(Properties properties, boolean backfill) {
         String brokerList = PropertyReadHelper.readStringOrDie(properties, "kafka.brokerList");
-        String groupIdPrefix = PropertyReadHelper.readStringOrDie(properties, "kafka.groupIdPrefix");
-        String connectionString = PropertyReadHelper.readStringOrDie(properties, "mongodb.connectionString");
-        String databaseName = PropertyReadHelper.readStringOrDie(properties, "mongodb.database");
+        String groupId = readGroupId(properties, backfill);
+        long metadataMaxAge = PropertyReadHelper.readLongOrDie(properties, "kafka.metadataMaxAge");
 
-        logger.info("Initializing StreamConsumer");
         // https://kafka.apache.org/0100/javadoc/index.html?org/apache/kafka/clients/consumer/KafkaConsumer.html
         Properties props = new Properties();
         props.put("bootstrap.servers", brokerList);
-        props.put("group.id", groupIdPrefix + "_" + UUID.randomUUID().toString());
-        props.put("enable.auto.commit", "true");
+        props.put("group.id", groupId); // stable group identifier (the offsets are stored in MongoDB by the importer)
+        props.put("enable.auto.commit", "false");
+        props.put("metadata.max.age.ms", String.valueOf(metadataMaxAge)); // interval in which new topics matching the subscription pattern are discovered
         props.put("auto.offset.reset", "earliest");
         props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
         props.put("value.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
-        this.kafkaConsumer = new KafkaConsumer<>(props);
+        return new KafkaConsumer<>(props);
+    }
 
-        this.subscriptionUpdater = new SubscriptionUpdater(forbiddenTopics);
-        Thread subscriptionUpdaterThread = new Thread(this.subscriptionUpdater);
-        subscriptionUpdaterThread.start();
+    /**
+     * StreamImporter constructor.
+     * Initializes the collection writers and loads the match contexts but does not start consuming (see run).
+     *
+     * @param properties    Properties
+     * @param kafkaConsumer Kafka consumer (closed by the importer when it stops)
+     * @param storage       Storage to which the documents and offsets are written (closed by the importer when it stops)
+     */
+    public StreamImporter(Properties properties, Consumer<String, byte[]> kafkaConsumer, Storage storage) {
+        this(properties, kafkaConsumer, storage, false);
+    }
 
-        logger.info("Initialize MongoDB");
-        MongoClientURI connectionURI = new MongoClientURI(connectionString);
-        MongoClient mongoClient = new MongoClient(connectionURI);
-        MongoDatabase database = mongoClient.getDatabase(databaseName);
-        this.matchesCollection = database.getCollection("matches");
-        this.eventsCollection = database.getCollection("events");
-        this.statesCollection = database.getCollection("states");
-        this.nonatomicEventsCollection = database.getCollection("nonatomicEvents");
-        this.statisticsCollection = database.getCollection("statistics");
+    /**
+     * StreamImporter constructor.
+     * Initializes the collection writers and loads the match contexts but does not start consuming (see run).
+     * In the backfill mode, the importer consumes all partitions from the beginning up to their end offsets (at the time of the assignment) and then stops.
+     * During the backfill, the secondary indexes of the target collections are dropped (only if backfill.deferIndexBuild is enabled since this also affects a live importer and the readers of the same database) and the documents are written with the maximum batch size and backfill.writerThreads writer threads per collection.
+     *
+     * @param properties    Properties
+     * @param kafkaConsumer Kafka consumer (closed by the importer when it stops)
+     * @param storage       Storage to which the documents and offsets are written (closed by the importer when it stops)
+     * @param backfill      Specifies if the importer runs in the backfill mode
+     */
+    public StreamImporter(Properties properties, Consumer<String, byte[]> kafkaConsumer, Storage storage, boolean backfill) {
+        logger.info("Read properties");
+        this.pollTimeout = PropertyReadHelper.readLongOrDie(properties, "kafka.pollTimeout");
+        Pattern includedTopics = PropertyReadHelper.readPatternOrDie(properties, "kafka.includedTopics");
+        List<String> forbiddenTopics = PropertyReadHelper.readListOfStringsOrDie(properties, "kafka.forbiddenTopics");
+        int decodeThreads = PropertyReadHelper.readIntOrDie(properties, "decode.threads");
+        this.decodeChunkSize = PropertyReadHelper.readIntOrDie(properties, "decode.chunkSize");
+        this.samplingPolicies = SamplingPolicies.readOrDie(properties);
+        boolean statesBucketing = PropertyReadHelper.readBooleanOrDie(properties, "states.bucketing");
+        long statesBucketWindow = PropertyReadHelper.readLongOrDie(properties, "states.bucketWindow");
+        int statesBucketMaxSamples = PropertyReadHelper.readIntOrDie(properties, "states.bucketMaxSamples");
+        long statesBucketLinger = PropertyReadHelper.readLongOrDie(properties, "states.bucketLinger");
+        String groupId = readGroupId(properties, backfill);
+        this.offsetCommitInterval = PropertyReadHelper.readLongOrDie(properties, "kafka.offsetCommitInterval");
+        this.contextTopics = PropertyReadHelper.readListOfStringsOrDie(properties, "kafka.contextTopics");
+        int writerQueueCapacity = PropertyReadHelper.readIntOrDie(properties, "mongodb.writerQueueCapacity");
+        int writerThreads = PropertyReadHelper.readIntOrDie(properties, "mongodb.writerThreads");
+        int maxInFlightBatches = PropertyReadHelper.readIntOrDie(properties, "mongodb.maxInFlightBatches");
+        long writerStatisticsInterval = PropertyReadHelper.readLongOrDie(properties, "mongodb.writerStatisticsInterval");
+        RetrySettings retrySettings = RetrySettings.readOrDie(properties);
+        String failedDocumentsCollectionName = PropertyReadHelper.readStringOrDie(properties, "mongodb.failedDocumentsCollection");
+        BatchSettings batchSettings = BatchSettings.readOrDie(properties, backfill);
+        if (backfill) {
+            // The order of the batches does not matter during the backfill, hence the collections are written with several threads and the largest batches (see BatchSettings)
+            writerThreads = PropertyReadHelper.readIntOrDie(properties, "backfill.writerThreads");
+        }
+        this.droppedIndexesCollectionName = PropertyReadHelper.readStringOrDie(properties, "backfill.droppedIndexesCollection");
+        this.deferIndexBuild = PropertyReadHelper.readBooleanOrDie(properties, "backfill.deferIndexBuild");
+        String dumpDirectory = PropertyReadHelper.readStringOrDie(properties, "dump.directory");
+        long dumpFileBytes = PropertyReadHelper.readLongOrDie(properties, "dump.fileBytes");
+        SpoolSettings spoolSettings = SpoolSettings.readOrDie(properties);
+        String offsetsCollectionName = PropertyReadHelper.readStringOrDie(properties, "mongodb.offsetsCollection");
+        boolean idempotentWrites = PropertyReadHelper.readBooleanOrDie(properties, "mongodb.idempotentWrites");
+        long pendingMaxBytesPerMatch = PropertyReadHelper.readLongOrDie(properties, "pending.maxBytesPerMatch");
+        long pendingTtl = PropertyReadHelper.readLongOrDie(properties, "pending.ttl");
+        String pendingSpillDirectory = PropertyReadHelper.readStringOrDie(properties, "pending.spillDirectory");
+        double backpressureHighWaterMark = PropertyReadHelper.readDoubleOrDie(properties, "backpressure.highWaterMark");
+        double backpressureLowWaterMark = PropertyReadHelper.readDoubleOrDie(properties, "backpressure.lowWaterMark");
+        long backpressurePendingHighWaterBytes = PropertyReadHelper.readLongOrDie(properties, "backpressure.pendingHighWaterBytes");
+        int metricsHttpPort = PropertyReadHelper.readIntOrDie(properties, "metrics.httpPort");
+        boolean metricsJmxEnabled = PropertyReadHelper.readBooleanOrDie(properties, "metrics.jmxEnabled");
+        this.consumerLagInterval = PropertyReadHelper.readLongOrDie(properties, "metrics.consumerLagInterval");
+        long watermarkIdleTimeout = PropertyReadHelper.readLongOrDie(properties, "metrics.watermarkIdleTimeout");
 
-        logger.info("Start consumption loop");
+        this.kafkaConsumer = kafkaConsumer;
+        this.storage = storage;
+        this.consumptionLoopStatistics = new ConsumptionLoopStatistics();
+        this.metricsRegistry = new MetricsRegistry();
+        this.freshnessTracker = new FreshnessTracker(this.metricsRegistry, watermarkIdleTimeout);
+        this.metricsExporter = new MetricsExporter(this.metricsRegistry, metricsHttpPort, metricsJmxEnabled);
+        this.decodeFailures = this.metricsRegistry.counter("decode_failures_total", "Records which could not be decoded to data stream elements");
+        this.ignoredRecords = this.metricsRegistry.counter("records_ignored_total", "Records of topics whose data stream elements are not stored (completed without being decoded)");
+        this.consumerLags = new ConcurrentHashMap<>();
+        this.backfillEndOffsets = backfill ? new HashMap<TopicPartition, Long>() : null;
+
+        logger.info("Initialize writers");
+        this.offsetTracker = new OffsetTracker();
+        this.offsetStore = storage.getOffsetStore(offsetsCollectionName, groupId);
+        this.contextReplayOffsets = new HashMap<>();
+        FailedDocumentChannel failedDocumentChannel = new FailedDocumentChannel(storage.getDocumentSink(failedDocumentsCollectionName));
+        this.mongoWriter = new MongoWriter(writerQueueCapacity, writerThreads, writerStatisticsInterval, maxInFlightBatches, failedDocumentChannel, retrySettings, batchSettings, spoolSettings, this.offsetTracker, idempotentWrites, this.metricsRegistry, this.freshnessTracker);
+        this.matchesWriter = this.mongoWriter.createCollectionWriter(storage.getDocumentSink("matches"));
+        this.eventsWriter = this.mongoWriter.createCollectionWriter(storage.getDocumentSink("events"));
+        this.statesWriter = this.mongoWriter.createCollectionWriter(storage.getDocumentSink(statesBucketing ? "stateBuckets" : "states"));
+        this.nonatomicEventsWriter = this.mongoWriter.createCollectionWriter(storage.getDocumentSink("nonatomicEvents"));
+        this.statisticsWriter = this.mongoWriter.createCollectionWriter(storage.getDocumentSink("statistics"));
+        this.stateBucketer = statesBucketing ? new StateBucketer(this.statesWriter, statesBucketWindow, statesBucketMaxSamples, statesBucketLinger) : null;
         this.generationTimestampFirstDataStreamElementMap = new HashMap<>();
         this.matchStartVideoOffsetMap = new HashMap<>();
-        this.waitList = new ArrayDeque<>();
+        loadMatchContexts();
+        this.pendingElementBuffer = new PendingElementBuffer(pendingMaxBytesPerMatch, pendingTtl, pendingSpillDirectory);
+        this.dataStreamElementFactoryRegistry = new DataStreamElementFactoryRegistry();
+        this.routingTable = new RoutingTable();
+        this.backpressureController = new BackpressureController(kafkaConsumer, this.routingTable, this.mongoWriter.getCollectionWriters(), this.pendingElementBuffer, this.contextTopics, backpressureHighWaterMark, backpressureLowWaterMark, backpressurePendingHighWaterBytes);
+        this.decodeExecutor = decodeThreads > 0 ? Executors.newFixedThreadPool(decodeThreads, new DecodeWorkerThreadFactory()) : null;
+        this.dumpFileWriter = null;
+        if (!dumpDirectory.trim().isEmpty()) {
+            try {
+                this.dumpFileWriter = new DumpFileWriter(new File(dumpDirectory.trim()), dumpFileBytes);
+            } catch (IOException e) {
+                logger.error("Cannot create dump directory {}. Dumping is disabled.", dumpDirectory, e);
+            }
+        }
+        this.topicPattern = createTopicPattern(includedTopics, forbiddenTopics);
+        logger.info("Subscription pattern: {}", this.topicPattern);
         this.runFlag = true;
+        this.failed = false;
+        registerMetrics();
+    }
+
+    /**
+     * Registers the metrics of the pending element buffer and of the consumption loop.
+     */
+    private void registerMetrics() {
+        this.metricsRegistry.gauge("pending_elements", "Data stream elements waiting in memory for the matchMetadata stream element of their match", new Gauge() {
+            @Override
+            public double getValue() {
+                return StreamImporter.this.pendingElementBuffer.getNumberOfElements();
+            }
+        });
+        this.metricsRegistry.gauge("pending_bytes", "Estimated memory consumption (in bytes) of the waiting data stream elements", new Gauge() {
+            @Override
+            public double getValue() {
+                return StreamImporter.this.pendingElementBuffer.getBytes();
+            }
+        });
+        this.metricsRegistry.gauge("paused_partitions", "Assigned partitions which are paused since their records cannot be written fast enough", new Gauge() {
+            @Override
+            public double getValue() {
+                return StreamImporter.this.backpressureController.getNumberOfPausedPartitions();
+            }
+        });
+        if (this.stateBucketer != null) {
+            this.metricsRegistry.gauge("open_state_buckets", "State buckets which have not been written yet", new Gauge() {
+                @Override
+                public double getValue() {
+                    return StreamImporter.this.stateBucketer.getNumberOfOpenBuckets();
+                }
+            });
+        }
+        this.metricsRegistry.counterFunction("poll_seconds_total", "Time spent in poll", new Gauge() {
+            @Override
+            public double getValue() {
+                return StreamImporter.this.consumptionLoopStatistics.getPollNanos() / 1e9;
+            }
+        });
+        this.metricsRegistry.counterFunction("prepare_seconds_total", "Time the consumption loop spent preparing (decoding and encoding) the polled records", new Gauge() {
+            @Override
+            public double getValue() {
+                return StreamImporter.this.consumptionLoopStatistics.getPrepareNanos() / 1e9;
+            }
+        });
+        this.metricsRegistry.counterFunction("decode_seconds_total", "Time spent decoding records (summed over all decode workers)", new Gauge() {
+            @Override
+            public double getValue() {
+                return StreamImporter.this.consumptionLoopStatistics.getDecodeNanos() / 1e9;
+            }
+        });
+        this.metricsRegistry.counterFunction("handle_seconds_total", "Time spent handling the prepared records (including the conversion of records which could not be prepared and waiting for the collection writers)", new Gauge() {
+            @Override
+            public double getValue() {
+                return StreamImporter.this.consumptionLoopStatistics.getHandleNanos() / 1e9;
+            }
+        });
+    }
+
+    /**
+     * Starts the collection writers, subscribes the topics, and runs the consumption loop until stop is called (or the backfill is complete).
+     * Afterwards, writes the remaining documents, stores the offsets, and closes the Kafka consumer and the storage.
+     * In the backfill mode, the secondary indexes are dropped before the consumption (if backfill.deferIndexBuild is enabled) and rebuilt afterwards.
+     */
+    public void run() {
+        this.metricsExporter.start();
+        if (this.backfillEndOffsets != null && this.deferIndexBuild) {
+            dropSecondaryIndexes();
+        }
+        this.mongoWriter.start();
+        this.kafkaConsumer.subscribe(this.topicPattern, new OffsetRestoringRebalanceListener());
+
+        logger.info("Start consumption loop");
+        long startTime = System.nanoTime();
+        long lastOffsetCommitTime = System.currentTimeMillis();
+        long lastConsumerLagUpdateTime = lastOffsetCommitTime;
         while (this.runFlag) {
             try {
-                List<Document> matchDocuments = new LinkedList<>();
-                List<Document> eventDocuments = new LinkedList<>();
-                List<Document> nonatomicEventDocuments = new LinkedList<>();
-                List<Document> statisticsDocuments = new LinkedList<>();
-                List<Document> stateDocuments = new LinkedList<>();
-
-                ConsumerRecords<String, byte[]> records;
-                synchronized (this.kafkaConsumer) { // required for SubscriptionUpdater
-                    records = this.kafkaConsumer.poll(this.pollTimeout);
+                long pollStartTime = System.nanoTime();
+                ConsumerRecords<String, byte[]> records = this.kafkaConsumer.poll(this.pollTimeout);
+                this.consumptionLoopStatistics.recordPoll(records.count(), System.nanoTime() - pollStartTime);
+                if (this.dumpFileWriter != null) {
+                    dumpRecords(records);
                 }
-                for (ConsumerRecord<String, byte[]> record : records) {
-                    String key = record.key();
-                    Long sequenceNumber = record.offset();
-                    byte[] contentByteArray = record.value();
-
-                    try {
-                        AbstractImmutableDataStreamElement dataStreamElement = AbstractImmutableDataStreamElement.generateDataStreamElementFromByteArray(key, contentByteArray, sequenceNumber, null, null);
-
-                        if (!dataStreamElement.getStreamName().equals(record.topic())) {
-                            logger.error("Cannot handle element ({}) since the stream name the data model assigns to the input stream element does not match the name of the Kafka topic via which it was received ({}).", dataStreamElement, record.topic());
-                        } else {
-                            handleDataStreamElement(dataStreamElement, matchDocuments, eventDocuments, nonatomicEventDocuments, statisticsDocuments, stateDocuments);
-                        }
-                    } catch (ClassNotFoundException | InvalidProtocolBufferException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException e) {
-                        logger.info("Caught exception during generating data stream element from byte array: ", e);
-                    }
+                for (TopicPartition topicPartition : records.partitions()) {
+                    this.metricsRegistry.counter("records_polled_total", "Records polled from Kafka", "topic", topicPartition.topic()).increment(records.records(topicPartition).size());
+                }
+                long prepareStartTime = System.nanoTime();
+                List<PreparedRecord> preparedRecords = prepareRecords(records);
+                this.consumptionLoopStatistics.recordPrepare(System.nanoTime() - prepareStartTime);
+                for (PreparedRecord preparedRecord : preparedRecords) {
+                    long handleStartTime = System.nanoTime();
+                    handleRecord(preparedRecord);
+                    this.consumptionLoopStatistics.recordHandle(System.nanoTime() - handleStartTime);
                 }
 
-                for (int i = 0; i < this.waitList.size(); ++i) { // go once through the waitList (pollFirst & potentially addLast in handleDataStreamElement)
-                    AbstractImmutableDataStreamElement dataStreamElement = this.waitList.pollFirst();
+                long now = System.currentTimeMillis();
+                this.offsetTracker.completeAll(this.pendingElementBuffer.expire(now));
 
-                    handleDataStreamElement(dataStreamElement, matchDocuments, eventDocuments, nonatomicEventDocuments, statisticsDocuments, stateDocuments);
+                if (this.stateBucketer != null) {
+                    this.stateBucketer.writeExpiredBuckets(now);
                 }
+                this.mongoWriter.submitExpiredBatches();
+                this.backpressureController.update();
 
-                insertMany(this.matchesCollection, matchDocuments);
-                insertMany(this.eventsCollection, eventDocuments);
-                insertMany(this.nonatomicEventsCollection, nonatomicEventDocuments);
-                insertMany(this.statisticsCollection, statisticsDocuments);
-                insertMany(this.statesCollection, stateDocuments);
+                if (this.mongoWriter.hasFailed()) {
+                    logger.error("Stop the consumption loop since a collection writer has failed. The records which have not been written are consumed again after the restart.");
+                    this.failed = true;
+                    this.runFlag = false;
+                    this.mongoWriter.beginClose();
+                }
 
+                if (now - lastOffsetCommitTime >= this.offsetCommitInterval) {
+                    commitOffsets();
+                    lastOffsetCommitTime = now;
+                }
+
+                if (now - lastConsumerLagUpdateTime >= this.consumerLagInterval) {
+                    updateConsumerLags();
+                    lastConsumerLagUpdateTime = now;
+                }
+
+                if (this.backfillEndOffsets != null && records.isEmpty() && isBackfillComplete()) {
+                    logger.info("Reached the end offsets of all assigned partitions: {}", this.backfillEndOffsets);
+                    this.runFlag = false;
+                }
+
+            } catch (InterruptedException e) {
+                logger.trace("InterruptedException in main loop.", e);
             } catch (WakeupException e) {
                 logger.info("Poll interrupted with wakeup call.");
-            } catch (IllegalStateException e) {
-                // No topic is subscribed yet
-                try {
-                    Thread.sleep(this.pollTimeout); // Otherwise 100% CPU usage until the first topic is subscribed
-                } catch (InterruptedException e2) {
-                    logger.trace("InterruptedException in main loop.", e2);
-                }
             }
         }
 
+        if (this.decodeExecutor != null) {
+            this.decodeExecutor.shutdown();
+        }
+        if (this.stateBucketer != null) {
+            try {
+                this.stateBucketer.writeAllBuckets();
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while writing the open state buckets. Their records are consumed again after the restart.", e);
+            }
+        }
+        this.mongoWriter.close();
+        commitOffsets();
         this.kafkaConsumer.close();
-        this.subscriptionUpdater.subscriptionUpdaterRunFlag = false;
+        if (this.dumpFileWriter != null) {
+            this.dumpFileWriter.close();
+        }
+        if (this.backfillEndOffsets != null) {
+            long loadNanos = System.nanoTime() - startTime;
+            long indexStartTime = System.nanoTime();
+            int rebuiltIndexes = rebuildSecondaryIndexes();
+            logBackfillSummary(loadNanos, rebuiltIndexes, System.nanoTime() - indexStartTime);
+        }
+        this.storage.close();
+        this.metricsExporter.stop();
         logger.info("Closed StreamConsumer");
     }
 
     /**
-     * Handles a data stream element polled as a record from Kafka or from the wait list.
+     * Dumps the polled records. If they cannot be written, dumping is disabled (the consumption continues).
      *
-     * @param dataStreamElement       Data stream element
-     * @param matchDocuments          Documents which have to be added to the matches collection (might contain already some documents which should not be deleted)
-     * @param eventDocuments          Documents which have to be added to the (atomic) events collection (might contain already some documents which should not be deleted)
-     * @param nonatomicEventDocuments Documents which have to be added to the non-atomic events collection (might contain already some documents which should not be deleted)
-     * @param statisticsDocuments     Documents which have to be added to the statistics collection (might contain already some documents which should not be deleted)
-     * @param stateDocuments          Documents which have to be added to the states collection (might contain already some documents which should not be deleted)
-     */
-    private void handleDataStreamElement(AbstractImmutableDataStreamElement dataStreamElement, List<Document> matchDocuments, List<Document> eventDocuments, List<Document> nonatomicEventDocuments, List<Document> statisticsDocuments, List<Document> stateDocuments) {
+     * @param records Polled records
+     */
+    private void dumpRecords(ConsumerRecords<String, byte[]> records) {
+        try {
+            this.dumpFileWriter.append(records);
+        } catch (IOException e) {
+            logger.error("Cannot dump the polled records. Dumping is disabled.", e);
+            this.dumpFileWriter.close();
+            this.dumpFileWriter = null;
+        }
+    }
+
+    /**
+     * Drops the secondary indexes of the target collections before the backfill such that the inserts do not have to maintain them.
+     * The indexes are missing for all users of the collections (including a live importer and its readers) until they are rebuilt after the backfill.
+     */
+    private void dropSecondaryIndexes() {
+        logger.warn("backfill.deferIndexBuild is enabled: the secondary indexes of the target collections are dropped until the backfill is complete, which also affects any live importer and reader of the database");
+        for (CollectionWriter collectionWriter : this.mongoWriter.getCollectionWriters()) {
+            int droppedIndexes = this.storage.dropSecondaryIndexes(collectionWriter.getName(), this.droppedIndexesCollectionName);
+            logger.info("Dropped {} secondary indexes of {} for the backfill (definitions stored in {})", droppedIndexes, collectionWriter.getName(), this.droppedIndexesCollectionName);
+        }
+    }
+
+    /**
+     * Rebuilds the secondary indexes of the target collections after the backfill.
+     *
+     * @return Number of rebuilt indexes
+     */
+    private int rebuildSecondaryIndexes() {
+        int rebuiltIndexes = 0;
+        for (CollectionWriter collectionWriter : this.mongoWriter.getCollectionWriters()) {
+            try {
+                long indexStartTime = System.nanoTime();
+                int rebuiltIndexesOfCollection = this.storage.rebuildSecondaryIndexes(collectionWriter.getName(), this.droppedIndexesCollectionName);
+                logger.info("Rebuilt {} secondary indexes of {} in {} s", rebuiltIndexesOfCollection, collectionWriter.getName(), String.format("%.1f", (System.nanoTime() - indexStartTime) / 1e9));
+                rebuiltIndexes += rebuiltIndexesOfCollection;
+            } catch (MongoException e) {
+                logger.error("Cannot rebuild the secondary indexes of {}. Their definitions are kept in {} and the indexes are rebuilt by the next backfill.", collectionWriter.getName(), this.droppedIndexesCollectionName, e);
+            }
+        }
+        return rebuiltIndexes;
+    }
+
+    /**
+     * Checks if the backfill is complete, i.e., if the position of every assigned partition has reached its end offset.
+     *
+     * @return True if the backfill is complete
+     */
+    private boolean isBackfillComplete() {
+        Set<TopicPartition> assignment = this.kafkaConsumer.assignment();
+        if (assignment.isEmpty()) {
+            return false;
+        }
+        for (TopicPartition topicPartition : assignment) {
+            Long endOffset = this.backfillEndOffsets.get(topicPartition);
+            if (endOffset == null || this.kafkaConsumer.position(topicPartition) < endOffset) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Logs the throughput summary of the backfill.
+     *
+     * @param loadNanos      Time (in ns) from the start of the consumption until all documents have been written
+     * @param rebuiltIndexes Number of rebuilt indexes
+     * @param indexNanos     Time (in ns) for rebuilding the indexes
+     */
+    private void logBackfillSummary(long loadNanos, int rebuiltIndexes, long indexNanos) {
+        double loadSeconds = loadNanos / 1e9;
+        long records = this.consumptionLoopStatistics.getRecords();
+        logger.info("Backfill summary: {} records in {} s ({} records/s)", records, String.format("%.1f", loadSeconds), String.format("%.0f", records / loadSeconds));
+        long documents = 0;
+        for (CollectionWriter collectionWriter : this.mongoWriter.getCollectionWriters()) {
+            CollectionWriterStatistics statistics = collectionWriter.getStatistics();
+            documents += statistics.getDocuments();
+            logger.info("Backfill summary: {} documents in {} ({} documents/s, {} batches, {} failed, {} duplicates)", statistics.getDocuments(), collectionWriter.getName(), String.format("%.0f", statistics.getDocuments() / loadSeconds), statistics.getBatches(), statistics.getFailedDocuments(), statistics.getDuplicateDocuments());
+        }
+        logger.info("Backfill summary: {} documents in total ({} documents/s), {} indexes rebuilt in {} s, total time {} s", documents, String.format("%.0f", documents / loadSeconds), rebuiltIndexes, String.format("%.1f", indexNanos / 1e9), String.format("%.1f", (loadNanos + indexNanos) / 1e9));
+    }
+
+    /**
+     * Stops the consumption loop (can be called by any thread).
+     * Batches which cannot be written since MongoDB is unavailable are given up after the maximum number of retries (their records are consumed again after the restart).
+     */
+    public void stop() {
+        this.runFlag = false;
+        this.mongoWriter.beginClose();
+        this.kafkaConsumer.wakeup();
+    }
+
+    /**
+     * Checks if the consumption loop has been stopped since a collection writer has failed.
+     *
+     * @return True if the importer has failed
+     */
+    public boolean hasFailed() {
+        return this.failed;
+    }
+
+    /**
+     * Returns the registry for the runtime metrics.
+     *
+     * @return Metrics registry
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    /**
+     * Returns the tracker for the freshness of the written documents.
+     *
+     * @return Freshness tracker
+     */
+    public FreshnessTracker getFreshnessTracker() {
+        return this.freshnessTracker;
+    }
+
+    /**
+     * Returns the time spent in the stages of the consumption loop.
+     *
+     * @return Consumption loop statistics
+     */
+    public ConsumptionLoopStatistics getConsumptionLoopStatistics() {
+        return this.consumptionLoopStatistics;
+    }
+
+    /**
+     * Loads the match context (generation timestamp of the first data stream element and video offset of the start of the match) of all matches that have already been imported.
+     * Matches whose documents have been written without the match context are restored by consuming the context topics instead.
+     */
+    private void loadMatchContexts() {
+        try {
+            for (Document document : this.storage.loadMatchContexts("matches")) {
+                String matchId = document.getString("matchId");
+                this.generationTimestampFirstDataStreamElementMap.put(matchId, document.getLong("generationTimestampFirstDataStreamElement"));
+                this.matchStartVideoOffsetMap.put(matchId, document.getLong("matchStartVideoOffset"));
+            }
+            logger.info("Loaded the match context of {} matches", this.generationTimestampFirstDataStreamElementMap.size());
+        } catch (MongoException e) {
+            logger.warn("Cannot load the match contexts. They are restored by consuming the context topics.", e);
+        }
+    }
+
+    /**
+     * Prepares the polled records, i.e., decodes them and encodes the data stream elements whose match context is known.
+     * If decode workers are configured and the poll returned more than one chunk of records, the chunks are prepared in parallel while the consumption loop waits.
+     * The match context is only modified by the consumption loop and thus does not change while the decode workers read it.
+     *
+     * @param records Polled records
+     * @return Prepared records (in the order in which they have been polled)
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for the decode workers
+     */
+    private List<PreparedRecord> prepareRecords(ConsumerRecords<String, byte[]> records) throws InterruptedException {
+        List<PreparedRecord> preparedRecords = new ArrayList<>(records.count());
+        for (ConsumerRecord<String, byte[]> record : records) {
+            preparedRecords.add(new PreparedRecord(record, new RecordPosition(new TopicPartition(record.topic(), record.partition()), record.offset())));
+        }
+
+        if (this.decodeExecutor == null || preparedRecords.size() <= this.decodeChunkSize) {
+            for (PreparedRecord preparedRecord : preparedRecords) {
+                prepareRecord(preparedRecord);
+            }
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int from = 0; from < preparedRecords.size(); from += this.decodeChunkSize) {
+                tasks.add(new PrepareTask(preparedRecords.subList(from, Math.min(from + this.decodeChunkSize, preparedRecords.size()))));
+            }
+            for (Future<Void> future : this.decodeExecutor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException("Decode worker failed", e.getCause());
+                }
+            }
+        }
+        return preparedRecords;
+    }
+
+    /**
+     * Prepares a record, i.e., decodes it and encodes its data stream element if the context of its match is known.
+     * Does not modify the state of the importer and can thus be called by the decode workers.
+     * Records of ignored topics are not decoded at all.
+     * Records which cannot be encoded (unknown match context, matchMetadata stream elements, elements of sampled streams, bucketed states, or exceptions) are converted by the consumption loop.
+     *
+     * @param preparedRecord Record to prepare
+     */
+    private void prepareRecord(PreparedRecord preparedRecord) {
+        ConsumerRecord<String, byte[]> record = preparedRecord.getRecord();
+        Route route = this.routingTable.get(record.topic());
+        if (route != null && route.isIgnored()) {
+            preparedRecord.markIgnored();
+            return;
+        }
+
+        AbstractImmutableDataStreamElement dataStreamElement;
+        try {
+            long decodeStartTime = System.nanoTime();
+            dataStreamElement = this.dataStreamElementFactoryRegistry.create(record.topic(), record.key(), record.value(), record.offset());
+            this.consumptionLoopStatistics.recordDecode(System.nanoTime() - decodeStartTime);
+        } catch (ClassNotFoundException | InvalidProtocolBufferException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException e) {
+            preparedRecord.setDecodeException(e);
+            return;
+        }
+        preparedRecord.setDataStreamElement(dataStreamElement);
+
+        if (!dataStreamElement.getStreamName().equals(record.topic())) {
+            return;
+        }
+        if (route == null) {
+            route = this.routingTable.learn(record.topic(), createRoute(dataStreamElement));
+        }
+        if (!route.isPreEncodable()) {
+            return; // elements of sampled streams are only encoded if the sampling policy stores them
+        }
+        Long generationTimestampFirstDataStreamElement = this.generationTimestampFirstDataStreamElementMap.get(dataStreamElement.getKey());
+        Long matchStartVideoOffset = this.matchStartVideoOffsetMap.get(dataStreamElement.getKey());
+        CollectionWriter collectionWriter = route.getCollectionWriter();
+        if (generationTimestampFirstDataStreamElement != null && matchStartVideoOffset != null) {
+            try {
+                RawBsonDocument document = DataItemEncoder.encode(dataStreamElement, generationTimestampFirstDataStreamElement, matchStartVideoOffset, collectionWriter.createDocumentId(preparedRecord.getRecordPosition()));
+                preparedRecord.setDocument(collectionWriter, document, createDocumentOrigin(dataStreamElement, generationTimestampFirstDataStreamElement), generationTimestampFirstDataStreamElement, matchStartVideoOffset);
+            } catch (AbstractImmutableDataStreamElement.CannotRetrieveInformationException | PositionOutOfRangeException e) {
+                logger.trace("Cannot prepare element {}. It is converted (and the exception is logged) by the consumption loop.", dataStreamElement, e);
+            }
+        }
+    }
+
+    /**
+     * Handles a record polled from Kafka (or released from the spill file of the pending element buffer).
+     *
+     * @param record Kafka record
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of a collection writer
+     */
+    private void handleRecord(ConsumerRecord<String, byte[]> record) throws InterruptedException {
+        PreparedRecord preparedRecord = new PreparedRecord(record, new RecordPosition(new TopicPartition(record.topic(), record.partition()), record.offset()));
+        prepareRecord(preparedRecord);
+        handleRecord(preparedRecord);
+    }
+
+    /**
+     * Handles a prepared record.
+     * Adds the document encoded by the decode worker if it has been encoded with the current context of its match, otherwise converts the data stream element.
+     *
+     * @param preparedRecord Prepared record
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of a collection writer
+     */
+    private void handleRecord(PreparedRecord preparedRecord) throws InterruptedException {
+        ConsumerRecord<String, byte[]> record = preparedRecord.getRecord();
+        RecordPosition recordPosition = preparedRecord.getRecordPosition();
+        this.offsetTracker.register(recordPosition);
+
+        AbstractImmutableDataStreamElement dataStreamElement = preparedRecord.getDataStreamElement();
+        if (preparedRecord.isIgnored()) {
+            this.ignoredRecords.increment();
+            this.offsetTracker.complete(recordPosition);
+        } else if (dataStreamElement == null) {
+            logger.info("Caught exception during generating data stream element from byte array: ", preparedRecord.getDecodeException());
+            this.decodeFailures.increment();
+            this.offsetTracker.complete(recordPosition);
+        } else if (!dataStreamElement.getStreamName().equals(record.topic())) {
+            logger.error("Cannot handle element ({}) since the stream name the data model assigns to the input stream element does not match the name of the Kafka topic via which it was received ({}).", dataStreamElement, record.topic());
+            this.offsetTracker.complete(recordPosition);
+        } else if (isAlreadyImportedContextRecord(recordPosition.getTopicPartition(), record.offset())) {
+            restoreMatchContext(dataStreamElement);
+            this.offsetTracker.complete(recordPosition);
+        } else if (preparedRecord.isEncodedWith(this.generationTimestampFirstDataStreamElementMap.get(dataStreamElement.getKey()), this.matchStartVideoOffsetMap.get(dataStreamElement.getKey()))) {
+            preparedRecord.getCollectionWriter().add(preparedRecord.getDocument(), recordPosition, preparedRecord.getOrigin());
+        } else {
+            handleDataStreamElement(dataStreamElement, record, recordPosition);
+        }
+    }
+
+    /**
+     * Handles a data stream element polled as a record from Kafka or released from the pending element buffer.
+     * Adds the resulting document to the batch of the corresponding collection writer (which blocks only if the writer of this collection cannot keep up).
+     *
+     * If the element does not result in a document (e.g., since its stream is not stored or it is dropped by the sampling policy of its stream), the Kafka record is completed immediately (unless the element is added to the pending element buffer).
+     *
+     * @param dataStreamElement Data stream element
+     * @param record            Kafka record the data stream element has been received with
+     * @param recordPosition    Position of the Kafka record the data stream element has been received with
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of a collection writer
+     */
+    private void handleDataStreamElement(AbstractImmutableDataStreamElement dataStreamElement, ConsumerRecord<String, byte[]> record, RecordPosition recordPosition) throws InterruptedException {
         try {
             if (dataStreamElement instanceof MatchMetadataStreamElement) {
                 MatchMetadataItem matchMetadataItem = new MatchMetadataItem((MatchMetadataStreamElement) dataStreamElement);
                 this.generationTimestampFirstDataStreamElementMap.put(matchMetadataItem.getMatchId(), matchMetadataItem.getGenerationTimestampFirstDataStreamElementOfTheMatch());
                 this.matchStartVideoOffsetMap.put(matchMetadataItem.getMatchId(), matchMetadataItem.getMatchStartVideoOffset());
-                matchDocuments.add(matchMetadataItem.toDocument());
+                this.matchesWriter.add(matchMetadataItem.toDocument(), recordPosition, new DocumentOrigin(dataStreamElement.getStreamName(), matchMetadataItem.getMatchId(), dataStreamElement.getGenerationTimestamp(), DocumentOrigin.NO_TS));
+                releasePendingElements(matchMetadataItem.getMatchId());
             } else {
+                Route route = getRoute(dataStreamElement);
                 Long generationTimestampFirstDataStreamElement = this.generationTimestampFirstDataStreamElementMap.get(dataStreamElement.getKey());
                 Long matchStartVideoOffset = this.matchStartVideoOffsetMap.get(dataStreamElement.getKey());
-                if (generationTimestampFirstDataStreamElement == null || matchStartVideoOffset == null) {
-                    this.waitList.addLast(dataStreamElement);
-                } else {
-                    DataItem dataItem = new DataItem(dataStreamElement, generationTimestampFirstDataStreamElement, matchStartVideoOffset);
-
-                    if (dataStreamElement.getStreamCategory().equals(AbstractImmutableDataStreamElement.StreamCategory.STATISTICS)) {
-                        statisticsDocuments.add(dataItem.toDocument());
-                    } else if (dataStreamElement.getStreamCategory().equals(AbstractImmutableDataStreamElement.StreamCategory.STATE)) {
-                        stateDocuments.add(dataItem.toDocument());
-                    } else if (dataStreamElement.getStreamCategory().equals(AbstractImmutableDataStreamElement.StreamCategory.EVENT)) {
-                        if (dataStreamElement.isAtomic()) {
-                            eventDocuments.add(dataItem.toDocument());
-                        } else {
-                            nonatomicEventDocuments.add(dataItem.toDocument());
-                        }
+                if (route.isIgnored()) {
+                    this.ignoredRecords.increment();
+                    this.offsetTracker.complete(recordPosition);
+                } else if (generationTimestampFirstDataStreamElement == null || matchStartVideoOffset == null) {
+                    if (!this.pendingElementBuffer.add(dataStreamElement, record, recordPosition)) {
+                        logger.warn("Drop element {} since the memory budget of its match is exhausted and spilling is disabled.", dataStreamElement);
+                        this.offsetTracker.complete(recordPosition);
                     }
+                } else if (route.isSampled() && !this.samplingPolicies.accept(dataStreamElement)) {
+                    route.getSampledOutCounter().increment();
+                    this.offsetTracker.complete(recordPosition);
+                } else if (route.isBucketed()) {
+                    this.stateBucketer.add(dataStreamElement, generationTimestampFirstDataStreamElement, matchStartVideoOffset, recordPosition);
+                } else {
+                    addDataItem(route.getCollectionWriter(), dataStreamElement, generationTimestampFirstDataStreamElement, matchStartVideoOffset, recordPosition);
                 }
             }
         } catch (AbstractImmutableDataStreamElement.CannotRetrieveInformationException | PositionOutOfRangeException e) {
             logger.error("Caught exception during handling element: {}", dataStreamElement, e);
+            this.offsetTracker.complete(recordPosition);
+        }
+    }
+
+    /**
+     * Encodes a data stream element together with the context of its match and adds the resulting document to the batch of a collection writer.
+     *
+     * @param collectionWriter                          Collection writer
+     * @param dataStreamElement                         Data stream element
+     * @param generationTimestampFirstDataStreamElement Generation timestamp (in ms) of the first data stream element of the match
+     * @param matchStartVideoOffset                     Video offset (in s) of the start of the match
+     * @param recordPosition                            Position of the Kafka record the data stream element has been received with
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element
+     * @throws PositionOutOfRangeException                                           Thrown if a position is not in interval [-180.0, 180.0).
+     * @throws InterruptedException                                                  Thrown if the thread is interrupted while waiting for free space in the queue of the collection writer
+     */
+    private static void addDataItem(CollectionWriter collectionWriter, AbstractImmutableDataStreamElement dataStreamElement, long generationTimestampFirstDataStreamElement, long matchStartVideoOffset, RecordPosition recordPosition) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException, PositionOutOfRangeException, InterruptedException {
+        collectionWriter.add(DataItemEncoder.encode(dataStreamElement, generationTimestampFirstDataStreamElement, matchStartVideoOffset, collectionWriter.createDocumentId(recordPosition)), recordPosition, createDocumentOrigin(dataStreamElement, generationTimestampFirstDataStreamElement));
+    }
+
+    /**
+     * Creates the origin of the document generated from a data stream element.
+     *
+     * @param dataStreamElement                         Data stream element
+     * @param generationTimestampFirstDataStreamElement Generation timestamp (in ms) of the first data stream element of the match
+     * @return Origin of the document
+     */
+    private static DocumentOrigin createDocumentOrigin(AbstractImmutableDataStreamElement dataStreamElement, long generationTimestampFirstDataStreamElement) {
+        long generationTimestamp = dataStreamElement.getGenerationTimestamp();
+        return new DocumentOrigin(dataStreamElement.getStreamName(), dataStreamElement.getKey(), generationTimestamp, generationTimestamp - generationTimestampFirstDataStreamElement);
+    }
+
+    /**
+     * Selects the collection writer for a data stream element (based on its stream category).
+     *
+     * @param dataStreamElement Data stream element
+     * @return Collection writer (null if the data stream element is not stored)
+     */
+    private CollectionWriter selectCollectionWriter(AbstractImmutableDataStreamElement dataStreamElement) {
+        if (dataStreamElement.getStreamCategory().equals(AbstractImmutableDataStreamElement.StreamCategory.STATISTICS)) {
+            return this.statisticsWriter;
+        } else if (dataStreamElement.getStreamCategory().equals(AbstractImmutableDataStreamElement.StreamCategory.STATE)) {
+            return this.statesWriter;
+        } else if (dataStreamElement.getStreamCategory().equals(AbstractImmutableDataStreamElement.StreamCategory.EVENT)) {
+            return dataStreamElement.isAtomic() ? this.eventsWriter : this.nonatomicEventsWriter;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the route of the stream of a data stream element (and learns it if the routing table does not contain it).
+     *
+     * @param dataStreamElement Data stream element (whose stream name matches the topic via which it was received)
+     * @return Route
+     */
+    private Route getRoute(AbstractImmutableDataStreamElement dataStreamElement) {
+        Route route = this.routingTable.get(dataStreamElement.getStreamName());
+        return route != null ? route : this.routingTable.learn(dataStreamElement.getStreamName(), createRoute(dataStreamElement));
+    }
+
+    /**
+     * Creates the route of the stream of a data stream element (based on its stream category and the sampling and bucketing configuration).
+     * Can be called by the decode workers.
+     *
+     * @param dataStreamElement Data stream element
+     * @return Route
+     */
+    private Route createRoute(AbstractImmutableDataStreamElement dataStreamElement) {
+        if (dataStreamElement instanceof MatchMetadataStreamElement) {
+            return Route.MATCH_METADATA;
+        }
+        CollectionWriter collectionWriter = selectCollectionWriter(dataStreamElement);
+        if (collectionWriter == null) {
+            return Route.IGNORE;
+        }
+        String streamName = dataStreamElement.getStreamName();
+        Counter sampledOutCounter = null;
+        if (this.samplingPolicies.hasPolicy(streamName)) {
+            // Resolved once per stream such that sampling out an element only increments the counter
+            sampledOutCounter = this.metricsRegistry.counter("elements_sampled_out_total", "Data stream elements dropped by the sampling policy of their stream", "stream", streamName);
+        }
+        return Route.toCollection(collectionWriter, sampledOutCounter, this.stateBucketer != null && collectionWriter == this.statesWriter);
+    }
+
+    /**
+     * Handles all elements of a match that have been waiting in the pending element buffer for its matchMetadata stream element (in the order in which they have been received).
+     * The spilled records are read back in chunks (of at most the memory budget of a match) such that they are never loaded into memory at once.
+     * If the spill file cannot be read, the consumption loop stops (the records which have not been completed are consumed again after the restart).
+     *
+     * @param matchId Match identifier
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of a collection writer
+     */
+    private void releasePendingElements(String matchId) throws InterruptedException {
+        for (PendingElement pendingElement : this.pendingElementBuffer.release(matchId)) {
+            handleDataStreamElement(pendingElement.getDataStreamElement(), pendingElement.getRecord(), pendingElement.getRecordPosition());
+        }
+        try (SpilledRecordReader spilledRecordReader = this.pendingElementBuffer.releaseSpilled(matchId)) {
+            List<ConsumerRecord<String, byte[]>> spilledRecords;
+            while (!(spilledRecords = spilledRecordReader.nextChunk()).isEmpty()) {
+                for (ConsumerRecord<String, byte[]> spilledRecord : spilledRecords) {
+                    handleRecord(spilledRecord);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Cannot read the spilled elements of match {}. The importer stops and the records which have not been completed are consumed again after the restart.", matchId, e);
+            this.failed = true;
+            this.runFlag = false;
+            this.mongoWriter.beginClose();
         }
     }
 
     /**
-     * Inserts many documents into a MongoDB collection.
+     * Checks if a record of a context topic has already been imported before the last restart.
      *
-     * @param collection MongoDB collection
-     * @param documents  Documents
+     * @param topicPartition Topic and partition of the record
+     * @param offset         Offset of the record
+     * @return True if the record has already been imported
      */
-    private void insertMany(MongoCollection collection, List<Document> documents) {
+    private boolean isAlreadyImportedContextRecord(TopicPartition topicPartition, long offset) {
+        Long contextReplayOffset = this.contextReplayOffsets.get(topicPartition);
+        return contextReplayOffset != null && offset < contextReplayOffset;
+    }
+
+    /**
+     * Restores the match context from an already imported data stream element without adding it to MongoDB again and handles the elements of the match that have been waiting for it.
+     *
+     * @param dataStreamElement Data stream element
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of a collection writer
+     */
+    private void restoreMatchContext(AbstractImmutableDataStreamElement dataStreamElement) throws InterruptedException {
+        if (dataStreamElement instanceof MatchMetadataStreamElement) {
+            try {
+                MatchMetadataItem matchMetadataItem = new MatchMetadataItem((MatchMetadataStreamElement) dataStreamElement);
+                this.generationTimestampFirstDataStreamElementMap.put(matchMetadataItem.getMatchId(), matchMetadataItem.getGenerationTimestampFirstDataStreamElementOfTheMatch());
+                this.matchStartVideoOffsetMap.put(matchMetadataItem.getMatchId(), matchMetadataItem.getMatchStartVideoOffset());
+                releasePendingElements(matchMetadataItem.getMatchId());
+            } catch (AbstractImmutableDataStreamElement.CannotRetrieveInformationException e) {
+                logger.error("Caught exception during restoring match context from element: {}", dataStreamElement, e);
+            }
+        }
+    }
+
+    /**
+     * Creates the pattern of the subscribed topics.
+     * Excludes internal topics (prefix __), changelog and metrics topics, and the forbidden topics from the included topics.
+     *
+     * @param includedTopics  Pattern of the included topics
+     * @param forbiddenTopics List of forbidden topics
+     * @return Pattern of the subscribed topics
+     */
+    private static Pattern createTopicPattern(Pattern includedTopics, List<String> forbiddenTopics) {
+        StringBuilder sb = new StringBuilder("(?!__)(?!.*changelog)(?!.*metrics)");
+        for (String topic : forbiddenTopics) {
+            if (!topic.trim().isEmpty()) {
+                sb.append("(?!").append(Pattern.quote(topic.trim())).append("$)");
+            }
+        }
+        sb.append("(?:").append(includedTopics.pattern()).append(")");
+        return Pattern.compile(sb.toString());
+    }
+
+    /**
+     * Updates the consumer lag of all assigned partitions (end offset minus position).
+     * Registers a lag gauge for every newly assigned partition.
+     */
+    private void updateConsumerLags() {
+        Map<TopicPartition, Long> endOffsets;
+        Map<TopicPartition, Long> positions = new HashMap<>();
         try {
-            if (!documents.isEmpty()) {
-                collection.insertMany(documents);
+            Set<TopicPartition> assignment = this.kafkaConsumer.assignment();
+            if (assignment.isEmpty()) {
+                return;
+            }
+            endOffsets = this.kafkaConsumer.endOffsets(assignment);
+            for (TopicPartition topicPartition : assignment) {
+                positions.put(topicPartition, this.kafkaConsumer.position(topicPartition));
+            }
+        } catch (KafkaException e) {
+            logger.warn("Cannot update consumer lag: {}", e.getMessage());
+            return;
+        }
+
+        for (Map.Entry<TopicPartition, Long> entry : endOffsets.entrySet()) {
+            final TopicPartition topicPartition = entry.getKey();
+            Long position = positions.get(topicPartition);
+            if (entry.getValue() != null && position != null) {
+                if (this.consumerLags.put(topicPartition, Math.max(0, entry.getValue() - position)) == null) {
+                    this.metricsRegistry.gauge("consumer_lag_records", "Records between the position of the importer and the end of the partition", new Gauge() {
+                        @Override
+                        public double getValue() {
+                            Long consumerLag = StreamImporter.this.consumerLags.get(topicPartition);
+                            return consumerLag == null ? Double.NaN : consumerLag;
+                        }
+                    }, "topic", topicPartition.topic(), "partition", String.valueOf(topicPartition.partition()));
+                }
             }
-        } catch (MongoWriteException e) {
-            logger.info("Cannot insert due to MongoWriteException: ", e);
-        } catch (MongoBulkWriteException e) {
-            logger.info("Cannot insert due to MongoBulkWriteException: ", e);
         }
     }
 
     /**
-     * Updater for the subscriptions of the Kafka consumer.
+     * Stores the committable offsets of the assigned partitions in MongoDB.
+     * Offsets of partitions which are not assigned anymore are never stored such that they cannot overwrite the progress of the new owner.
+     */
+    private void commitOffsets() {
+        Map<TopicPartition, Long> committableOffsets = this.offsetTracker.getCommittableOffsets();
+        committableOffsets.keySet().retainAll(this.kafkaConsumer.assignment());
+        try {
+            this.offsetStore.store(committableOffsets);
+            this.offsetTracker.markCommitted(committableOffsets);
+        } catch (MongoException e) {
+            logger.warn("Cannot store offsets: ", e);
+        }
+    }
+
+    /**
+     * Rebalance listener which stores the offsets of revoked partitions and resumes assigned partitions from their stored offsets.
+     * Called by the Kafka consumer in the consumption loop (during poll).
      */
-    private class SubscriptionUpdater implements Runnable {
+    private class OffsetRestoringRebalanceListener implements ConsumerRebalanceListener {
 
         /**
-         * Flag that indicates if the SubscriptionUpdater should update the subscriptions or not
+         * Stores the committable offsets before partitions are revoked and stops tracking them.
+         * Discards the waiting elements (in memory and spilled) and the open state buckets of the revoked partitions such that they are neither written nor registered again by this importer (their records are consumed by the new owner).
+         *
+         * @param partitions Revoked partitions
          */
-        private boolean subscriptionUpdaterRunFlag;
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            commitOffsets();
+            StreamImporter.this.offsetTracker.removePartitions(partitions);
+            StreamImporter.this.pendingElementBuffer.removePartitions(partitions);
+            if (StreamImporter.this.stateBucketer != null) {
+                StreamImporter.this.stateBucketer.removePartitions(partitions);
+            }
+            StreamImporter.this.backpressureController.removePartitions(partitions);
+            if (StreamImporter.this.backfillEndOffsets != null) {
+                StreamImporter.this.backfillEndOffsets.keySet().removeAll(partitions);
+            }
+            for (TopicPartition partition : partitions) {
+                StreamImporter.this.contextReplayOffsets.remove(partition);
+                if (StreamImporter.this.consumerLags.remove(partition) != null) {
+                    StreamImporter.this.metricsRegistry.remove("consumer_lag_records", "topic", partition.topic(), "partition", String.valueOf(partition.partition()));
+                }
+            }
+        }
 
         /**
-         * List of currently subscribed topics
+         * Removes the routes of topics which are no longer assigned and seeks the assigned partitions to their stored offsets (or to the beginning in the backfill mode).
+         * Partitions of context topics are consumed from the beginning to restore the match context.
+         * Partitions without stored offset are consumed from the beginning (auto.offset.reset=earliest).
+         *
+         * @param partitions Assigned partitions
          */
-        private List<String> currentlySubscribeTopics;
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            StreamImporter.this.offsetTracker.removePartitions(partitions); // start with a clean state (the consumption is resumed from the stored offsets)
+            Set<String> topics = new HashSet<>();
+            for (TopicPartition partition : partitions) {
+                topics.add(partition.topic());
+            }
+            StreamImporter.this.routingTable.retainTopics(topics);
+
+            if (StreamImporter.this.backfillEndOffsets != null) {
+                if (!partitions.isEmpty()) { // seekToBeginning with an empty collection would seek all assigned partitions
+                    StreamImporter.this.kafkaConsumer.seekToBeginning(partitions);
+                    StreamImporter.this.backfillEndOffsets.putAll(StreamImporter.this.kafkaConsumer.endOffsets(partitions));
+                }
+                logger.info("Assigned partitions: {} (backfill from the beginning up to the end offsets {})", partitions, StreamImporter.this.backfillEndOffsets);
+                return;
+            }
+
+            Map<TopicPartition, Long> storedOffsets = StreamImporter.this.offsetStore.load(partitions);
+            List<TopicPartition> contextPartitions = new LinkedList<>();
+            for (TopicPartition partition : partitions) {
+                Long storedOffset = storedOffsets.get(partition);
+                if (StreamImporter.this.contextTopics.contains(partition.topic())) {
+                    contextPartitions.add(partition);
+                    if (storedOffset != null) {
+                        StreamImporter.this.contextReplayOffsets.put(partition, storedOffset);
+                    }
+                } else if (storedOffset != null) {
+                    StreamImporter.this.kafkaConsumer.seek(partition, storedOffset);
+                }
+            }
+            if (!contextPartitions.isEmpty()) { // seekToBeginning with an empty collection would seek all assigned partitions
+                StreamImporter.this.kafkaConsumer.seekToBeginning(contextPartitions);
+            }
+            logger.info("Assigned partitions: {} (stored offsets: {})", partitions, storedOffsets);
+        }
+    }
+
+    /**
+     * Task of a decode worker which prepares a chunk of the polled records.
+     */
+    private class PrepareTask implements Callable<Void> {
 
         /**
-         * List of forbidden topics
+         * Records to prepare
          */
-        private final List<String> forbiddenTopics;
+        private final List<PreparedRecord> preparedRecords;
 
         /**
-         * SubscriptionUpdater constructor.
+         * PrepareTask constructor.
          *
-         * @param forbiddenTopics List of forbidden topics
+         * @param preparedRecords Records to prepare
          */
-        private SubscriptionUpdater(List<String> forbiddenTopics) {
-            this.subscriptionUpdaterRunFlag = true;
-            this.currentlySubscribeTopics = new LinkedList<>();
-            this.forbiddenTopics = forbiddenTopics;
-            StringBuilder sb = new StringBuilder("Forbidden topics: ");
-            for (String topic : forbiddenTopics) {
-                sb.append(topic).append(" ");
-            }
-            logger.info(sb.toString());
+        private PrepareTask(List<PreparedRecord> preparedRecords) {
+            this.preparedRecords = preparedRecords;
         }
 
         /**
-         * Continuously updates the subscriptions.
+         * Prepares the records of the chunk.
+         *
+         * @return null
          */
         @Override
-        public void run() {
-            while (this.subscriptionUpdaterRunFlag) {
-                synchronized (StreamImporter.this.kafkaConsumer) { // required for SubscriptionUpdater
-                    Set<String> topicSet = StreamImporter.this.kafkaConsumer.listTopics().keySet();
-
-                    List<String> topicsToSubscribe = new LinkedList<>();
-                    for (String topic : topicSet) {
-                        if (!topic.startsWith("__") && !topic.contains("changelog") && !topic.contains("metrics") && !this.forbiddenTopics.contains(topic)) {
-                            topicsToSubscribe.add(topic);
-                        }
-                    }
-
-                    if (haveTopicsChanged(topicsToSubscribe)) {
-                        StreamImporter.this.kafkaConsumer.subscribe(topicsToSubscribe);
-                        this.currentlySubscribeTopics = topicsToSubscribe;
-                        StringBuilder sb = new StringBuilder("New subscription list: ");
-                        for (String topic : topicsToSubscribe) {
-                            sb.append(topic).append(" ");
-                        }
-                        logger.info(sb.toString());
-                    }
-
-                }
-
-                try {
-                    Thread.sleep(StreamImporter.this.subscriptionInterval);
-                } catch (InterruptedException e) {
-                    logger.trace("InterruptedException in SubscriptionUpdater", e);
-                }
+        public Void call() {
+            for (PreparedRecord preparedRecord : this.preparedRecords) {
+                prepareRecord(preparedRecord);
             }
+            return null;
         }
+    }
+
+    /**
+     * Thread factory for the decode workers (daemon threads such that they do not prevent the JVM from exiting).
+     */
+    private static class DecodeWorkerThreadFactory implements ThreadFactory {
+
+        /**
+         * Number of created threads
+         */
+        private final AtomicInteger numberOfThreads = new AtomicInteger();
 
         /**
-         * Check if the topics have changed.
+         * Creates a decode worker thread.
          *
-         * @param newTopicsToSubscribe New list of topics
-         * @return True if the topics have changed
+         * @param runnable Runnable
+         * @return Thread
          */
-        private boolean haveTopicsChanged(List<String> newTopicsToSubscribe) {
-            if (this.currentlySubscribeTopics.size() != newTopicsToSubscribe.size()) {
-                return true;
-            } else {
-                for (String topic : this.currentlySubscribeTopics) {
-                    if (!newTopicsToSubscribe.contains(topic)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DecodeWorker-" + this.numberOfThreads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.backpressure;
+
+import ch.unibas.dmi.dbis.streamImporter.pending.PendingElementBuffer;
+import ch.unibas.dmi.dbis.streamImporter.routing.Route;
+import ch.unibas.dmi.dbis.streamImporter.routing.RoutingTable;
+import ch.unibas.dmi.dbis.streamImporter.writer.CollectionWriter;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pauses the Kafka partitions whose records cannot be written fast enough and resumes them as soon as the congestion has cleared.
+ * A collection writer is congested if its utilization (queue or in-flight inserts) exceeds the high-water mark and stays congested until it falls below the low-water mark.
+ * The pending element buffer is congested if its estimated memory consumption exceeds the high-water mark and stays congested until it falls below half of it.
+ * Paused partitions are not fetched anymore, but the consumption loop continues polling such that the consumer stays in its group.
+ * Partitions of context topics are never paused since their records release the pending elements.
+ * Must only be used by the consumption loop.
+ */
+public class BackpressureController {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BackpressureController.class);
+
+    /**
+     * Kafka consumer
+     */
+    private final Consumer<String, byte[]> kafkaConsumer;
+
+    /**
+     * Routing table which maps the topics to their collection writers
+     */
+    private final RoutingTable routingTable;
+
+    /**
+     * Collection writers whose utilization is observed
+     */
+    private final List<CollectionWriter> collectionWriters;
+
+    /**
+     * Buffer for data stream elements which wait for the matchMetadata stream element of their match
+     */
+    private final PendingElementBuffer pendingElementBuffer;
+
+    /**
+     * Topics whose partitions are never paused
+     */
+    private final List<String> contextTopics;
+
+    /**
+     * Utilization (between 0 and 1) above which a collection writer is congested
+     */
+    private final double highWaterMark;
+
+    /**
+     * Utilization (between 0 and 1) below which a congested collection writer is not congested anymore
+     */
+    private final double lowWaterMark;
+
+    /**
+     * Estimated memory consumption (in bytes) of the pending elements above which the pending element buffer is congested
+     */
+    private final long pendingHighWaterBytes;
+
+    /**
+     * Congested collection writers
+     */
+    private final Set<CollectionWriter> congestedCollectionWriters;
+
+    /**
+     * Paused partitions
+     */
+    private final Set<TopicPartition> pausedPartitions;
+
+    /**
+     * Specifies if the pending element buffer is congested
+     */
+    private boolean pendingCongested;
+
+    /**
+     * BackpressureController constructor.
+     *
+     * @param kafkaConsumer         Kafka consumer
+     * @param routingTable          Routing table which maps the topics to their collection writers
+     * @param collectionWriters     Collection writers whose utilization is observed
+     * @param pendingElementBuffer  Buffer for data stream elements which wait for the matchMetadata stream element of their match
+     * @param contextTopics         Topics whose partitions are never paused
+     * @param highWaterMark         Utilization (between 0 and 1) above which a collection writer is congested
+     * @param lowWaterMark          Utilization (between 0 and 1) below which a congested collection writer is not congested anymore
+     * @param pendingHighWaterBytes Estimated memory consumption (in bytes) of the pending elements above which the pending element buffer is congested
+     */
+    public BackpressureController(Consumer<String, byte[]> kafkaConsumer, RoutingTable routingTable, List<CollectionWriter> collectionWriters, PendingElementBuffer pendingElementBuffer, List<String> contextTopics, double highWaterMark, double lowWaterMark, long pendingHighWaterBytes) {
+        if (lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("The low-water mark (" + lowWaterMark + ") must not exceed the high-water mark (" + highWaterMark + ").");
+        }
+        this.kafkaConsumer = kafkaConsumer;
+        this.routingTable = routingTable;
+        this.collectionWriters = collectionWriters;
+        this.pendingElementBuffer = pendingElementBuffer;
+        this.contextTopics = contextTopics;
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+        this.pendingHighWaterBytes = pendingHighWaterBytes;
+        this.congestedCollectionWriters = new HashSet<>();
+        this.pausedPartitions = new HashSet<>();
+        this.pendingCongested = false;
+    }
+
+    /**
+     * Updates the congestion state of the collection writers and of the pending element buffer and pauses or resumes the assigned partitions accordingly.
+     * Has to be called by the consumption loop after every poll.
+     */
+    public void update() {
+        for (CollectionWriter collectionWriter : this.collectionWriters) {
+            double utilization = collectionWriter.getUtilization();
+            if (utilization >= this.highWaterMark) {
+                if (this.congestedCollectionWriters.add(collectionWriter)) {
+                    logger.info("Collection writer {} is congested (utilization: {}).", collectionWriter.getName(), utilization);
+                }
+            } else if (utilization <= this.lowWaterMark) {
+                if (this.congestedCollectionWriters.remove(collectionWriter)) {
+                    logger.info("Collection writer {} is not congested anymore (utilization: {}).", collectionWriter.getName(), utilization);
+                }
+            }
+        }
+
+        long pendingBytes = this.pendingElementBuffer.getBytes();
+        if (!this.pendingCongested && pendingBytes >= this.pendingHighWaterBytes) {
+            this.pendingCongested = true;
+            logger.info("Pending element buffer is congested ({} bytes).", pendingBytes);
+        } else if (this.pendingCongested && pendingBytes <= this.pendingHighWaterBytes / 2) {
+            this.pendingCongested = false;
+            logger.info("Pending element buffer is not congested anymore ({} bytes).", pendingBytes);
+        }
+
+        Set<TopicPartition> partitionsToPause = new HashSet<>();
+        Set<TopicPartition> partitionsToResume = new HashSet<>();
+        for (TopicPartition partition : this.kafkaConsumer.assignment()) {
+            boolean paused = this.pausedPartitions.contains(partition);
+            boolean congested = isCongested(partition.topic());
+            if (congested && !paused) {
+                partitionsToPause.add(partition);
+            } else if (!congested && paused) {
+                partitionsToResume.add(partition);
+            }
+        }
+        if (!partitionsToPause.isEmpty()) {
+            this.kafkaConsumer.pause(partitionsToPause);
+            this.pausedPartitions.addAll(partitionsToPause);
+            logger.info("Paused partitions: {}", partitionsToPause);
+        }
+        if (!partitionsToResume.isEmpty()) {
+            this.kafkaConsumer.resume(partitionsToResume);
+            this.pausedPartitions.removeAll(partitionsToResume);
+            logger.info("Resumed partitions: {}", partitionsToResume);
+        }
+    }
+
+    /**
+     * Checks if the records of a topic cannot be written fast enough.
+     *
+     * @param topic Topic
+     * @return True if the partitions of the topic have to be paused
+     */
+    private boolean isCongested(String topic) {
+        if (this.contextTopics.contains(topic)) {
+            return false;
+        }
+        if (this.pendingCongested) {
+            return true;
+        }
+        Route route = this.routingTable.get(topic);
+        return route != null && route.getCollectionWriter() != null && this.congestedCollectionWriters.contains(route.getCollectionWriter());
+    }
+
+    /**
+     * Forgets revoked partitions (partitions are not paused anymore after they have been reassigned).
+     *
+     * @param partitions Revoked partitions
+     */
+    public void removePartitions(Collection<TopicPartition> partitions) {
+        this.pausedPartitions.removeAll(partitions);
+    }
+
+    /**
+     * Returns the number of paused partitions.
+     *
+     * @return Number of paused partitions
+     */
+    public int getNumberOfPausedPartitions() {
+        return this.pausedPartitions.size();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.bucketing;
+
+import ch.unibas.dmi.dbis.streamImporter.dataItems.PositionOutOfRangeException;
+import ch.unibas.dmi.dbis.streamImporter.dataItems.StateBucketItem;
+import ch.unibas.dmi.dbis.streamImporter.freshness.DocumentOrigin;
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import ch.unibas.dmi.dbis.streamImporter.writer.CollectionWriter;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Groups consecutive state data stream elements of the same stream, match, and objects into time-series buckets (one document per bucket instead of one document per element).
+ * A bucket covers at most one time window (in match time) and a maximum number of samples. It is written as soon as it is full, as soon as an element of a later window arrives, or when its linger time expires.
+ * The Kafka records of the samples are completed when the bucket has been written.
+ * Must only be used by the consumption loop.
+ */
+public class StateBucketer {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StateBucketer.class);
+
+    /**
+     * Collection writer for the buckets
+     */
+    private final CollectionWriter collectionWriter;
+
+    /**
+     * Length (in ms of match time) of the time window covered by a bucket
+     */
+    private final long window;
+
+    /**
+     * Maximum number of samples per bucket
+     */
+    private final int maxSamples;
+
+    /**
+     * Maximum time (in ms) a bucket stays open after its creation
+     */
+    private final long linger;
+
+    /**
+     * Open buckets per stream, match, and objects (in the order of their creation)
+     */
+    private final LinkedHashMap<String, OpenBucket> openBuckets;
+
+    /**
+     * StateBucketer constructor.
+     *
+     * @param collectionWriter Collection writer for the buckets
+     * @param window           Length (in ms of match time) of the time window covered by a bucket
+     * @param maxSamples       Maximum number of samples per bucket
+     * @param linger           Maximum time (in ms) a bucket stays open after its creation
+     */
+    public StateBucketer(CollectionWriter collectionWriter, long window, int maxSamples, long linger) {
+        this.collectionWriter = collectionWriter;
+        this.window = window;
+        this.maxSamples = maxSamples;
+        this.linger = linger;
+        this.openBuckets = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a state data stream element to the open bucket of its stream, match, and objects.
+     * Writes the open bucket first if the element belongs to a later (or earlier) time window or if the match context has changed, and writes the bucket afterwards if it is full.
+     *
+     * @param dataStreamElement                         Data stream element
+     * @param generationTimestampFirstDataStreamElement Generation timestamp (in ms) of the first data stream element of the match
+     * @param matchStartVideoOffset                     Video offset (in s) of the start of the match
+     * @param recordPosition                            Position of the Kafka record the data stream element has been received with
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element (the record is not added)
+     * @throws PositionOutOfRangeException                                           Thrown if a position is not in interval [-180.0, 180.0) (the record is not added)
+     * @throws InterruptedException                                                  Thrown if the thread is interrupted while waiting for free space in the queue of the collection writer
+     */
+    public void add(AbstractImmutableDataStreamElement dataStreamElement, long generationTimestampFirstDataStreamElement, long matchStartVideoOffset, RecordPosition recordPosition) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException, PositionOutOfRangeException, InterruptedException {
+        String bucketKey = createBucketKey(dataStreamElement);
+        long generationTimestamp = dataStreamElement.getGenerationTimestamp();
+        long ts = generationTimestamp - generationTimestampFirstDataStreamElement;
+        long windowIndex = Math.floorDiv(ts, this.window);
+
+        OpenBucket openBucket = this.openBuckets.get(bucketKey);
+        if (openBucket != null && (openBucket.windowIndex != windowIndex || openBucket.stateBucketItem.getGenerationTimestampFirstDataStreamElement() != generationTimestampFirstDataStreamElement || openBucket.stateBucketItem.getMatchStartVideoOffset() != matchStartVideoOffset)) {
+            this.openBuckets.remove(bucketKey);
+            write(openBucket);
+            openBucket = null;
+        }
+
+        if (openBucket == null) {
+            StateBucketItem stateBucketItem = new StateBucketItem(dataStreamElement, generationTimestampFirstDataStreamElement, matchStartVideoOffset);
+            stateBucketItem.add(dataStreamElement);
+            openBucket = new OpenBucket(stateBucketItem, windowIndex, System.currentTimeMillis());
+            this.openBuckets.put(bucketKey, openBucket);
+        } else {
+            openBucket.stateBucketItem.add(dataStreamElement);
+        }
+        openBucket.recordPositions.add(recordPosition);
+        openBucket.origin = new DocumentOrigin(dataStreamElement.getStreamName(), dataStreamElement.getKey(), generationTimestamp, ts);
+
+        if (openBucket.stateBucketItem.getNumberOfSamples() >= this.maxSamples) {
+            this.openBuckets.remove(bucketKey);
+            write(openBucket);
+        }
+    }
+
+    /**
+     * Writes all buckets whose linger time has expired.
+     *
+     * @param now Current time (in ms)
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of the collection writer
+     */
+    public void writeExpiredBuckets(long now) throws InterruptedException {
+        Iterator<OpenBucket> iterator = this.openBuckets.values().iterator();
+        while (iterator.hasNext()) {
+            OpenBucket openBucket = iterator.next();
+            if (now - openBucket.creationTime < this.linger) {
+                break; // the buckets are ordered by their creation time
+            }
+            iterator.remove();
+            write(openBucket);
+        }
+    }
+
+    /**
+     * Writes all open buckets (e.g., before the importer stops).
+     *
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of the collection writer
+     */
+    public void writeAllBuckets() throws InterruptedException {
+        logger.info("Write {} open state buckets", this.openBuckets.size());
+        writeExpiredBuckets(Long.MAX_VALUE);
+    }
+
+    /**
+     * Discards the open buckets whose samples all stem from partitions which are no longer assigned (e.g., since they have been revoked) such that they are not written by this importer (their records are consumed by the new owner of the partition).
+     * Buckets which also contain samples of assigned partitions are kept (the samples of the removed partitions might then be written by both importers, i.e., as overlapping buckets).
+     *
+     * @param partitions Partitions
+     */
+    public void removePartitions(Collection<TopicPartition> partitions) {
+        Iterator<OpenBucket> iterator = this.openBuckets.values().iterator();
+        while (iterator.hasNext()) {
+            OpenBucket openBucket = iterator.next();
+            boolean allRemoved = true;
+            for (RecordPosition recordPosition : openBucket.recordPositions) {
+                if (!partitions.contains(recordPosition.getTopicPartition())) {
+                    allRemoved = false;
+                    break;
+                }
+            }
+            if (allRemoved) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of open buckets.
+     *
+     * @return Number of open buckets
+     */
+    public int getNumberOfOpenBuckets() {
+        return this.openBuckets.size();
+    }
+
+    /**
+     * Encodes a bucket and adds it to the collection writer.
+     * In case of idempotent writes, the _id is derived from the positions of all records of the bucket.
+     * The bucket boundaries are not deterministic (linger time, samples counted from the start of the consumption), hence a replayed bucket with different samples gets a different _id and is stored as an overlapping bucket instead of being treated as already inserted.
+     *
+     * @param openBucket Bucket
+     * @throws InterruptedException Thrown if the thread is interrupted while waiting for free space in the queue of the collection writer
+     */
+    private void write(OpenBucket openBucket) throws InterruptedException {
+        this.collectionWriter.add(openBucket.stateBucketItem.encode(this.collectionWriter.createDocumentId(openBucket.recordPositions)), openBucket.recordPositions, openBucket.origin);
+    }
+
+    /**
+     * Creates the key of the bucket of a data stream element (stream name, match identifier, and object identifiers).
+     *
+     * @param dataStreamElement Data stream element
+     * @return Bucket key
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element
+     */
+    private static String createBucketKey(AbstractImmutableDataStreamElement dataStreamElement) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException {
+        StringBuilder sb = new StringBuilder(dataStreamElement.getStreamName()).append('/').append(dataStreamElement.getKey());
+        List<String> objectIdentifiers = dataStreamElement.getObjectIdentifiersList();
+        if (objectIdentifiers != null) {
+            for (String objectIdentifier : objectIdentifiers) {
+                sb.append('/').append(objectIdentifier);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Open bucket together with the positions of the Kafka records of its samples.
+     */
+    private static class OpenBucket {
+
+        /**
+         * Bucket data item
+         */
+        private final StateBucketItem stateBucketItem;
+
+        /**
+         * Index of the time window (ts divided by the window length) covered by the bucket
+         */
+        private final long windowIndex;
+
+        /**
+         * Time (in ms) when the bucket has been created
+         */
+        private final long creationTime;
+
+        /**
+         * Positions of the Kafka records of the samples
+         */
+        private final List<RecordPosition> recordPositions;
+
+        /**
+         * Origin of the latest sample (used for the freshness of the bucket)
+         */
+        private DocumentOrigin origin;
+
+        /**
+         * OpenBucket constructor.
+         *
+         * @param stateBucketItem Bucket data item
+         * @param windowIndex     Index of the time window covered by the bucket
+         * @param creationTime    Time (in ms) when the bucket has been created
+         */
+        private OpenBucket(StateBucketItem stateBucketItem, long windowIndex, long creationTime) {
+            this.stateBucketItem = stateBucketItem;
+            this.windowIndex = windowIndex;
+            this.creationTime = creationTime;
+            this.recordPositions = new ArrayList<>();
+        }
+    }
+}
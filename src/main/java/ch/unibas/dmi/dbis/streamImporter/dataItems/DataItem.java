@@ -123,16 +123,14 @@ public class DataItem {
 
         this.xyCoords = new LinkedList<>();
         this.zCoords = new LinkedList<>();
-        for (Geometry.Vector position : dataStreamElement.getPositionsList()) {
-            if (position.x >= 180.0 || position.x < -180.0 || position.y >= 180.0 || position.y < -180.0) { // x and y in [-180,180) (restriction by MongoDB: https://docs.mongodb.com/manual/tutorial/build-a-2d-index/)
-                throw new PositionOutOfRangeException("X or Y coordinate of " + position.toString() + " is not in interval [-180.0, 180.0).");
-            } else {
-                List<Double> xyCoord = new LinkedList<>();
-                xyCoord.add(position.x);
-                xyCoord.add(position.y);
-                this.xyCoords.add(xyCoord);
-                this.zCoords.add(position.z);
-            }
+        List<Geometry.Vector> positions = dataStreamElement.getPositionsList();
+        checkPositions(positions);
+        for (Geometry.Vector position : positions) {
+            List<Double> xyCoord = new LinkedList<>();
+            xyCoord.add(position.x);
+            xyCoord.add(position.y);
+            this.xyCoords.add(xyCoord);
+            this.zCoords.add(position.z);
         }
 
         this.additionalInfo = new Document();
@@ -178,6 +176,20 @@ public class DataItem {
         return document;
     }
 
+    /**
+     * Checks if all positions can be stored in a 2d index.
+     *
+     * @param positions Positions
+     * @throws PositionOutOfRangeException Thrown if a position is not in interval [-180.0, 180.0).
+     */
+    static void checkPositions(List<Geometry.Vector> positions) throws PositionOutOfRangeException {
+        for (Geometry.Vector position : positions) {
+            if (position.x >= 180.0 || position.x < -180.0 || position.y >= 180.0 || position.y < -180.0) { // x and y in [-180,180) (restriction by MongoDB: https://docs.mongodb.com/manual/tutorial/build-a-2d-index/)
+                throw new PositionOutOfRangeException("X or Y coordinate of " + position.toString() + " is not in interval [-180.0, 180.0).");
+            }
+        }
+    }
+
     /**
      * Calculates the ts for the data item.
      * ts = Milliseconds since the start of the match
@@ -186,7 +198,7 @@ public class DataItem {
      * @param generationTimestampFirstDataStreamElement Generation timestamp from the first data stream element of the match
      * @return Timestamp for the data item
      */
-    private static int calculateTs(long generationTimestamp, long generationTimestampFirstDataStreamElement) {
+    static int calculateTs(long generationTimestamp, long generationTimestampFirstDataStreamElement) {
         return (int) (generationTimestamp - generationTimestampFirstDataStreamElement);
     }
 
@@ -199,7 +211,7 @@ public class DataItem {
      * @param matchStartVideoOffset                     Offset in seconds for the start of the match
      * @return VideoTS for the data item
      */
-    private static int calculateVideoTs(long generationTimestamp, long generationTimestampFirstDataStreamElement, long matchStartVideoOffset) {
+    static int calculateVideoTs(long generationTimestamp, long generationTimestampFirstDataStreamElement, long matchStartVideoOffset) {
         return (int) (matchStartVideoOffset + ((generationTimestamp - generationTimestampFirstDataStreamElement) / 1000));
     }
 }
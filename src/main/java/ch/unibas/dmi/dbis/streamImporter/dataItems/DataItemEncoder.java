@@ -0,0 +1,200 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.dataItems;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import ch.unibas.dmi.dbis.streamTeam.dataStructures.Geometry;
+import ch.unibas.dmi.dbis.streamTeam.dataStructures.NonAtomicEventPhase;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.io.BasicOutputBuffer;
+import org.javatuples.Pair;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Encoder which writes a data stream element together with the context of its match directly to a BSON document (without building a DataItem and a Document first).
+ * The generated documents are byte-compatible with the documents generated by DataItem.toDocument() (same field order and BSON types) and thus fulfill the same schemata.
+ */
+public final class DataItemEncoder {
+
+    /**
+     * Default codec registry of the MongoDB driver (used for payload values which are not written directly)
+     */
+    private static final CodecRegistry CODEC_REGISTRY = MongoClientSettings.getDefaultCodecRegistry();
+
+    /**
+     * Codec for the _id
+     */
+    static final BsonValueCodec ID_CODEC = new BsonValueCodec();
+
+    /**
+     * Encoder context
+     */
+    static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+    /**
+     * DataItemEncoder constructor (not instantiable).
+     */
+    private DataItemEncoder() {
+    }
+
+    /**
+     * Encodes a data stream element to a BSON document.
+     *
+     * @param dataStreamElement                         Data stream element
+     * @param generationTimestampFirstDataStreamElement Generation timestamp (in ms) of the first data stream element of the match
+     * @param matchStartVideoOffset                     Video offset (in s) of the start of the match
+     * @param id                                        _id of the document (written as first field)
+     * @return BSON document
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element
+     * @throws PositionOutOfRangeException                                           Thrown if a position is not in interval [-180.0, 180.0).
+     */
+    public static RawBsonDocument encode(AbstractImmutableDataStreamElement dataStreamElement, long generationTimestampFirstDataStreamElement, long matchStartVideoOffset, BsonValue id) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException, PositionOutOfRangeException {
+        // Retrieve the positions first such that no partial document is written if a position is out of range
+        List<Geometry.Vector> positions = dataStreamElement.getPositionsList();
+        DataItem.checkPositions(positions);
+        long generationTimestamp = dataStreamElement.getGenerationTimestamp();
+
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+
+            writer.writeName("_id");
+            ID_CODEC.encode(writer, id, ENCODER_CONTEXT);
+
+            writeString(writer, "type", dataStreamElement.getStreamName());
+            writeString(writer, "matchId", dataStreamElement.getKey());
+            writer.writeInt32("ts", DataItem.calculateTs(generationTimestamp, generationTimestampFirstDataStreamElement));
+            writer.writeInt32("videoTs", DataItem.calculateVideoTs(generationTimestamp, generationTimestampFirstDataStreamElement, matchStartVideoOffset));
+
+            writer.writeStartArray("xyCoords");
+            for (Geometry.Vector position : positions) {
+                writer.writeStartArray();
+                writer.writeDouble(position.x);
+                writer.writeDouble(position.y);
+                writer.writeEndArray();
+            }
+            writer.writeEndArray();
+
+            writer.writeStartArray("zCoords");
+            for (Geometry.Vector position : positions) {
+                writer.writeDouble(position.z);
+            }
+            writer.writeEndArray();
+
+            writeStringArray(writer, "playerIds", dataStreamElement.getObjectIdentifiersList());
+            writeStringArray(writer, "teamIds", dataStreamElement.getGroupIdentifiersList());
+
+            writer.writeStartDocument("additionalInfo");
+            for (Pair<String, Serializable> field : dataStreamElement.getPayloadFieldsAsKeyValueList()) {
+                writer.writeName(field.getValue0());
+                writeValue(writer, field.getValue1());
+            }
+            writer.writeEndDocument();
+
+            if (dataStreamElement.getStreamCategory().equals(AbstractImmutableDataStreamElement.StreamCategory.EVENT) && !dataStreamElement.isAtomic()) {
+                String eventId = dataStreamElement.getEventIdentifier();
+                NonAtomicEventPhase phase = dataStreamElement.getPhase();
+                Long seqNo = dataStreamElement.getSequenceNumber();
+                if (eventId != null && phase != null && seqNo != null) {
+                    writer.writeString("eventId", eventId);
+                    writer.writeString("phase", phase.toString());
+                    writer.writeInt64("seqNo", seqNo);
+                }
+            }
+
+            writer.writeEndDocument();
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    /**
+     * Writes a string field (or a null field if the value is null).
+     *
+     * @param writer BSON writer
+     * @param name   Field name
+     * @param value  Value
+     */
+    static void writeString(BsonWriter writer, String name, String value) {
+        if (value == null) {
+            writer.writeNull(name);
+        } else {
+            writer.writeString(name, value);
+        }
+    }
+
+    /**
+     * Writes an array of strings (or a null field if the list is null).
+     *
+     * @param writer BSON writer
+     * @param name   Field name
+     * @param values Values
+     */
+    static void writeStringArray(BsonWriter writer, String name, List<String> values) {
+        if (values == null) {
+            writer.writeNull(name);
+            return;
+        }
+        writer.writeStartArray(name);
+        for (String value : values) {
+            if (value == null) {
+                writer.writeNull();
+            } else {
+                writer.writeString(value);
+            }
+        }
+        writer.writeEndArray();
+    }
+
+    /**
+     * Writes a payload value.
+     * The common types are written directly, all other types are written with the codec the default codec registry provides for them (as done by the DocumentCodec).
+     *
+     * @param writer BSON writer
+     * @param value  Value
+     */
+    @SuppressWarnings("unchecked")
+    static void writeValue(BsonWriter writer, Object value) {
+        if (value == null) {
+            writer.writeNull();
+        } else if (value instanceof String) {
+            writer.writeString((String) value);
+        } else if (value instanceof Integer) {
+            writer.writeInt32((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeInt64((Long) value);
+        } else if (value instanceof Double) {
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            writer.writeBoolean((Boolean) value);
+        } else {
+            Codec<Object> codec = (Codec<Object>) CODEC_REGISTRY.get(value.getClass());
+            codec.encode(writer, value, ENCODER_CONTEXT);
+        }
+    }
+}
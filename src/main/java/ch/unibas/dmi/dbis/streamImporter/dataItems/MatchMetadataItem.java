@@ -250,7 +250,9 @@ public class MatchMetadataItem {
                 .append("awayPlayerNames", this.awayPlayerNames)
                 .append("videoPath", this.videoPath)
                 .append("homeTeamColor", this.homeTeamColor)
-                .append("awayTeamColor", this.awayTeamColor);
+                .append("awayTeamColor", this.awayTeamColor)
+                .append("generationTimestampFirstDataStreamElement", this.generationTimestampFirstDataStreamElementOfTheMatch)
+                .append("matchStartVideoOffset", this.matchStartVideoOffset);
         return document;
     }
 
@@ -0,0 +1,247 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.dataItems;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import ch.unibas.dmi.dbis.streamTeam.dataStructures.Geometry;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+import org.javatuples.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State bucket data item.
+ * Groups consecutive state data stream elements of the same stream, match, and objects into one document (time-series bucket) with packed per-sample arrays.
+ */
+public class StateBucketItem {
+
+    /**
+     * Type of the data items (stream name of the data stream elements)
+     */
+    private final String type;
+
+    /**
+     * Identifier of the match the data items belong to
+     */
+    private final String matchId;
+
+    /**
+     * Array containing the involved players (object identifiers tuple of the first data stream element)
+     */
+    private final List<String> playerIds;
+
+    /**
+     * Array containing the involved teams (group identifiers tuple of the first data stream element)
+     */
+    private final List<String> teamIds;
+
+    /**
+     * Generation timestamp (in ms) of the first data stream element of the match
+     */
+    private final long generationTimestampFirstDataStreamElement;
+
+    /**
+     * Video offset (in s) of the start of the match
+     */
+    private final long matchStartVideoOffset;
+
+    /**
+     * Time in ms since the start of the match per sample
+     */
+    private final List<Integer> ts;
+
+    /**
+     * Video offset (in s) per sample
+     */
+    private final List<Integer> videoTs;
+
+    /**
+     * Positions per sample
+     */
+    private final List<List<Geometry.Vector>> positions;
+
+    /**
+     * Payload fields per sample
+     */
+    private final List<List<Pair<String, Serializable>>> additionalInfos;
+
+    /**
+     * Minimum ts of all samples
+     */
+    private int minTs;
+
+    /**
+     * Maximum ts of all samples
+     */
+    private int maxTs;
+
+    /**
+     * StateBucketItem constructor.
+     * Creates an empty bucket for the stream, match, and objects of a data stream element (the element itself is not added).
+     *
+     * @param dataStreamElement                         Data stream element
+     * @param generationTimestampFirstDataStreamElement Generation timestamp (in ms) of the first data stream element of the match
+     * @param matchStartVideoOffset                     Video offset (in s) of the start of the match
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element
+     */
+    public StateBucketItem(AbstractImmutableDataStreamElement dataStreamElement, long generationTimestampFirstDataStreamElement, long matchStartVideoOffset) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException {
+        this.type = dataStreamElement.getStreamName();
+        this.matchId = dataStreamElement.getKey();
+        this.playerIds = dataStreamElement.getObjectIdentifiersList();
+        this.teamIds = dataStreamElement.getGroupIdentifiersList();
+        this.generationTimestampFirstDataStreamElement = generationTimestampFirstDataStreamElement;
+        this.matchStartVideoOffset = matchStartVideoOffset;
+        this.ts = new ArrayList<>();
+        this.videoTs = new ArrayList<>();
+        this.positions = new ArrayList<>();
+        this.additionalInfos = new ArrayList<>();
+        this.minTs = Integer.MAX_VALUE;
+        this.maxTs = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Adds a data stream element as sample to the bucket.
+     * The bucket is not modified if an exception is thrown.
+     *
+     * @param dataStreamElement Data stream element (of the stream, match, and objects of the bucket)
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element
+     * @throws PositionOutOfRangeException                                           Thrown if a position is not in interval [-180.0, 180.0).
+     */
+    public void add(AbstractImmutableDataStreamElement dataStreamElement) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException, PositionOutOfRangeException {
+        List<Geometry.Vector> samplePositions = dataStreamElement.getPositionsList();
+        DataItem.checkPositions(samplePositions);
+        List<Pair<String, Serializable>> additionalInfo = dataStreamElement.getPayloadFieldsAsKeyValueList();
+        long generationTimestamp = dataStreamElement.getGenerationTimestamp();
+
+        int sampleTs = DataItem.calculateTs(generationTimestamp, this.generationTimestampFirstDataStreamElement);
+        this.ts.add(sampleTs);
+        this.videoTs.add(DataItem.calculateVideoTs(generationTimestamp, this.generationTimestampFirstDataStreamElement, this.matchStartVideoOffset));
+        this.positions.add(samplePositions);
+        this.additionalInfos.add(additionalInfo);
+        this.minTs = Math.min(this.minTs, sampleTs);
+        this.maxTs = Math.max(this.maxTs, sampleTs);
+    }
+
+    /**
+     * Returns the number of samples in the bucket.
+     *
+     * @return Number of samples
+     */
+    public int getNumberOfSamples() {
+        return this.ts.size();
+    }
+
+    /**
+     * Returns the generation timestamp (in ms) of the first data stream element of the match the bucket has been created with.
+     *
+     * @return Generation timestamp (in ms) of the first data stream element of the match
+     */
+    public long getGenerationTimestampFirstDataStreamElement() {
+        return this.generationTimestampFirstDataStreamElement;
+    }
+
+    /**
+     * Returns the video offset (in s) of the start of the match the bucket has been created with.
+     *
+     * @return Video offset (in s) of the start of the match
+     */
+    public long getMatchStartVideoOffset() {
+        return this.matchStartVideoOffset;
+    }
+
+    /**
+     * Encodes the bucket to a BSON document.
+     * Each per-sample array (ts, videoTs, xyCoords, zCoords, additionalInfo) has one entry per sample in the order in which the samples have been added.
+     *
+     * @param id _id of the document (written as first field)
+     * @return BSON document
+     */
+    public RawBsonDocument encode(BsonValue id) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+
+            writer.writeName("_id");
+            DataItemEncoder.ID_CODEC.encode(writer, id, DataItemEncoder.ENCODER_CONTEXT);
+
+            DataItemEncoder.writeString(writer, "type", this.type);
+            DataItemEncoder.writeString(writer, "matchId", this.matchId);
+            DataItemEncoder.writeStringArray(writer, "playerIds", this.playerIds);
+            DataItemEncoder.writeStringArray(writer, "teamIds", this.teamIds);
+            writer.writeInt32("minTs", this.minTs);
+            writer.writeInt32("maxTs", this.maxTs);
+            writer.writeInt32("count", this.ts.size());
+
+            writer.writeStartArray("ts");
+            for (Integer sampleTs : this.ts) {
+                writer.writeInt32(sampleTs);
+            }
+            writer.writeEndArray();
+
+            writer.writeStartArray("videoTs");
+            for (Integer sampleVideoTs : this.videoTs) {
+                writer.writeInt32(sampleVideoTs);
+            }
+            writer.writeEndArray();
+
+            writer.writeStartArray("xyCoords");
+            for (List<Geometry.Vector> samplePositions : this.positions) {
+                writer.writeStartArray();
+                for (Geometry.Vector position : samplePositions) {
+                    writer.writeStartArray();
+                    writer.writeDouble(position.x);
+                    writer.writeDouble(position.y);
+                    writer.writeEndArray();
+                }
+                writer.writeEndArray();
+            }
+            writer.writeEndArray();
+
+            writer.writeStartArray("zCoords");
+            for (List<Geometry.Vector> samplePositions : this.positions) {
+                writer.writeStartArray();
+                for (Geometry.Vector position : samplePositions) {
+                    writer.writeDouble(position.z);
+                }
+                writer.writeEndArray();
+            }
+            writer.writeEndArray();
+
+            writer.writeStartArray("additionalInfo");
+            for (List<Pair<String, Serializable>> additionalInfo : this.additionalInfos) {
+                writer.writeStartDocument();
+                for (Pair<String, Serializable> field : additionalInfo) {
+                    writer.writeName(field.getValue0());
+                    DataItemEncoder.writeValue(writer, field.getValue1());
+                }
+                writer.writeEndDocument();
+            }
+            writer.writeEndArray();
+
+            writer.writeEndDocument();
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+}
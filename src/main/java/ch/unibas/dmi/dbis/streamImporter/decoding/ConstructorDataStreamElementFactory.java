@@ -0,0 +1,80 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.decoding;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Factory which creates data stream elements of a single class via a pre-resolved constructor handle.
+ * The constructor has the same parameters as the generic path of the data model (key, content, offset, and two optional values which the importer does not use).
+ */
+public final class ConstructorDataStreamElementFactory implements DataStreamElementFactory {
+
+    /**
+     * Type of the constructor (key, content, offset, and two optional values)
+     */
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, String.class, byte[].class, Long.class, Long.class, Long.class);
+
+    /**
+     * Class of the data stream elements
+     */
+    private final Class<? extends AbstractImmutableDataStreamElement> dataStreamElementClass;
+
+    /**
+     * Constructor handle (adapted to return AbstractImmutableDataStreamElement)
+     */
+    private final MethodHandle constructorHandle;
+
+    /**
+     * ConstructorDataStreamElementFactory constructor.
+     *
+     * @param dataStreamElementClass Class of the data stream elements
+     * @throws NoSuchMethodException  Thrown if the class has no public constructor with the parameters of the generic path
+     * @throws IllegalAccessException Thrown if the constructor cannot be accessed
+     */
+    ConstructorDataStreamElementFactory(Class<? extends AbstractImmutableDataStreamElement> dataStreamElementClass) throws NoSuchMethodException, IllegalAccessException {
+        this.dataStreamElementClass = dataStreamElementClass;
+        this.constructorHandle = MethodHandles.publicLookup().findConstructor(dataStreamElementClass, CONSTRUCTOR_TYPE)
+                .asType(MethodType.methodType(AbstractImmutableDataStreamElement.class, String.class, byte[].class, Long.class, Long.class, Long.class));
+    }
+
+    @Override
+    public AbstractImmutableDataStreamElement create(String key, byte[] content, long offset) throws InvalidProtocolBufferException, InvocationTargetException {
+        try {
+            return (AbstractImmutableDataStreamElement) this.constructorHandle.invokeExact(key, content, (Long) offset, (Long) null, (Long) null);
+        } catch (InvalidProtocolBufferException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // Same exception as thrown by the generic path for an exception in the constructor
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "constructor of " + this.dataStreamElementClass.getName();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.decoding;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Factory which creates data stream elements from the content of Kafka records.
+ */
+public interface DataStreamElementFactory {
+
+    /**
+     * Creates a data stream element from the content of a Kafka record.
+     *
+     * @param key     Key of the Kafka record
+     * @param content Content of the Kafka record
+     * @param offset  Offset of the Kafka record
+     * @return Data stream element
+     * @throws ClassNotFoundException         Thrown if the class of the data stream element cannot be found
+     * @throws InvalidProtocolBufferException Thrown if the content cannot be parsed
+     * @throws NoSuchMethodException          Thrown if the data stream element class has no suitable constructor
+     * @throws IllegalAccessException         Thrown if the constructor cannot be accessed
+     * @throws InvocationTargetException      Thrown if the constructor throws an exception
+     * @throws InstantiationException         Thrown if the data stream element class cannot be instantiated
+     */
+    AbstractImmutableDataStreamElement create(String key, byte[] content, long offset) throws ClassNotFoundException, InvalidProtocolBufferException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException;
+}
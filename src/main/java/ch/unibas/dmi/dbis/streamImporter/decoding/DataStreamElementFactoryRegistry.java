@@ -0,0 +1,115 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.decoding;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of data stream element factories per topic.
+ * The first record of a topic is decoded via the generic path of the data model. Afterwards, a constructor handle for the class of the resulting data stream element is resolved and used for all further records of the topic (such that the class lookup and the reflective construction are not repeated for every record).
+ * The constructor handle is only used if it creates the same data stream element as the generic path for the first record. Otherwise (or if the class has no suitable constructor), the topic stays on the generic path.
+ * Thread-safe (used by the decode workers).
+ */
+public class DataStreamElementFactoryRegistry {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DataStreamElementFactoryRegistry.class);
+
+    /**
+     * Factory per topic
+     */
+    private final ConcurrentMap<String, DataStreamElementFactory> factories;
+
+    /**
+     * DataStreamElementFactoryRegistry constructor.
+     */
+    public DataStreamElementFactoryRegistry() {
+        this.factories = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates a data stream element from a Kafka record with the factory of its topic (and resolves the factory if the topic is seen for the first time).
+     *
+     * @param topic   Topic of the Kafka record
+     * @param key     Key of the Kafka record
+     * @param content Content of the Kafka record
+     * @param offset  Offset of the Kafka record
+     * @return Data stream element
+     * @throws ClassNotFoundException         Thrown if the class of the data stream element cannot be found
+     * @throws InvalidProtocolBufferException Thrown if the content cannot be parsed
+     * @throws NoSuchMethodException          Thrown if the data stream element class has no suitable constructor
+     * @throws IllegalAccessException         Thrown if the constructor cannot be accessed
+     * @throws InvocationTargetException      Thrown if the constructor throws an exception
+     * @throws InstantiationException         Thrown if the data stream element class cannot be instantiated
+     */
+    public AbstractImmutableDataStreamElement create(String topic, String key, byte[] content, long offset) throws ClassNotFoundException, InvalidProtocolBufferException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        DataStreamElementFactory factory = this.factories.get(topic);
+        if (factory != null) {
+            return factory.create(key, content, offset);
+        }
+
+        AbstractImmutableDataStreamElement dataStreamElement = GenericDataStreamElementFactory.INSTANCE.create(key, content, offset);
+        factory = resolveFactory(dataStreamElement, key, content, offset);
+        if (this.factories.putIfAbsent(topic, factory) == null) {
+            logger.info("Decode records of topic {} with the {}", topic, factory);
+        }
+        return dataStreamElement;
+    }
+
+    /**
+     * Resolves the factory for the class of a data stream element.
+     *
+     * @param dataStreamElement Data stream element created via the generic path
+     * @param key               Key of the Kafka record the data stream element has been created from
+     * @param content           Content of the Kafka record
+     * @param offset            Offset of the Kafka record
+     * @return Constructor factory if it creates the same data stream element as the generic path, otherwise the generic factory
+     */
+    private static DataStreamElementFactory resolveFactory(AbstractImmutableDataStreamElement dataStreamElement, String key, byte[] content, long offset) {
+        try {
+            ConstructorDataStreamElementFactory factory = new ConstructorDataStreamElementFactory(dataStreamElement.getClass());
+            AbstractImmutableDataStreamElement probe = factory.create(key, content, offset);
+            if (probe.getClass().equals(dataStreamElement.getClass())
+                    && Objects.equals(probe.getStreamName(), dataStreamElement.getStreamName())
+                    && Objects.equals(probe.getKey(), dataStreamElement.getKey())
+                    && probe.getGenerationTimestamp() == dataStreamElement.getGenerationTimestamp()
+                    && Arrays.equals(probe.getContentAsByteArray(), dataStreamElement.getContentAsByteArray())) {
+                return factory;
+            }
+            logger.warn("The constructor of {} does not create the same data stream element as the generic path.", dataStreamElement.getClass().getName());
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            logger.debug("{} has no public constructor with the parameters of the generic path.", dataStreamElement.getClass().getName());
+        } catch (InvalidProtocolBufferException | InvocationTargetException | RuntimeException e) {
+            logger.warn("The constructor of {} cannot create the data stream element.", dataStreamElement.getClass().getName(), e);
+        }
+        return GenericDataStreamElementFactory.INSTANCE;
+    }
+}
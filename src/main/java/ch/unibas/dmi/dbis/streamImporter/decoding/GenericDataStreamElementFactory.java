@@ -0,0 +1,53 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.decoding;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Factory which creates data stream elements via the generic (reflective) path of the data model.
+ * Resolves the class of the data stream element and its constructor for every record.
+ */
+public final class GenericDataStreamElementFactory implements DataStreamElementFactory {
+
+    /**
+     * Singleton instance
+     */
+    public static final GenericDataStreamElementFactory INSTANCE = new GenericDataStreamElementFactory();
+
+    /**
+     * GenericDataStreamElementFactory constructor (use INSTANCE).
+     */
+    private GenericDataStreamElementFactory() {
+    }
+
+    @Override
+    public AbstractImmutableDataStreamElement create(String key, byte[] content, long offset) throws ClassNotFoundException, InvalidProtocolBufferException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        return AbstractImmutableDataStreamElement.generateDataStreamElementFromByteArray(key, content, offset, null, null);
+    }
+
+    @Override
+    public String toString() {
+        return "generic data model path";
+    }
+}
@@ -0,0 +1,867 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.dump;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.record.TimestampType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Kafka consumer which replays the records of dump files (written by the DumpFileWriter) instead of consuming them from a broker.
+ * The dump files are memory-mapped (read-only) and read in the order of their names. When the consumer is created, the dump files are scanned once to determine the partitions, their beginning and end offsets, and the locations and timestamps of their records.
+ * Records whose offset is lower than the position of their partition (e.g., records which have been dumped twice since a previous run has consumed them again) are skipped.
+ * Like the fetch positions of a Kafka consumer, every partition has its own cursor: the records of the partitions which are not paused are returned in the order of the dump files, and a paused partition continues at its cursor when it is resumed.
+ * Offsets are not committed (the importer stores its offsets itself). Not thread-safe (except for wakeup).
+ */
+public class DumpFileConsumer implements Consumer<String, byte[]> {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DumpFileConsumer.class);
+
+    /**
+     * Maximum number of records returned by a single poll
+     */
+    private static final int MAX_POLL_RECORDS = 500;
+
+    /**
+     * Mapped dump files (in the order of their names)
+     */
+    private final List<DumpFile> dumpFiles;
+
+    /**
+     * Lowest offset of every partition in the dump files
+     */
+    private final Map<TopicPartition, Long> beginningOffsets;
+
+    /**
+     * Highest offset + 1 of every partition in the dump files
+     */
+    private final Map<TopicPartition, Long> endOffsets;
+
+    /**
+     * Index of the records (and cursor) of every partition in the dump files
+     */
+    private final Map<TopicPartition, PartitionIndex> partitionIndexes;
+
+    /**
+     * Assigned partitions which are not paused and have records left to read, ordered by the location of their next record
+     */
+    private final PriorityQueue<PartitionIndex> readablePartitions;
+
+    /**
+     * Position (offset of the next record to return) of every partition which has been read or seeked
+     */
+    private final Map<TopicPartition, Long> positions;
+
+    /**
+     * Assigned partitions
+     */
+    private final Set<TopicPartition> assignment;
+
+    /**
+     * Paused partitions
+     */
+    private final Set<TopicPartition> pausedPartitions;
+
+    /**
+     * Monitor on which an empty poll waits (notified by wakeup)
+     */
+    private final Object wakeupMonitor;
+
+    /**
+     * Specifies if the next poll or the current poll has to throw a WakeupException (guarded by wakeupMonitor)
+     */
+    private boolean wakeupFlag;
+
+    /**
+     * Subscribed topic pattern (null if the topics are subscribed by name or the partitions are assigned manually)
+     */
+    private Pattern subscribedPattern;
+
+    /**
+     * Subscribed topics (empty if the topics are subscribed by pattern or the partitions are assigned manually)
+     */
+    private Set<String> subscribedTopics;
+
+    /**
+     * Listener which is notified about the assignment (null if there is no subscription)
+     */
+    private ConsumerRebalanceListener rebalanceListener;
+
+    /**
+     * Specifies if the subscription has changed and the partitions have to be assigned by the next poll
+     */
+    private boolean assignmentPending;
+
+    /**
+     * DumpFileConsumer constructor.
+     * Maps the dump files and scans their records.
+     *
+     * @param path Dump file or directory which contains the dump files
+     * @throws IOException Thrown if no dump file is found or a dump file cannot be mapped
+     */
+    public DumpFileConsumer(File path) throws IOException {
+        List<File> files = new ArrayList<>();
+        if (path.isDirectory()) {
+            File[] directoryFiles = path.listFiles();
+            if (directoryFiles != null) {
+                for (File file : directoryFiles) {
+                    if (file.isFile() && file.getName().endsWith(DumpFileWriter.FILE_SUFFIX)) {
+                        files.add(file);
+                    }
+                }
+            }
+            Collections.sort(files);
+        } else if (path.isFile()) {
+            files.add(path);
+        }
+        if (files.isEmpty()) {
+            throw new IOException("No dump files found in " + path);
+        }
+
+        this.beginningOffsets = new HashMap<>();
+        this.endOffsets = new HashMap<>();
+        this.partitionIndexes = new HashMap<>();
+        this.dumpFiles = new ArrayList<>();
+        long numberOfRecords = 0;
+        for (File file : files) {
+            DumpFile dumpFile = new DumpFile(file);
+            numberOfRecords += dumpFile.scan(this.dumpFiles.size(), this.beginningOffsets, this.endOffsets, this.partitionIndexes);
+            this.dumpFiles.add(dumpFile);
+        }
+        logger.info("Mapped {} dump files with {} records of {} partitions", this.dumpFiles.size(), numberOfRecords, this.endOffsets.size());
+
+        this.positions = new HashMap<>();
+        this.readablePartitions = new PriorityQueue<>(Math.max(1, this.partitionIndexes.size()), new Comparator<PartitionIndex>() {
+            @Override
+            public int compare(PartitionIndex partitionIndex1, PartitionIndex partitionIndex2) {
+                return Long.compare(partitionIndex1.getNextLocation(), partitionIndex2.getNextLocation());
+            }
+        });
+        this.assignment = new LinkedHashSet<>();
+        this.pausedPartitions = new HashSet<>();
+        this.wakeupMonitor = new Object();
+        this.wakeupFlag = false;
+        this.subscribedPattern = null;
+        this.subscribedTopics = Collections.emptySet();
+        this.rebalanceListener = null;
+        this.assignmentPending = false;
+    }
+
+    @Override
+    public Set<TopicPartition> assignment() {
+        return Collections.unmodifiableSet(new HashSet<>(this.assignment));
+    }
+
+    @Override
+    public Set<String> subscription() {
+        if (this.subscribedPattern == null) {
+            return Collections.unmodifiableSet(new HashSet<>(this.subscribedTopics));
+        }
+        Set<String> topics = new HashSet<>();
+        for (TopicPartition topicPartition : this.assignment) {
+            topics.add(topicPartition.topic());
+        }
+        return Collections.unmodifiableSet(topics);
+    }
+
+    @Override
+    public void subscribe(Collection<String> topics) {
+        subscribe(topics, null);
+    }
+
+    @Override
+    public void subscribe(Collection<String> topics, ConsumerRebalanceListener callback) {
+        this.subscribedPattern = null;
+        this.subscribedTopics = new HashSet<>(topics);
+        this.rebalanceListener = callback;
+        this.assignmentPending = true;
+    }
+
+    @Override
+    public void assign(Collection<TopicPartition> partitions) {
+        this.subscribedPattern = null;
+        this.subscribedTopics = Collections.emptySet();
+        this.rebalanceListener = null;
+        this.assignmentPending = false;
+        this.assignment.clear();
+        this.assignment.addAll(partitions);
+        this.pausedPartitions.retainAll(this.assignment);
+        rebuildReadablePartitions();
+    }
+
+    @Override
+    public void subscribe(Pattern pattern, ConsumerRebalanceListener callback) {
+        this.subscribedPattern = pattern;
+        this.subscribedTopics = Collections.emptySet();
+        this.rebalanceListener = callback;
+        this.assignmentPending = true;
+    }
+
+    @Override
+    public void subscribe(Pattern pattern) {
+        subscribe(pattern, null);
+    }
+
+    @Override
+    public void unsubscribe() {
+        if (this.rebalanceListener != null && !this.assignment.isEmpty()) {
+            this.rebalanceListener.onPartitionsRevoked(new ArrayList<>(this.assignment));
+        }
+        this.subscribedPattern = null;
+        this.subscribedTopics = Collections.emptySet();
+        this.rebalanceListener = null;
+        this.assignmentPending = false;
+        this.assignment.clear();
+        this.pausedPartitions.clear();
+        this.readablePartitions.clear();
+    }
+
+    @Override
+    public ConsumerRecords<String, byte[]> poll(long timeout) {
+        checkWakeup();
+        if (this.assignmentPending) {
+            assignSubscribedPartitions();
+        }
+
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> records = new HashMap<>();
+        int numberOfRecords = 0;
+        while (numberOfRecords < MAX_POLL_RECORDS && !this.readablePartitions.isEmpty()) {
+            // Read the first record (in the order of the dump files) of the partitions which are not paused
+            PartitionIndex partitionIndex = this.readablePartitions.poll();
+            TopicPartition topicPartition = partitionIndex.topicPartition;
+            long location = partitionIndex.getNextLocation();
+            ++partitionIndex.cursor;
+            if (partitionIndex.hasNext()) {
+                this.readablePartitions.add(partitionIndex);
+            }
+
+            ByteBuffer buffer = this.dumpFiles.get(PartitionIndex.getFileIndex(location)).buffer;
+            int recordStart = PartitionIndex.getPosition(location);
+            buffer.position(recordStart);
+            int recordEnd = recordStart + 4 + buffer.getInt();
+            String topic = readString(buffer, buffer.getShort());
+            int partition = buffer.getInt();
+            long offset = buffer.getLong();
+            if (offset < position(topicPartition)) {
+                continue;
+            }
+            long timestamp = buffer.getLong();
+            int keyLength = buffer.getInt();
+            String key = keyLength < 0 ? null : readString(buffer, keyLength);
+            byte[] value = new byte[buffer.getInt()];
+            buffer.get(value);
+            buffer.position(recordEnd);
+
+            List<ConsumerRecord<String, byte[]>> partitionRecords = records.get(topicPartition);
+            if (partitionRecords == null) {
+                partitionRecords = new ArrayList<>();
+                records.put(topicPartition, partitionRecords);
+            }
+            partitionRecords.add(new ConsumerRecord<>(topic, partition, offset, timestamp, timestamp < 0 ? TimestampType.NO_TIMESTAMP_TYPE : TimestampType.CREATE_TIME, ConsumerRecord.NULL_CHECKSUM, keyLength < 0 ? ConsumerRecord.NULL_SIZE : keyLength, value.length, key, value));
+            this.positions.put(topicPartition, offset + 1);
+            ++numberOfRecords;
+        }
+
+        if (numberOfRecords == 0 && timeout > 0) {
+            // Like a Kafka consumer, block until the timeout expires if there are no records (all records have been returned or the replay is paused)
+            synchronized (this.wakeupMonitor) {
+                try {
+                    if (!this.wakeupFlag) {
+                        this.wakeupMonitor.wait(timeout);
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptException(e);
+                }
+            }
+            checkWakeup();
+        }
+        return new ConsumerRecords<>(records);
+    }
+
+    @Override
+    public ConsumerRecords<String, byte[]> poll(Duration timeout) {
+        return poll(timeout.toMillis());
+    }
+
+    @Override
+    public void commitSync() {
+        // Offsets are not committed
+    }
+
+    @Override
+    public void commitSync(Duration timeout) {
+        // Offsets are not committed
+    }
+
+    @Override
+    public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        // Offsets are not committed
+    }
+
+    @Override
+    public void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets, Duration timeout) {
+        // Offsets are not committed
+    }
+
+    @Override
+    public void commitAsync() {
+        // Offsets are not committed
+    }
+
+    @Override
+    public void commitAsync(OffsetCommitCallback callback) {
+        // Offsets are not committed
+    }
+
+    @Override
+    public void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+        // Offsets are not committed
+    }
+
+    @Override
+    public void seek(TopicPartition partition, long offset) {
+        this.positions.put(partition, offset);
+        // The records before the position are skipped
+        setCursor(partition, 0);
+    }
+
+    @Override
+    public void seekToBeginning(Collection<TopicPartition> partitions) {
+        for (TopicPartition topicPartition : partitions) {
+            this.positions.put(topicPartition, getOffset(this.beginningOffsets, topicPartition));
+            setCursor(topicPartition, 0);
+        }
+    }
+
+    @Override
+    public void seekToEnd(Collection<TopicPartition> partitions) {
+        for (TopicPartition topicPartition : partitions) {
+            this.positions.put(topicPartition, getOffset(this.endOffsets, topicPartition));
+            PartitionIndex partitionIndex = this.partitionIndexes.get(topicPartition);
+            setCursor(topicPartition, partitionIndex == null ? 0 : partitionIndex.size);
+        }
+    }
+
+    @Override
+    public long position(TopicPartition partition) {
+        if (!this.assignment.contains(partition)) {
+            throw new IllegalStateException("You can only check the position for partitions assigned to this consumer.");
+        }
+        Long position = this.positions.get(partition);
+        return position == null ? getOffset(this.beginningOffsets, partition) : position;
+    }
+
+    @Override
+    public long position(TopicPartition partition, Duration timeout) {
+        return position(partition);
+    }
+
+    @Override
+    public OffsetAndMetadata committed(TopicPartition partition) {
+        return null;
+    }
+
+    @Override
+    public OffsetAndMetadata committed(TopicPartition partition, Duration timeout) {
+        return null;
+    }
+
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic) {
+        List<PartitionInfo> partitionInfos = listTopics().get(topic);
+        return partitionInfos == null ? Collections.<PartitionInfo>emptyList() : partitionInfos;
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic, Duration timeout) {
+        return partitionsFor(topic);
+    }
+
+    @Override
+    public Map<String, List<PartitionInfo>> listTopics() {
+        Map<String, List<PartitionInfo>> topics = new HashMap<>();
+        for (TopicPartition topicPartition : this.endOffsets.keySet()) {
+            List<PartitionInfo> partitionInfos = topics.get(topicPartition.topic());
+            if (partitionInfos == null) {
+                partitionInfos = new ArrayList<>();
+                topics.put(topicPartition.topic(), partitionInfos);
+            }
+            partitionInfos.add(new PartitionInfo(topicPartition.topic(), topicPartition.partition(), null, new Node[0], new Node[0]));
+        }
+        return topics;
+    }
+
+    @Override
+    public Map<String, List<PartitionInfo>> listTopics(Duration timeout) {
+        return listTopics();
+    }
+
+    @Override
+    public Set<TopicPartition> paused() {
+        return Collections.unmodifiableSet(new HashSet<>(this.pausedPartitions));
+    }
+
+    @Override
+    public void pause(Collection<TopicPartition> partitions) {
+        for (TopicPartition topicPartition : partitions) {
+            if (!this.assignment.contains(topicPartition)) {
+                throw new IllegalStateException("No current assignment for partition " + topicPartition);
+            }
+            this.pausedPartitions.add(topicPartition);
+            updateReadability(topicPartition);
+        }
+    }
+
+    @Override
+    public void resume(Collection<TopicPartition> partitions) {
+        this.pausedPartitions.removeAll(partitions);
+        for (TopicPartition topicPartition : partitions) {
+            updateReadability(topicPartition);
+        }
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch) {
+        Map<TopicPartition, OffsetAndTimestamp> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, Long> entry : timestampsToSearch.entrySet()) {
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("The target time for partition " + entry.getKey() + " is " + entry.getValue() + ". The target time cannot be negative.");
+            }
+            offsets.put(entry.getKey(), findOffsetForTime(entry.getKey(), entry.getValue()));
+        }
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch, Duration timeout) {
+        return offsetsForTimes(timestampsToSearch);
+    }
+
+    @Override
+    public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (TopicPartition topicPartition : partitions) {
+            offsets.put(topicPartition, getOffset(this.beginningOffsets, topicPartition));
+        }
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> beginningOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return beginningOffsets(partitions);
+    }
+
+    @Override
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (TopicPartition topicPartition : partitions) {
+            offsets.put(topicPartition, getOffset(this.endOffsets, topicPartition));
+        }
+        return offsets;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions, Duration timeout) {
+        return endOffsets(partitions);
+    }
+
+    /**
+     * Releases the dump files (the mappings are released by the garbage collector).
+     */
+    @Override
+    public void close() {
+        this.dumpFiles.clear();
+        this.partitionIndexes.clear();
+        this.readablePartitions.clear();
+        this.assignment.clear();
+        this.pausedPartitions.clear();
+    }
+
+    @Override
+    public void close(long timeout, TimeUnit unit) {
+        close();
+    }
+
+    @Override
+    public void close(Duration timeout) {
+        close();
+    }
+
+    @Override
+    public void wakeup() {
+        synchronized (this.wakeupMonitor) {
+            this.wakeupFlag = true;
+            this.wakeupMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Throws a WakeupException if wakeup has been called since the last check.
+     */
+    private void checkWakeup() {
+        synchronized (this.wakeupMonitor) {
+            if (this.wakeupFlag) {
+                this.wakeupFlag = false;
+                throw new WakeupException();
+            }
+        }
+    }
+
+    /**
+     * Assigns all partitions of the dump files which match the subscription and notifies the rebalance listener.
+     */
+    private void assignSubscribedPartitions() {
+        this.assignmentPending = false;
+        if (this.rebalanceListener != null && !this.assignment.isEmpty()) {
+            this.rebalanceListener.onPartitionsRevoked(new ArrayList<>(this.assignment));
+        }
+        this.assignment.clear();
+        for (TopicPartition topicPartition : this.endOffsets.keySet()) {
+            String topic = topicPartition.topic();
+            if (this.subscribedPattern != null ? this.subscribedPattern.matcher(topic).matches() : this.subscribedTopics.contains(topic)) {
+                this.assignment.add(topicPartition);
+            }
+        }
+        this.pausedPartitions.retainAll(this.assignment);
+        rebuildReadablePartitions();
+        if (this.rebalanceListener != null) {
+            this.rebalanceListener.onPartitionsAssigned(new ArrayList<>(this.assignment));
+        }
+    }
+
+    /**
+     * Sets the cursor of a partition and updates its position in the readable partitions.
+     *
+     * @param topicPartition Topic and partition
+     * @param cursor         Index of the next record to read
+     */
+    private void setCursor(TopicPartition topicPartition, int cursor) {
+        PartitionIndex partitionIndex = this.partitionIndexes.get(topicPartition);
+        if (partitionIndex != null) {
+            // The order of the readable partitions depends on the cursor, hence the partition is removed before its cursor changes
+            this.readablePartitions.remove(partitionIndex);
+            partitionIndex.cursor = cursor;
+            updateReadability(topicPartition);
+        }
+    }
+
+    /**
+     * Adds a partition to the readable partitions if it is assigned, not paused, and has records left to read, and removes it otherwise.
+     *
+     * @param topicPartition Topic and partition
+     */
+    private void updateReadability(TopicPartition topicPartition) {
+        PartitionIndex partitionIndex = this.partitionIndexes.get(topicPartition);
+        if (partitionIndex != null) {
+            this.readablePartitions.remove(partitionIndex);
+            if (this.assignment.contains(topicPartition) && !this.pausedPartitions.contains(topicPartition) && partitionIndex.hasNext()) {
+                this.readablePartitions.add(partitionIndex);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the readable partitions after the assignment has changed.
+     */
+    private void rebuildReadablePartitions() {
+        this.readablePartitions.clear();
+        for (TopicPartition topicPartition : this.assignment) {
+            updateReadability(topicPartition);
+        }
+    }
+
+    /**
+     * Searches the earliest offset of a partition whose record has a timestamp greater than or equal to the given timestamp.
+     *
+     * @param topicPartition Topic and partition
+     * @param timestamp      Timestamp
+     * @return Offset and timestamp of the record (null if there is no such record)
+     */
+    private OffsetAndTimestamp findOffsetForTime(TopicPartition topicPartition, long timestamp) {
+        PartitionIndex partitionIndex = this.partitionIndexes.get(topicPartition);
+        if (partitionIndex == null) {
+            return null;
+        }
+        OffsetAndTimestamp offsetAndTimestamp = null;
+        for (int i = 0; i < partitionIndex.size; ++i) {
+            if (partitionIndex.timestamps[i] >= timestamp) {
+                // Only the offset is read from the dump file (the timestamps are indexed)
+                long location = partitionIndex.locations[i];
+                ByteBuffer buffer = this.dumpFiles.get(PartitionIndex.getFileIndex(location)).buffer;
+                int offsetPosition = PartitionIndex.getPosition(location) + 4;
+                offsetPosition += 2 + buffer.getShort(offsetPosition) + 4;
+                long offset = buffer.getLong(offsetPosition);
+                if (offsetAndTimestamp == null || offset < offsetAndTimestamp.offset()) {
+                    offsetAndTimestamp = new OffsetAndTimestamp(offset, partitionIndex.timestamps[i]);
+                }
+            }
+        }
+        return offsetAndTimestamp;
+    }
+
+    /**
+     * Returns the offset of a partition (0 if the partition is not contained in the dump files).
+     *
+     * @param offsets        Offsets
+     * @param topicPartition Topic and partition
+     * @return Offset
+     */
+    private static long getOffset(Map<TopicPartition, Long> offsets, TopicPartition topicPartition) {
+        Long offset = offsets.get(topicPartition);
+        return offset == null ? 0L : offset;
+    }
+
+    /**
+     * Reads a UTF-8 encoded string.
+     *
+     * @param buffer Buffer (positioned at the string)
+     * @param length Length (in bytes) of the string
+     * @return String
+     */
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Memory-mapped dump file.
+     */
+    private static class DumpFile {
+
+        /**
+         * Dump file
+         */
+        private final File file;
+
+        /**
+         * Mapping of the dump file (its limit is the end of the last complete record)
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * DumpFile constructor.
+         * Maps the dump file and checks its header.
+         *
+         * @param file Dump file
+         * @throws IOException Thrown if the file cannot be mapped or is not a dump file
+         */
+        private DumpFile(File file) throws IOException {
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Dump file " + file + " is too large to be mapped (" + size + " bytes)");
+                }
+                // The mapping stays valid after the channel has been closed
+                this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if (this.buffer.limit() < DumpFileWriter.FILE_HEADER_BYTES || this.buffer.getInt() != DumpFileWriter.MAGIC) {
+                throw new IOException(file + " is not a dump file");
+            }
+            int version = this.buffer.getInt();
+            if (version != DumpFileWriter.VERSION) {
+                throw new IOException("Unsupported version " + version + " of dump file " + file);
+            }
+        }
+
+        /**
+         * Scans the records of the dump file, updates the beginning and end offsets of their partitions, indexes their locations and timestamps, and cuts an incomplete record at the end of the file (e.g., if the importer has crashed while writing).
+         *
+         * @param fileIndex        Index of the dump file (in the order of the dump files)
+         * @param beginningOffsets Lowest offset of every partition
+         * @param endOffsets       Highest offset + 1 of every partition
+         * @param partitionIndexes Index of the records of every partition
+         * @return Number of records
+         */
+        private int scan(int fileIndex, Map<TopicPartition, Long> beginningOffsets, Map<TopicPartition, Long> endOffsets, Map<TopicPartition, PartitionIndex> partitionIndexes) {
+            ByteBuffer scanBuffer = this.buffer.duplicate();
+            int numberOfRecords = 0;
+            while (scanBuffer.hasRemaining()) {
+                int recordStart = scanBuffer.position();
+                int length = scanBuffer.remaining() >= 4 ? scanBuffer.getInt() : -1;
+                if (length < DumpFileWriter.RECORD_FIXED_BYTES || length > scanBuffer.remaining()) {
+                    logger.warn("Ignore the incomplete record at position {} of dump file {} and all records after it", recordStart, this.file);
+                    this.buffer.limit(recordStart);
+                    break;
+                }
+                TopicPartition topicPartition = new TopicPartition(readString(scanBuffer, scanBuffer.getShort()), scanBuffer.getInt());
+                long offset = scanBuffer.getLong();
+                Long beginningOffset = beginningOffsets.get(topicPartition);
+                if (beginningOffset == null || offset < beginningOffset) {
+                    beginningOffsets.put(topicPartition, offset);
+                }
+                Long endOffset = endOffsets.get(topicPartition);
+                if (endOffset == null || offset + 1 > endOffset) {
+                    endOffsets.put(topicPartition, offset + 1);
+                }
+                long timestamp = scanBuffer.getLong();
+                PartitionIndex partitionIndex = partitionIndexes.get(topicPartition);
+                if (partitionIndex == null) {
+                    partitionIndex = new PartitionIndex(topicPartition);
+                    partitionIndexes.put(topicPartition, partitionIndex);
+                }
+                partitionIndex.add(PartitionIndex.getLocation(fileIndex, recordStart), timestamp);
+                scanBuffer.position(recordStart + 4 + length);
+                ++numberOfRecords;
+            }
+            return numberOfRecords;
+        }
+    }
+
+    /**
+     * Index of the records of a partition in the dump files (growable arrays of their locations and timestamps in the order of the dump files) and the cursor of the replay.
+     * A location contains the dump file index in the upper and the position in the dump file in the lower 32 bits such that the locations are ordered like the dump files.
+     */
+    private static class PartitionIndex {
+
+        /**
+         * Topic and partition
+         */
+        private final TopicPartition topicPartition;
+
+        /**
+         * Locations of the records (only the first size entries are used)
+         */
+        private long[] locations = new long[16];
+
+        /**
+         * Timestamps of the records (only the first size entries are used)
+         */
+        private long[] timestamps = new long[16];
+
+        /**
+         * Number of records
+         */
+        private int size = 0;
+
+        /**
+         * Index of the next record to read
+         */
+        private int cursor = 0;
+
+        /**
+         * PartitionIndex constructor.
+         *
+         * @param topicPartition Topic and partition
+         */
+        private PartitionIndex(TopicPartition topicPartition) {
+            this.topicPartition = topicPartition;
+        }
+
+        /**
+         * Adds a record.
+         *
+         * @param location  Location of the record
+         * @param timestamp Timestamp of the record
+         */
+        private void add(long location, long timestamp) {
+            if (this.size == this.locations.length) {
+                this.locations = Arrays.copyOf(this.locations, this.size * 2);
+                this.timestamps = Arrays.copyOf(this.timestamps, this.size * 2);
+            }
+            this.locations[this.size] = location;
+            this.timestamps[this.size] = timestamp;
+            ++this.size;
+        }
+
+        /**
+         * Checks if there are records left to read.
+         *
+         * @return True if the cursor has not reached the end of the records
+         */
+        private boolean hasNext() {
+            return this.cursor < this.size;
+        }
+
+        /**
+         * Returns the location of the next record to read.
+         *
+         * @return Location of the next record (Long.MAX_VALUE if all records have been read)
+         */
+        private long getNextLocation() {
+            return hasNext() ? this.locations[this.cursor] : Long.MAX_VALUE;
+        }
+
+        /**
+         * Returns the location of a record.
+         *
+         * @param fileIndex Index of the dump file
+         * @param position  Position of the record in the dump file
+         * @return Location
+         */
+        private static long getLocation(int fileIndex, int position) {
+            return ((long) fileIndex << 32) | position;
+        }
+
+        /**
+         * Returns the index of the dump file of a location.
+         *
+         * @param location Location
+         * @return Index of the dump file
+         */
+        private static int getFileIndex(long location) {
+            return (int) (location >>> 32);
+        }
+
+        /**
+         * Returns the position in the dump file of a location.
+         *
+         * @param location Location
+         * @return Position of the record in the dump file
+         */
+        private static int getPosition(long location) {
+            return (int) location;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.dump;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the polled Kafka records to dump files which can be replayed with the DumpFileConsumer (without a broker).
+ * A dump file starts with a header (magic number and format version) which is followed by length-prefixed records:
+ * [int length][short topic length][topic][int partition][long offset][long timestamp][int key length (-1 if null)][key][int value length][value] (big-endian, strings in UTF-8).
+ * The records are buffered and appended sequentially (with FileChannel). If a dump file would exceed the file size, a new dump file is started.
+ * The file names start with the creation time of the writer such that the dump files of consecutive runs are sorted chronologically by name.
+ * Not thread-safe (used by the consumption loop).
+ */
+public class DumpFileWriter {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DumpFileWriter.class);
+
+    /**
+     * File name suffix of the dump files
+     */
+    static final String FILE_SUFFIX = ".dump";
+
+    /**
+     * Magic number at the beginning of every dump file ("STDP")
+     */
+    static final int MAGIC = 0x53544450;
+
+    /**
+     * Version of the dump file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Size (in bytes) of the file header (magic number and version)
+     */
+    static final int FILE_HEADER_BYTES = 8;
+
+    /**
+     * Size (in bytes) of the fixed-size fields of a record (without the length prefix)
+     */
+    static final int RECORD_FIXED_BYTES = 2 + 4 + 8 + 8 + 4 + 4;
+
+    /**
+     * Capacity (in bytes) of the write buffer
+     */
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Directory of the dump files
+     */
+    private final File directory;
+
+    /**
+     * Maximum size (in bytes) of a dump file (a dump file contains at least one record)
+     */
+    private final long fileBytes;
+
+    /**
+     * Creation time of the writer (prefix of the file names)
+     */
+    private final long creationTime;
+
+    /**
+     * Write buffer
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * UTF-8 encoded topic names
+     */
+    private final Map<String, byte[]> encodedTopics;
+
+    /**
+     * Current dump file (null before the first record)
+     */
+    private File file;
+
+    /**
+     * Channel to the current dump file
+     */
+    private FileChannel channel;
+
+    /**
+     * Size (in bytes) of the current dump file (including the buffered bytes)
+     */
+    private long currentFileBytes;
+
+    /**
+     * Number of the next dump file
+     */
+    private int nextFileNumber;
+
+    /**
+     * Number of written records
+     */
+    private long numberOfRecords;
+
+    /**
+     * DumpFileWriter constructor.
+     * Creates the directory.
+     *
+     * @param directory Directory of the dump files
+     * @param fileBytes Maximum size (in bytes) of a dump file (at most Integer.MAX_VALUE since the dump files are memory-mapped as a whole when they are replayed)
+     * @throws IOException Thrown if the directory cannot be created
+     */
+    public DumpFileWriter(File directory, long fileBytes) throws IOException {
+        if (fileBytes <= FILE_HEADER_BYTES || fileBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Dump file size must be between " + (FILE_HEADER_BYTES + 1) + " and " + Integer.MAX_VALUE + " bytes: " + fileBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create dump directory " + directory);
+        }
+        this.directory = directory;
+        this.fileBytes = fileBytes;
+        this.creationTime = System.currentTimeMillis();
+        this.buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        this.encodedTopics = new HashMap<>();
+        this.file = null;
+        this.channel = null;
+        this.currentFileBytes = 0;
+        this.nextFileNumber = 0;
+        this.numberOfRecords = 0;
+    }
+
+    /**
+     * Appends all polled records and writes them to the dump file.
+     *
+     * @param records Polled records
+     * @throws IOException Thrown if the records cannot be written
+     */
+    public void append(ConsumerRecords<String, byte[]> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (ConsumerRecord<String, byte[]> record : records) {
+            append(record);
+        }
+        flush();
+    }
+
+    /**
+     * Appends a record (buffered until the buffer is full or flush is called).
+     *
+     * @param record Record
+     * @throws IOException Thrown if the record cannot be written
+     */
+    public void append(ConsumerRecord<String, byte[]> record) throws IOException {
+        byte[] topic = this.encodedTopics.get(record.topic());
+        if (topic == null) {
+            topic = record.topic().getBytes(StandardCharsets.UTF_8);
+            this.encodedTopics.put(record.topic(), topic);
+        }
+        byte[] key = record.key() == null ? null : record.key().getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_FIXED_BYTES + topic.length + (key == null ? 0 : key.length) + record.value().length;
+        int recordBytes = 4 + length;
+
+        if (this.channel == null || (this.currentFileBytes > FILE_HEADER_BYTES && this.currentFileBytes + recordBytes > this.fileBytes)) {
+            openFile();
+        }
+        ByteBuffer target = this.buffer;
+        if (recordBytes > this.buffer.capacity()) {
+            flush();
+            target = ByteBuffer.allocate(recordBytes);
+        } else if (recordBytes > this.buffer.remaining()) {
+            flush();
+        }
+
+        target.putInt(length);
+        target.putShort((short) topic.length).put(topic);
+        target.putInt(record.partition());
+        target.putLong(record.offset());
+        target.putLong(record.timestamp());
+        if (key == null) {
+            target.putInt(-1);
+        } else {
+            target.putInt(key.length).put(key);
+        }
+        target.putInt(record.value().length).put(record.value());
+        if (target != this.buffer) {
+            target.flip();
+            write(target);
+        }
+        this.currentFileBytes += recordBytes;
+        ++this.numberOfRecords;
+    }
+
+    /**
+     * Writes the buffered records to the current dump file (without fsync).
+     *
+     * @throws IOException Thrown if the records cannot be written
+     */
+    public void flush() throws IOException {
+        if (this.buffer.position() > 0) {
+            this.buffer.flip();
+            write(this.buffer);
+            this.buffer.clear();
+        }
+    }
+
+    /**
+     * Returns the number of written records.
+     *
+     * @return Number of records
+     */
+    public long getNumberOfRecords() {
+        return this.numberOfRecords;
+    }
+
+    /**
+     * Writes the buffered records, fsyncs, and closes the current dump file.
+     */
+    public void close() {
+        if (this.channel == null) {
+            return;
+        }
+        try {
+            flush();
+            this.channel.force(false);
+        } catch (IOException e) {
+            logger.error("Cannot write the buffered records to dump file {}", this.file, e);
+        }
+        closeChannel();
+        logger.info("Closed dump file {} ({} records dumped in total)", this.file, this.numberOfRecords);
+    }
+
+    /**
+     * Writes the buffered records to the current dump file and starts a new dump file.
+     *
+     * @throws IOException Thrown if the dump file cannot be created
+     */
+    private void openFile() throws IOException {
+        if (this.channel != null) {
+            flush();
+            closeChannel();
+        }
+        this.file = new File(this.directory, String.format("%013d-%06d", this.creationTime, this.nextFileNumber++) + FILE_SUFFIX);
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.buffer.putInt(MAGIC).putInt(VERSION);
+        this.currentFileBytes = FILE_HEADER_BYTES;
+        logger.info("Dump records to {}", this.file);
+    }
+
+    /**
+     * Writes a buffer completely to the current dump file.
+     *
+     * @param source Buffer (flipped)
+     * @throws IOException Thrown if the buffer cannot be written
+     */
+    private void write(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            this.channel.write(source);
+        }
+    }
+
+    /**
+     * Closes the channel to the current dump file.
+     */
+    private void closeChannel() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close dump file {}", this.file, e);
+        }
+        this.channel = null;
+    }
+}
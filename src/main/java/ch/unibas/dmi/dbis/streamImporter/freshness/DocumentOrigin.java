@@ -0,0 +1,102 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.freshness;
+
+/**
+ * Origin of a document, i.e., the data stream element it has been generated from (used to track the freshness of the written data).
+ */
+public final class DocumentOrigin {
+
+    /**
+     * Value of ts for documents which do not have a ts (e.g., the match metadata)
+     */
+    public static final long NO_TS = Long.MIN_VALUE;
+
+    /**
+     * Name of the stream of the data stream element
+     */
+    private final String streamName;
+
+    /**
+     * Identifier of the match
+     */
+    private final String matchId;
+
+    /**
+     * Generation timestamp (in ms) of the data stream element
+     */
+    private final long generationTimestamp;
+
+    /**
+     * ts of the document (ms since the first data stream element of the match) or NO_TS
+     */
+    private final long ts;
+
+    /**
+     * DocumentOrigin constructor.
+     *
+     * @param streamName          Name of the stream of the data stream element
+     * @param matchId             Identifier of the match
+     * @param generationTimestamp Generation timestamp (in ms) of the data stream element
+     * @param ts                  ts of the document (ms since the first data stream element of the match) or NO_TS
+     */
+    public DocumentOrigin(String streamName, String matchId, long generationTimestamp, long ts) {
+        this.streamName = streamName;
+        this.matchId = matchId;
+        this.generationTimestamp = generationTimestamp;
+        this.ts = ts;
+    }
+
+    /**
+     * Returns the name of the stream of the data stream element.
+     *
+     * @return Name of the stream
+     */
+    public String getStreamName() {
+        return this.streamName;
+    }
+
+    /**
+     * Returns the identifier of the match.
+     *
+     * @return Identifier of the match
+     */
+    public String getMatchId() {
+        return this.matchId;
+    }
+
+    /**
+     * Returns the generation timestamp of the data stream element.
+     *
+     * @return Generation timestamp (in ms)
+     */
+    public long getGenerationTimestamp() {
+        return this.generationTimestamp;
+    }
+
+    /**
+     * Returns the ts of the document.
+     *
+     * @return ts (ms since the first data stream element of the match) or NO_TS
+     */
+    public long getTs() {
+        return this.ts;
+    }
+}
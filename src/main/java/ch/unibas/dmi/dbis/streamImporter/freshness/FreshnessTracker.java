@@ -0,0 +1,361 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.freshness;
+
+import ch.unibas.dmi.dbis.streamImporter.metrics.Gauge;
+import ch.unibas.dmi.dbis.streamImporter.metrics.Histogram;
+import ch.unibas.dmi.dbis.streamImporter.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracker for the freshness of the data in MongoDB.
+ * Records the delay between the generation of a data stream element and the commit of its document (per stream and collection) and keeps a watermark of the latest committed ts per match.
+ * Both are exposed as metrics and periodically summarized in the log (only the watermarks which have advanced since the last summary).
+ * The watermark of a match (and its metrics) is evicted when it has not advanced for the idle timeout (e.g., after the match has ended) such that the number of watermarks does not grow with every match ever seen.
+ * Thread-safe (called by the writer threads of all collection writers).
+ */
+public class FreshnessTracker {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(FreshnessTracker.class);
+
+    /**
+     * Registry for the runtime metrics
+     */
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * Freshness per stream and collection (key: stream name + "/" + collection name)
+     */
+    private final ConcurrentMap<String, Freshness> freshnessPerStream;
+
+    /**
+     * Watermark per match (key: match identifier, created and evicted while holding its monitor such that the metrics of a re-created watermark are not unregistered)
+     */
+    private final ConcurrentMap<String, Watermark> watermarks;
+
+    /**
+     * Time (in ms) after which a watermark which has not advanced is evicted
+     */
+    private final long watermarkIdleTimeout;
+
+    /**
+     * Time (in ms) of the last summary
+     */
+    private long lastSummaryTime;
+
+    /**
+     * FreshnessTracker constructor.
+     *
+     * @param metricsRegistry      Registry for the runtime metrics
+     * @param watermarkIdleTimeout Time (in ms) after which a watermark which has not advanced is evicted
+     */
+    public FreshnessTracker(MetricsRegistry metricsRegistry, long watermarkIdleTimeout) {
+        this.metricsRegistry = metricsRegistry;
+        this.freshnessPerStream = new ConcurrentHashMap<>();
+        this.watermarks = new ConcurrentHashMap<>();
+        this.watermarkIdleTimeout = watermarkIdleTimeout;
+        this.lastSummaryTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Records the commit of documents.
+     *
+     * @param collectionName Name of the collection
+     * @param origins        Origins of the committed documents
+     * @param commitTime     Time (in ms) of the commit
+     */
+    public void recordCommit(String collectionName, List<DocumentOrigin> origins, long commitTime) {
+        Freshness lastFreshness = null;
+        Watermark lastWatermark = null;
+        for (DocumentOrigin origin : origins) {
+            // Batches usually contain consecutive documents of the same stream and match, hence the last lookup is reused
+            if (lastFreshness == null || !lastFreshness.streamName.equals(origin.getStreamName())) {
+                lastFreshness = getFreshness(origin.getStreamName(), collectionName);
+            }
+            lastFreshness.record(Math.max(0, commitTime - origin.getGenerationTimestamp())); // clamped in case of clock skew between the producer and the importer
+
+            if (origin.getMatchId() != null && origin.getTs() != DocumentOrigin.NO_TS) {
+                if (lastWatermark == null || !lastWatermark.matchId.equals(origin.getMatchId())) {
+                    lastWatermark = getWatermark(origin);
+                }
+                lastWatermark.advance(origin.getTs(), origin.getGenerationTimestamp(), commitTime);
+            }
+        }
+    }
+
+    /**
+     * Returns the latest committed ts of a match.
+     *
+     * @param matchId Identifier of the match
+     * @return Latest committed ts (ms since the first data stream element of the match) or DocumentOrigin.NO_TS if no document of the match has been committed yet
+     */
+    public long getCommittedTs(String matchId) {
+        Watermark watermark = this.watermarks.get(matchId);
+        return watermark == null ? DocumentOrigin.NO_TS : watermark.ts.get();
+    }
+
+    /**
+     * Evicts the idle watermarks and logs the freshness per stream and collection since the last summary and the watermark of every match which has advanced since the last summary.
+     */
+    public synchronized void logSummary() {
+        long now = System.currentTimeMillis();
+        evictIdleWatermarks(now);
+        for (Freshness freshness : new TreeMap<>(this.freshnessPerStream).values()) {
+            long count = freshness.intervalCount.getAndSet(0);
+            long sum = freshness.intervalSumMillis.getAndSet(0);
+            long max = freshness.intervalMaxMillis.getAndSet(0);
+            if (count > 0) {
+                logger.info("Freshness {} in {}: {} documents, avg {} ms, max {} ms", freshness.streamName, freshness.collectionName, count, sum / count, max);
+            }
+        }
+        for (Map.Entry<String, Watermark> entry : new TreeMap<>(this.watermarks).entrySet()) {
+            Watermark watermark = entry.getValue();
+            if (watermark.lastAdvanceTime.get() >= this.lastSummaryTime) {
+                logger.info("Watermark match {}: ts {} (generated {} ms ago)", entry.getKey(), watermark.ts.get(), now - watermark.generationTimestamp.get());
+            }
+        }
+        this.lastSummaryTime = now;
+    }
+
+    /**
+     * Evicts the watermarks which have not advanced for the idle timeout and unregisters their metrics.
+     *
+     * @param now Current time (in ms)
+     */
+    private void evictIdleWatermarks(long now) {
+        synchronized (this.watermarks) {
+            Iterator<Watermark> iterator = this.watermarks.values().iterator();
+            while (iterator.hasNext()) {
+                Watermark watermark = iterator.next();
+                if (now - watermark.lastAdvanceTime.get() > this.watermarkIdleTimeout) {
+                    iterator.remove();
+                    this.metricsRegistry.remove("match_watermark_ts", "match", watermark.matchId);
+                    this.metricsRegistry.remove("match_staleness_seconds", "match", watermark.matchId);
+                    logger.info("Evicted the watermark of match {} (ts {}) since it has not advanced for {} ms", watermark.matchId, watermark.ts.get(), now - watermark.lastAdvanceTime.get());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the freshness of a stream in a collection (and registers its metrics if it does not exist yet).
+     *
+     * @param streamName     Name of the stream
+     * @param collectionName Name of the collection
+     * @return Freshness
+     */
+    private Freshness getFreshness(String streamName, String collectionName) {
+        String key = streamName + "/" + collectionName;
+        Freshness freshness = this.freshnessPerStream.get(key);
+        if (freshness == null) {
+            Histogram histogram = this.metricsRegistry.histogram("freshness_seconds", "Delay between the generation of a data stream element and the commit of its document", Histogram.FRESHNESS_BUCKETS, "stream", streamName, "collection", collectionName);
+            Freshness newFreshness = new Freshness(streamName, collectionName, histogram);
+            freshness = this.freshnessPerStream.putIfAbsent(key, newFreshness);
+            if (freshness == null) {
+                freshness = newFreshness;
+            }
+        }
+        return freshness;
+    }
+
+    /**
+     * Returns the watermark of the match of a document (and creates it and registers its metrics if it does not exist yet, e.g., since it has been evicted).
+     *
+     * @param origin Origin of the document
+     * @return Watermark
+     */
+    private Watermark getWatermark(DocumentOrigin origin) {
+        String matchId = origin.getMatchId();
+        Watermark watermark = this.watermarks.get(matchId);
+        if (watermark == null) {
+            synchronized (this.watermarks) {
+                watermark = this.watermarks.get(matchId);
+                if (watermark != null) {
+                    return watermark;
+                }
+                final Watermark newWatermark = new Watermark(matchId, origin.getTs(), origin.getGenerationTimestamp(), System.currentTimeMillis());
+                this.watermarks.put(matchId, newWatermark);
+                watermark = newWatermark;
+                this.metricsRegistry.gauge("match_watermark_ts", "Latest committed ts (ms since the first data stream element of the match)", new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return newWatermark.ts.get();
+                    }
+                }, "match", matchId);
+                this.metricsRegistry.gauge("match_staleness_seconds", "Time since the generation of the data stream element with the latest committed ts", new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return (System.currentTimeMillis() - newWatermark.generationTimestamp.get()) / 1000.0;
+                    }
+                }, "match", matchId);
+            }
+        }
+        return watermark;
+    }
+
+    /**
+     * Sets an atomic long to a value if the value is larger than its current value.
+     *
+     * @param atomicLong Atomic long
+     * @param value      Value
+     * @return True if the atomic long has been set to the value
+     */
+    private static boolean max(AtomicLong atomicLong, long value) {
+        long current = atomicLong.get();
+        while (value > current) {
+            if (atomicLong.compareAndSet(current, value)) {
+                return true;
+            }
+            current = atomicLong.get();
+        }
+        return false;
+    }
+
+    /**
+     * Freshness of a stream in a collection.
+     */
+    private static class Freshness {
+
+        /**
+         * Name of the stream
+         */
+        private final String streamName;
+
+        /**
+         * Name of the collection
+         */
+        private final String collectionName;
+
+        /**
+         * Histogram of the delays (in s)
+         */
+        private final Histogram histogram;
+
+        /**
+         * Number of documents since the last summary
+         */
+        private final AtomicLong intervalCount;
+
+        /**
+         * Sum of the delays (in ms) since the last summary
+         */
+        private final AtomicLong intervalSumMillis;
+
+        /**
+         * Maximum delay (in ms) since the last summary
+         */
+        private final AtomicLong intervalMaxMillis;
+
+        /**
+         * Freshness constructor.
+         *
+         * @param streamName     Name of the stream
+         * @param collectionName Name of the collection
+         * @param histogram      Histogram of the delays (in s)
+         */
+        private Freshness(String streamName, String collectionName, Histogram histogram) {
+            this.streamName = streamName;
+            this.collectionName = collectionName;
+            this.histogram = histogram;
+            this.intervalCount = new AtomicLong();
+            this.intervalSumMillis = new AtomicLong();
+            this.intervalMaxMillis = new AtomicLong();
+        }
+
+        /**
+         * Records the delay of a document.
+         *
+         * @param delayMillis Delay (in ms) between the generation of the data stream element and the commit of its document
+         */
+        private void record(long delayMillis) {
+            this.histogram.observe(delayMillis / 1000.0);
+            this.intervalCount.incrementAndGet();
+            this.intervalSumMillis.addAndGet(delayMillis);
+            max(this.intervalMaxMillis, delayMillis);
+        }
+    }
+
+    /**
+     * Watermark of a match.
+     */
+    private static class Watermark {
+
+        /**
+         * Identifier of the match
+         */
+        private final String matchId;
+
+        /**
+         * Latest committed ts
+         */
+        private final AtomicLong ts;
+
+        /**
+         * Generation timestamp (in ms) of the data stream element with the latest committed ts
+         */
+        private final AtomicLong generationTimestamp;
+
+        /**
+         * Time (in ms) at which the watermark has been created or advanced the last time
+         */
+        private final AtomicLong lastAdvanceTime;
+
+        /**
+         * Watermark constructor.
+         *
+         * @param matchId             Identifier of the match
+         * @param ts                  First committed ts
+         * @param generationTimestamp Generation timestamp (in ms) of the data stream element with the first committed ts
+         * @param creationTime        Time (in ms) at which the watermark is created
+         */
+        private Watermark(String matchId, long ts, long generationTimestamp, long creationTime) {
+            this.matchId = matchId;
+            this.ts = new AtomicLong(ts);
+            this.generationTimestamp = new AtomicLong(generationTimestamp);
+            this.lastAdvanceTime = new AtomicLong(creationTime);
+        }
+
+        /**
+         * Advances the watermark (if the ts is larger than the current watermark).
+         *
+         * @param ts                  Committed ts
+         * @param generationTimestamp Generation timestamp (in ms) of the data stream element
+         * @param commitTime          Time (in ms) of the commit
+         */
+        private void advance(long ts, long generationTimestamp, long commitTime) {
+            if (max(this.ts, ts)) {
+                max(this.lastAdvanceTime, commitTime);
+            }
+            max(this.generationTimestamp, generationTimestamp);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonically increasing counter.
+ */
+public class Counter {
+
+    /**
+     * Value
+     */
+    private final AtomicLong value = new AtomicLong();
+
+    /**
+     * Increments the counter by one.
+     */
+    public void increment() {
+        this.value.incrementAndGet();
+    }
+
+    /**
+     * Increments the counter.
+     *
+     * @param amount Amount (not negative)
+     */
+    public void increment(long amount) {
+        this.value.addAndGet(amount);
+    }
+
+    /**
+     * Returns the value.
+     *
+     * @return Value
+     */
+    public long get() {
+        return this.value.get();
+    }
+}
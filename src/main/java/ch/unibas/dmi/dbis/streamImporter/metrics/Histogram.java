@@ -0,0 +1,133 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Histogram with fixed buckets (cumulative buckets as in the Prometheus text format).
+ */
+public class Histogram {
+
+    /**
+     * Bucket boundaries for latencies (in s)
+     */
+    public static final double[] LATENCY_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0};
+
+    /**
+     * Bucket boundaries for the freshness of the written data (in s, finer than the latency buckets in the range of typical end-to-end delays)
+     */
+    public static final double[] FRESHNESS_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.075, 0.1, 0.15, 0.2, 0.3, 0.4, 0.5, 0.75, 1.0, 1.5, 2.0, 3.0, 5.0, 7.5, 10.0, 15.0, 30.0, 60.0, 120.0, 300.0};
+
+    /**
+     * Bucket boundaries for batch sizes (in documents)
+     */
+    public static final double[] BATCH_SIZE_BUCKETS = {1, 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    /**
+     * Upper bounds of the buckets (ascending, without +Inf)
+     */
+    private final double[] upperBounds;
+
+    /**
+     * Number of observations per bucket (not cumulative, the last bucket is +Inf)
+     */
+    private final AtomicLongArray bucketCounts;
+
+    /**
+     * Number of observations
+     */
+    private final AtomicLong count;
+
+    /**
+     * Sum of the observations
+     */
+    private final DoubleAdder sum;
+
+    /**
+     * Histogram constructor.
+     *
+     * @param upperBounds Upper bounds of the buckets (ascending, without +Inf)
+     */
+    Histogram(double[] upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.bucketCounts = new AtomicLongArray(upperBounds.length + 1);
+        this.count = new AtomicLong();
+        this.sum = new DoubleAdder();
+    }
+
+    /**
+     * Records an observation.
+     *
+     * @param value Observed value
+     */
+    public void observe(double value) {
+        int bucket = 0;
+        while (bucket < this.upperBounds.length && value > this.upperBounds[bucket]) {
+            ++bucket;
+        }
+        this.bucketCounts.incrementAndGet(bucket);
+        this.count.incrementAndGet();
+        this.sum.add(value);
+    }
+
+    /**
+     * Returns the upper bounds of the buckets (ascending, without +Inf).
+     *
+     * @return Upper bounds of the buckets
+     */
+    double[] getUpperBounds() {
+        return this.upperBounds;
+    }
+
+    /**
+     * Returns the cumulative number of observations per bucket (the last entry is the +Inf bucket).
+     *
+     * @return Cumulative number of observations per bucket
+     */
+    long[] getCumulativeBucketCounts() {
+        long[] cumulativeCounts = new long[this.bucketCounts.length()];
+        long cumulativeCount = 0;
+        for (int i = 0; i < cumulativeCounts.length; ++i) {
+            cumulativeCount += this.bucketCounts.get(i);
+            cumulativeCounts[i] = cumulativeCount;
+        }
+        return cumulativeCounts;
+    }
+
+    /**
+     * Returns the number of observations.
+     *
+     * @return Number of observations
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Returns the sum of the observations.
+     *
+     * @return Sum of the observations
+     */
+    public double getSum() {
+        return this.sum.sum();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exposes a metrics registry via JMX and via a lightweight HTTP endpoint (/metrics) in the Prometheus text format.
+ */
+public class MetricsExporter {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+
+    /**
+     * JMX object name of the metrics MBean
+     */
+    private static final String OBJECT_NAME = "ch.unibas.dmi.dbis.streamImporter:type=Metrics";
+
+    /**
+     * Metrics registry
+     */
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * Port of the HTTP endpoint (negative if the HTTP endpoint is disabled)
+     */
+    private final int httpPort;
+
+    /**
+     * Flag that indicates if the metrics are exposed via JMX
+     */
+    private final boolean jmxEnabled;
+
+    /**
+     * HTTP server (null if not started)
+     */
+    private HttpServer httpServer;
+
+    /**
+     * Registered JMX object name (null if not registered)
+     */
+    private ObjectName objectName;
+
+    /**
+     * MetricsExporter constructor.
+     *
+     * @param metricsRegistry Metrics registry
+     * @param httpPort        Port of the HTTP endpoint (negative to disable the HTTP endpoint)
+     * @param jmxEnabled      Flag that indicates if the metrics are exposed via JMX
+     */
+    public MetricsExporter(MetricsRegistry metricsRegistry, int httpPort, boolean jmxEnabled) {
+        this.metricsRegistry = metricsRegistry;
+        this.httpPort = httpPort;
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * Registers the MBean and starts the HTTP endpoint.
+     * Failures are only logged since the importer works without exposed metrics.
+     */
+    public void start() {
+        if (this.jmxEnabled) {
+            try {
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                mBeanServer.registerMBean(new MetricsMBean(this.metricsRegistry), name);
+                this.objectName = name;
+                logger.info("Registered metrics MBean {}", OBJECT_NAME);
+            } catch (JMException e) {
+                logger.error("Cannot register metrics MBean {}", OBJECT_NAME, e);
+            }
+        }
+
+        if (this.httpPort >= 0) {
+            try {
+                this.httpServer = HttpServer.create(new InetSocketAddress(this.httpPort), 0);
+                this.httpServer.createContext("/metrics", new PrometheusHandler());
+                this.httpServer.start();
+                logger.info("Serve metrics on http://localhost:{}/metrics", this.httpServer.getAddress().getPort());
+            } catch (IOException e) {
+                logger.error("Cannot start metrics HTTP endpoint on port {}", this.httpPort, e);
+                this.httpServer = null;
+            }
+        }
+    }
+
+    /**
+     * Unregisters the MBean and stops the HTTP endpoint.
+     */
+    public void stop() {
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (JMException e) {
+                logger.warn("Cannot unregister metrics MBean {}", this.objectName, e);
+            }
+            this.objectName = null;
+        }
+        if (this.httpServer != null) {
+            this.httpServer.stop(0);
+            this.httpServer = null;
+        }
+    }
+
+    /**
+     * HTTP handler which returns the metrics in the Prometheus text format.
+     */
+    private class PrometheusHandler implements HttpHandler {
+
+        /**
+         * Writes the metrics in the Prometheus text format to the response.
+         *
+         * @param exchange HTTP exchange
+         * @throws IOException Thrown if the response cannot be written
+         */
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] response = MetricsExporter.this.metricsRegistry.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+}
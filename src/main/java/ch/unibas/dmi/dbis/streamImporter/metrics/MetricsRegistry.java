@@ -0,0 +1,345 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry for the runtime metrics of the importer.
+ * Every metric has a name (following the Prometheus naming conventions) and optional labels (given as alternating label names and values).
+ * Thread-safe.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Prefix of all metric names
+     */
+    private static final String PREFIX = "streamimporter_";
+
+    /**
+     * Metric families by name (in registration order)
+     */
+    private final Map<String, MetricFamily> families;
+
+    /**
+     * MetricsRegistry constructor.
+     */
+    public MetricsRegistry() {
+        this.families = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the counter with the given name and labels (and creates it if it does not exist yet).
+     *
+     * @param name   Name (without prefix)
+     * @param help   Description
+     * @param labels Alternating label names and values
+     * @return Counter
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) getFamily(name, help, MetricType.COUNTER).getOrCreate(formatLabels(labels), MetricType.COUNTER, null);
+    }
+
+    /**
+     * Registers a counter whose value is read from a function when the metrics are collected (e.g., a counter of an existing statistics object).
+     *
+     * @param name   Name (without prefix)
+     * @param help   Description
+     * @param gauge  Function which returns the value of the counter
+     * @param labels Alternating label names and values
+     */
+    public void counterFunction(String name, String help, Gauge gauge, String... labels) {
+        getFamily(name, help, MetricType.COUNTER).put(formatLabels(labels), gauge);
+    }
+
+    /**
+     * Registers a gauge (replaces a previously registered gauge with the same name and labels).
+     *
+     * @param name   Name (without prefix)
+     * @param help   Description
+     * @param gauge  Gauge
+     * @param labels Alternating label names and values
+     */
+    public void gauge(String name, String help, Gauge gauge, String... labels) {
+        getFamily(name, help, MetricType.GAUGE).put(formatLabels(labels), gauge);
+    }
+
+    /**
+     * Returns the histogram with the given name and labels (and creates it if it does not exist yet).
+     *
+     * @param name        Name (without prefix)
+     * @param help        Description
+     * @param upperBounds Upper bounds of the buckets (ascending, without +Inf)
+     * @param labels      Alternating label names and values
+     * @return Histogram
+     */
+    public Histogram histogram(String name, String help, double[] upperBounds, String... labels) {
+        return (Histogram) getFamily(name, help, MetricType.HISTOGRAM).getOrCreate(formatLabels(labels), MetricType.HISTOGRAM, upperBounds);
+    }
+
+    /**
+     * Removes a metric (e.g., the lag gauge of a revoked partition).
+     *
+     * @param name   Name (without prefix)
+     * @param labels Alternating label names and values
+     */
+    public void remove(String name, String... labels) {
+        MetricFamily family;
+        synchronized (this.families) {
+            family = this.families.get(PREFIX + name);
+        }
+        if (family != null) {
+            family.metrics.remove(formatLabels(labels));
+        }
+    }
+
+    /**
+     * Generates the Prometheus text format (version 0.0.4) of all metrics.
+     *
+     * @return Metrics in the Prometheus text format
+     */
+    public String toPrometheusText() {
+        StringBuilder builder = new StringBuilder();
+        for (MetricFamily family : getFamilies()) {
+            if (family.metrics.isEmpty()) {
+                continue;
+            }
+            builder.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(family.name).append(' ').append(family.type.name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    double[] upperBounds = histogram.getUpperBounds();
+                    long[] cumulativeCounts = histogram.getCumulativeBucketCounts();
+                    for (int i = 0; i < cumulativeCounts.length; ++i) {
+                        String le = i < upperBounds.length ? formatValue(upperBounds[i]) : "+Inf";
+                        builder.append(family.name).append("_bucket").append(addLabel(labels, "le", le)).append(' ').append(cumulativeCounts[i]).append('\n');
+                    }
+                    builder.append(family.name).append("_sum").append(labels).append(' ').append(formatValue(histogram.getSum())).append('\n');
+                    builder.append(family.name).append("_count").append(labels).append(' ').append(histogram.getCount()).append('\n');
+                } else {
+                    builder.append(family.name).append(labels).append(' ').append(formatValue(valueOf(metric))).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the current values of all metrics (histograms are represented by their count and sum).
+     *
+     * @return Values by metric name (including the labels)
+     */
+    public Map<String, Double> getValues() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (MetricFamily family : getFamilies()) {
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                Object metric = entry.getValue();
+                if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    values.put(family.name + "_count" + entry.getKey(), (double) histogram.getCount());
+                    values.put(family.name + "_sum" + entry.getKey(), histogram.getSum());
+                } else {
+                    values.put(family.name + entry.getKey(), valueOf(metric));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the metric family with the given name (and creates it if it does not exist yet).
+     *
+     * @param name Name (without prefix)
+     * @param help Description
+     * @param type Type
+     * @return Metric family
+     */
+    private MetricFamily getFamily(String name, String help, MetricType type) {
+        synchronized (this.families) {
+            MetricFamily family = this.families.get(PREFIX + name);
+            if (family == null) {
+                family = new MetricFamily(PREFIX + name, help, type);
+                this.families.put(family.name, family);
+            } else if (family.type != type) {
+                throw new IllegalArgumentException("Metric " + family.name + " is already registered as " + family.type);
+            }
+            return family;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the metric families.
+     *
+     * @return Metric families
+     */
+    private MetricFamily[] getFamilies() {
+        synchronized (this.families) {
+            return this.families.values().toArray(new MetricFamily[0]);
+        }
+    }
+
+    /**
+     * Returns the value of a counter or a gauge.
+     *
+     * @param metric Counter or gauge
+     * @return Value
+     */
+    private static double valueOf(Object metric) {
+        if (metric instanceof Counter) {
+            return ((Counter) metric).get();
+        } else {
+            return ((Gauge) metric).getValue();
+        }
+    }
+
+    /**
+     * Formats labels as in the Prometheus text format ({name="value",...}).
+     *
+     * @param labels Alternating label names and values
+     * @return Formatted labels (empty string if there are no labels)
+     */
+    private static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels have to be given as alternating names and values");
+        }
+        String formattedLabels = "";
+        for (int i = 0; i < labels.length; i += 2) {
+            formattedLabels = addLabel(formattedLabels, labels[i], labels[i + 1]);
+        }
+        return formattedLabels;
+    }
+
+    /**
+     * Adds a label to formatted labels.
+     *
+     * @param formattedLabels Formatted labels (empty string if there are no labels)
+     * @param name            Label name
+     * @param value           Label value
+     * @return Formatted labels
+     */
+    private static String addLabel(String formattedLabels, String name, String value) {
+        String label = name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+        if (formattedLabels.isEmpty()) {
+            return "{" + label + "}";
+        } else {
+            return formattedLabels.substring(0, formattedLabels.length() - 1) + "," + label + "}";
+        }
+    }
+
+    /**
+     * Formats a value as in the Prometheus text format.
+     *
+     * @param value Value
+     * @return Formatted value
+     */
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        } else {
+            return Double.toString(value);
+        }
+    }
+
+    /**
+     * Type of a metric.
+     */
+    private enum MetricType {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * All metrics with the same name (one per label combination).
+     */
+    private static class MetricFamily {
+
+        /**
+         * Name (with prefix)
+         */
+        private final String name;
+
+        /**
+         * Description
+         */
+        private final String help;
+
+        /**
+         * Type
+         */
+        private final MetricType type;
+
+        /**
+         * Metrics (counters, gauges, or histograms) by formatted labels
+         */
+        private final ConcurrentMap<String, Object> metrics;
+
+        /**
+         * MetricFamily constructor.
+         *
+         * @param name Name (with prefix)
+         * @param help Description
+         * @param type Type
+         */
+        private MetricFamily(String name, String help, MetricType type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.metrics = new ConcurrentHashMap<>();
+        }
+
+        /**
+         * Returns the counter or histogram with the given labels (and creates it if it does not exist yet).
+         *
+         * @param labels      Formatted labels
+         * @param type        Type
+         * @param upperBounds Upper bounds of the buckets (only for histograms)
+         * @return Counter or histogram
+         */
+        private Object getOrCreate(String labels, MetricType type, double[] upperBounds) {
+            Object metric = this.metrics.get(labels);
+            if (metric == null) {
+                Object newMetric = type == MetricType.HISTOGRAM ? new Histogram(upperBounds) : new Counter();
+                metric = this.metrics.putIfAbsent(labels, newMetric);
+                if (metric == null) {
+                    metric = newMetric;
+                }
+            }
+            return metric;
+        }
+
+        /**
+         * Registers a function metric (replaces a previously registered metric with the same labels).
+         *
+         * @param labels Formatted labels
+         * @param gauge  Function which returns the value of the metric
+         */
+        private void put(String labels, Gauge gauge) {
+            this.metrics.put(labels, gauge);
+        }
+    }
+}
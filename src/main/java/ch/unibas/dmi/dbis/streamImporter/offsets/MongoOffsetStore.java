@@ -0,0 +1,97 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.offsets;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.apache.kafka.common.TopicPartition;
+import org.bson.Document;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store for the consumer offsets in an importer-owned MongoDB collection.
+ * Since the offsets are only stored after the corresponding documents have been written to MongoDB, a restarted importer resumes where the last successful write left off.
+ */
+public class MongoOffsetStore implements OffsetStore {
+
+    /**
+     * Options for upserting the offset documents
+     */
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+    /**
+     * MongoDB collection for storing the offsets
+     */
+    private final MongoCollection<Document> offsetsCollection;
+
+    /**
+     * Consumer group identifier
+     */
+    private final String groupId;
+
+    /**
+     * MongoOffsetStore constructor.
+     *
+     * @param offsetsCollection MongoDB collection for storing the offsets
+     * @param groupId           Consumer group identifier
+     */
+    public MongoOffsetStore(MongoCollection<Document> offsetsCollection, String groupId) {
+        this.offsetsCollection = offsetsCollection;
+        this.groupId = groupId;
+    }
+
+    @Override
+    public Map<TopicPartition, Long> load(Collection<TopicPartition> topicPartitions) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (Document document : this.offsetsCollection.find(Filters.eq("groupId", this.groupId))) {
+            TopicPartition topicPartition = new TopicPartition(document.getString("topic"), document.getInteger("partition"));
+            if (topicPartitions.contains(topicPartition)) {
+                offsets.put(topicPartition, document.getLong("offset"));
+            }
+        }
+        return offsets;
+    }
+
+    @Override
+    public void store(Map<TopicPartition, Long> offsets) {
+        if (offsets.isEmpty()) {
+            return;
+        }
+        List<WriteModel<Document>> writeModels = new LinkedList<>();
+        for (Map.Entry<TopicPartition, Long> entry : offsets.entrySet()) {
+            TopicPartition topicPartition = entry.getKey();
+            String id = this.groupId + "/" + topicPartition.topic() + "/" + topicPartition.partition();
+            Document document = new Document("_id", id)
+                    .append("groupId", this.groupId)
+                    .append("topic", topicPartition.topic())
+                    .append("partition", topicPartition.partition())
+                    .append("offset", entry.getValue());
+            writeModels.add(new ReplaceOneModel<>(Filters.eq("_id", id), document, UPSERT));
+        }
+        this.offsetsCollection.bulkWrite(writeModels);
+    }
+}
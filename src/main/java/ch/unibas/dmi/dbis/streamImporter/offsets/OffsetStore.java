@@ -0,0 +1,45 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.offsets;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Store for the offsets from which the consumption is resumed after a restart.
+ */
+public interface OffsetStore {
+
+    /**
+     * Loads the stored offsets of partitions.
+     *
+     * @param topicPartitions Partitions
+     * @return Stored offsets (does not contain partitions without stored offset)
+     */
+    Map<TopicPartition, Long> load(Collection<TopicPartition> topicPartitions);
+
+    /**
+     * Stores offsets.
+     *
+     * @param offsets Offsets
+     */
+    void store(Map<TopicPartition, Long> offsets);
+}
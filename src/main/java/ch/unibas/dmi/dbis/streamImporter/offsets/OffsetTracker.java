@@ -0,0 +1,149 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.offsets;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Tracker for the offsets of the Kafka records which have been polled but whose documents have not been durably written to MongoDB yet.
+ * A record is registered when it is polled and completed as soon as its document has been written (or as soon as it is clear that it does not result in a document).
+ * The committable offset of a partition is the smallest offset which is not completed yet, i.e., the offset from which the consumption has to be resumed after a restart.
+ * Thread-safe (records are registered by the consumption loop and completed by the writer threads).
+ */
+public class OffsetTracker {
+
+    /**
+     * State per partition
+     */
+    private final Map<TopicPartition, PartitionState> partitionStates;
+
+    /**
+     * OffsetTracker constructor.
+     */
+    public OffsetTracker() {
+        this.partitionStates = new HashMap<>();
+    }
+
+    /**
+     * Registers a polled record.
+     *
+     * @param recordPosition Position of the record
+     */
+    public synchronized void register(RecordPosition recordPosition) {
+        PartitionState partitionState = this.partitionStates.get(recordPosition.getTopicPartition());
+        if (partitionState == null) {
+            partitionState = new PartitionState();
+            this.partitionStates.put(recordPosition.getTopicPartition(), partitionState);
+        }
+        partitionState.pendingOffsets.add(recordPosition.getOffset());
+        partitionState.nextOffset = Math.max(partitionState.nextOffset, recordPosition.getOffset() + 1);
+    }
+
+    /**
+     * Completes a record.
+     * Records of partitions which are not tracked anymore (e.g., since they have been revoked) are ignored.
+     *
+     * @param recordPosition Position of the record
+     */
+    public synchronized void complete(RecordPosition recordPosition) {
+        PartitionState partitionState = this.partitionStates.get(recordPosition.getTopicPartition());
+        if (partitionState != null) {
+            partitionState.pendingOffsets.remove(recordPosition.getOffset());
+        }
+    }
+
+    /**
+     * Completes multiple records.
+     *
+     * @param recordPositions Positions of the records
+     */
+    public synchronized void completeAll(Collection<RecordPosition> recordPositions) {
+        for (RecordPosition recordPosition : recordPositions) {
+            complete(recordPosition);
+        }
+    }
+
+    /**
+     * Returns the committable offsets of all partitions whose committable offset has changed since it has been marked as committed the last time.
+     *
+     * @return Committable offsets
+     */
+    public synchronized Map<TopicPartition, Long> getCommittableOffsets() {
+        Map<TopicPartition, Long> committableOffsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, PartitionState> entry : this.partitionStates.entrySet()) {
+            PartitionState partitionState = entry.getValue();
+            long committableOffset = partitionState.pendingOffsets.isEmpty() ? partitionState.nextOffset : partitionState.pendingOffsets.first();
+            if (committableOffset != partitionState.committedOffset) {
+                committableOffsets.put(entry.getKey(), committableOffset);
+            }
+        }
+        return committableOffsets;
+    }
+
+    /**
+     * Marks offsets as committed.
+     *
+     * @param committedOffsets Committed offsets
+     */
+    public synchronized void markCommitted(Map<TopicPartition, Long> committedOffsets) {
+        for (Map.Entry<TopicPartition, Long> entry : committedOffsets.entrySet()) {
+            PartitionState partitionState = this.partitionStates.get(entry.getKey());
+            if (partitionState != null) {
+                partitionState.committedOffset = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * Stops tracking partitions (e.g., since they have been revoked).
+     *
+     * @param topicPartitions Partitions
+     */
+    public synchronized void removePartitions(Collection<TopicPartition> topicPartitions) {
+        for (TopicPartition topicPartition : topicPartitions) {
+            this.partitionStates.remove(topicPartition);
+        }
+    }
+
+    /**
+     * State of a partition.
+     */
+    private static class PartitionState {
+
+        /**
+         * Offsets of the registered records which are not completed yet
+         */
+        private final TreeSet<Long> pendingOffsets = new TreeSet<>();
+
+        /**
+         * Offset after the highest registered record
+         */
+        private long nextOffset = -1;
+
+        /**
+         * Offset which has been marked as committed the last time
+         */
+        private long committedOffset = -1;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.offsets;
+
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Position (topic, partition, and offset) of a Kafka record.
+ */
+public final class RecordPosition {
+
+    /**
+     * Topic and partition
+     */
+    private final TopicPartition topicPartition;
+
+    /**
+     * Offset
+     */
+    private final long offset;
+
+    /**
+     * RecordPosition constructor.
+     *
+     * @param topicPartition Topic and partition
+     * @param offset         Offset
+     */
+    public RecordPosition(TopicPartition topicPartition, long offset) {
+        this.topicPartition = topicPartition;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the topic and partition.
+     *
+     * @return Topic and partition
+     */
+    public TopicPartition getTopicPartition() {
+        return this.topicPartition;
+    }
+
+    /**
+     * Returns the offset.
+     *
+     * @return Offset
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns a deterministic document identifier for the document generated from the record (topic/partition/offset).
+     *
+     * @return Document identifier
+     */
+    public String toDocumentId() {
+        return this.topicPartition.topic() + "/" + this.topicPartition.partition() + "/" + this.offset;
+    }
+
+    @Override
+    public String toString() {
+        return this.topicPartition + "@" + this.offset;
+    }
+}
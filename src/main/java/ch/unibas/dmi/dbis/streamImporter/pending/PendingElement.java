@@ -0,0 +1,94 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.pending;
+
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * Data stream element which waits for the matchMetadata stream element of its match.
+ */
+public class PendingElement {
+
+    /**
+     * Data stream element
+     */
+    private final AbstractImmutableDataStreamElement dataStreamElement;
+
+    /**
+     * Kafka record the data stream element has been received with
+     */
+    private final ConsumerRecord<String, byte[]> record;
+
+    /**
+     * Position of the Kafka record
+     */
+    private final RecordPosition recordPosition;
+
+    /**
+     * PendingElement constructor.
+     *
+     * @param dataStreamElement Data stream element
+     * @param record            Kafka record the data stream element has been received with
+     * @param recordPosition    Position of the Kafka record
+     */
+    PendingElement(AbstractImmutableDataStreamElement dataStreamElement, ConsumerRecord<String, byte[]> record, RecordPosition recordPosition) {
+        this.dataStreamElement = dataStreamElement;
+        this.record = record;
+        this.recordPosition = recordPosition;
+    }
+
+    /**
+     * Returns the data stream element.
+     *
+     * @return Data stream element
+     */
+    public AbstractImmutableDataStreamElement getDataStreamElement() {
+        return this.dataStreamElement;
+    }
+
+    /**
+     * Returns the Kafka record the data stream element has been received with.
+     *
+     * @return Kafka record
+     */
+    public ConsumerRecord<String, byte[]> getRecord() {
+        return this.record;
+    }
+
+    /**
+     * Returns the position of the Kafka record.
+     *
+     * @return Position of the Kafka record
+     */
+    public RecordPosition getRecordPosition() {
+        return this.recordPosition;
+    }
+
+    /**
+     * Returns the serialized size (in bytes) of a Kafka record (used to estimate the memory consumption of a pending element).
+     *
+     * @param record Kafka record
+     * @return Serialized size (in bytes)
+     */
+    static int sizeOf(ConsumerRecord<String, byte[]> record) {
+        return record.value().length + (record.key() == null ? 0 : record.key().length());
+    }
+}
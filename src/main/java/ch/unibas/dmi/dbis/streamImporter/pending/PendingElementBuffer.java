@@ -0,0 +1,433 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.pending;
+
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer for data stream elements which cannot be added to MongoDB yet as the matchMetadata stream element of their match has not been consumed yet.
+ * The elements are grouped by match such that all elements of a match can be released in one step as soon as its matchMetadata stream element arrives.
+ * Every match has a memory budget (estimated by the serialized size of its elements). If the budget is exhausted, further elements of the match are spilled to a file (if a spill directory is configured) or dropped.
+ * Only the positions of the spilled records are kept in memory (compact offset arrays per partition) such that the records can be discarded without reading the spill file. Spilled records are read back in chunks of at most the memory budget of a match.
+ * If the matchMetadata stream element does not arrive within the TTL (counted from the first buffered element of the match), all elements of the match are discarded.
+ * Not thread-safe (only used by the consumption loop), except for the getters of the number of elements and the memory consumption.
+ */
+public class PendingElementBuffer {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(PendingElementBuffer.class);
+
+    /**
+     * Memory budget (in bytes) per match
+     */
+    private final long maxBytesPerMatch;
+
+    /**
+     * Time (in ms) after which the elements of a match are discarded if its matchMetadata stream element has not arrived
+     */
+    private final long ttl;
+
+    /**
+     * Directory for the spill files (null if spilling is disabled)
+     */
+    private final File spillDirectory;
+
+    /**
+     * Buffer per match
+     */
+    private final Map<String, MatchBuffer> matchBuffers;
+
+    /**
+     * Number of elements in memory (over all matches)
+     */
+    private volatile int numberOfElements;
+
+    /**
+     * Estimated memory consumption (in bytes) of the elements in memory (over all matches)
+     */
+    private volatile long bytes;
+
+    /**
+     * PendingElementBuffer constructor.
+     *
+     * @param maxBytesPerMatch Memory budget (in bytes) per match
+     * @param ttl              Time (in ms) after which the elements of a match are discarded if its matchMetadata stream element has not arrived
+     * @param spillDirectory   Directory for the spill files (empty if spilling is disabled)
+     */
+    public PendingElementBuffer(long maxBytesPerMatch, long ttl, String spillDirectory) {
+        this.maxBytesPerMatch = maxBytesPerMatch;
+        this.ttl = ttl;
+        this.matchBuffers = new HashMap<>();
+        this.numberOfElements = 0;
+        this.bytes = 0;
+
+        if (spillDirectory.trim().isEmpty()) {
+            this.spillDirectory = null;
+        } else {
+            this.spillDirectory = new File(spillDirectory.trim());
+            if (!this.spillDirectory.isDirectory() && !this.spillDirectory.mkdirs()) {
+                logger.error("Cannot create spill directory {}. Spilling is disabled.", this.spillDirectory);
+            } else {
+                // Spill files of a previous run are obsolete since their records are consumed again (their offsets have not been committed)
+                File[] oldSpillFiles = this.spillDirectory.listFiles();
+                if (oldSpillFiles != null) {
+                    for (File oldSpillFile : oldSpillFiles) {
+                        if (!oldSpillFile.delete()) {
+                            logger.warn("Cannot delete old spill file {}", oldSpillFile);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a data stream element.
+     *
+     * @param dataStreamElement Data stream element
+     * @param record            Kafka record the data stream element has been received with
+     * @param recordPosition    Position of the Kafka record
+     * @return True if the element has been buffered (in memory or in the spill file), false if it has been dropped since the memory budget of its match is exhausted
+     */
+    public boolean add(AbstractImmutableDataStreamElement dataStreamElement, ConsumerRecord<String, byte[]> record, RecordPosition recordPosition) {
+        String matchId = dataStreamElement.getKey();
+        MatchBuffer matchBuffer = this.matchBuffers.get(matchId);
+        if (matchBuffer == null) {
+            matchBuffer = new MatchBuffer(matchId, System.currentTimeMillis());
+            this.matchBuffers.put(matchId, matchBuffer);
+        }
+
+        int size = PendingElement.sizeOf(record);
+        if (matchBuffer.spillStream == null && matchBuffer.bytes + size <= this.maxBytesPerMatch) {
+            matchBuffer.elements.addLast(new PendingElement(dataStreamElement, record, recordPosition));
+            matchBuffer.bytes += size;
+            this.numberOfElements++;
+            this.bytes += size;
+            return true;
+        } else if (this.spillDirectory != null) {
+            // Once the match spills, all further elements are spilled as well to preserve their order
+            return matchBuffer.spill(record, recordPosition);
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Releases all elements of a match which are buffered in memory (in the order in which they have been added).
+     * Has to be followed by releaseSpilled to retrieve the elements which have been added later and spilled.
+     *
+     * @param matchId Match identifier
+     * @return Elements in memory
+     */
+    public List<PendingElement> release(String matchId) {
+        MatchBuffer matchBuffer = this.matchBuffers.get(matchId);
+        if (matchBuffer == null) {
+            return Collections.emptyList();
+        }
+        List<PendingElement> elements = new ArrayList<>(matchBuffer.elements);
+        this.numberOfElements -= matchBuffer.elements.size();
+        this.bytes -= matchBuffer.bytes;
+        matchBuffer.elements.clear();
+        matchBuffer.bytes = 0;
+        if (matchBuffer.spillStream == null) {
+            this.matchBuffers.remove(matchId);
+        }
+        return elements;
+    }
+
+    /**
+     * Releases all spilled records of a match (in the order in which they have been added).
+     * The returned reader reads the spill file in chunks and deletes it when it is closed.
+     *
+     * @param matchId Match identifier
+     * @return Reader for the spilled records (have to be decoded again)
+     * @throws IOException Thrown if the spill file cannot be opened
+     */
+    public SpilledRecordReader releaseSpilled(String matchId) throws IOException {
+        MatchBuffer matchBuffer = this.matchBuffers.get(matchId);
+        if (matchBuffer == null || matchBuffer.spillStream == null) {
+            return SpilledRecordReader.EMPTY;
+        }
+        this.matchBuffers.remove(matchId);
+        this.numberOfElements -= matchBuffer.elements.size();
+        this.bytes -= matchBuffer.bytes;
+        matchBuffer.closeSpillStream();
+        return new SpilledRecordReader(matchBuffer.spillFile, this.maxBytesPerMatch, matchBuffer.removedSpilledRecords);
+    }
+
+    /**
+     * Discards the elements of all matches whose TTL has expired.
+     * The spill files are deleted without reading them (the positions of the spilled records are taken from the side index).
+     *
+     * @param now Current time (in ms)
+     * @return Positions of the Kafka records of the discarded elements
+     */
+    public List<RecordPosition> expire(long now) {
+        List<RecordPosition> expiredRecordPositions = new ArrayList<>();
+        Iterator<MatchBuffer> iterator = this.matchBuffers.values().iterator();
+        while (iterator.hasNext()) {
+            MatchBuffer matchBuffer = iterator.next();
+            if (now - matchBuffer.creationTime >= this.ttl) {
+                iterator.remove();
+                for (PendingElement element : matchBuffer.elements) {
+                    expiredRecordPositions.add(element.getRecordPosition());
+                }
+                this.numberOfElements -= matchBuffer.elements.size();
+                this.bytes -= matchBuffer.bytes;
+                int numberOfSpilledRecords = 0;
+                if (matchBuffer.spillStream != null) {
+                    for (Map.Entry<TopicPartition, SpilledOffsets> entry : matchBuffer.spilledOffsets.entrySet()) {
+                        SpilledOffsets spilledOffsets = entry.getValue();
+                        for (int i = 0; i < spilledOffsets.size; ++i) {
+                            expiredRecordPositions.add(new RecordPosition(entry.getKey(), spilledOffsets.offsets[i]));
+                        }
+                        numberOfSpilledRecords += spilledOffsets.size;
+                    }
+                    matchBuffer.closeSpillStream();
+                    if (!matchBuffer.spillFile.delete()) {
+                        logger.warn("Cannot delete spill file {}", matchBuffer.spillFile);
+                    }
+                }
+                logger.warn("Discard {} buffered and {} spilled elements of match {} since its matchMetadata stream element has not arrived within {} ms.", matchBuffer.elements.size(), numberOfSpilledRecords, matchBuffer.matchId, this.ttl);
+            }
+        }
+        return expiredRecordPositions;
+    }
+
+    /**
+     * Discards the elements of partitions which are no longer assigned (e.g., since they have been revoked) such that they are not handled when the matchMetadata stream element of their match arrives (their records are consumed by the new owner of the partition).
+     * Spilled records of these partitions are removed from the side index and skipped when the spill file is read.
+     *
+     * @param partitions Partitions
+     */
+    public void removePartitions(Collection<TopicPartition> partitions) {
+        Iterator<MatchBuffer> iterator = this.matchBuffers.values().iterator();
+        while (iterator.hasNext()) {
+            MatchBuffer matchBuffer = iterator.next();
+            Iterator<PendingElement> elementIterator = matchBuffer.elements.iterator();
+            while (elementIterator.hasNext()) {
+                PendingElement element = elementIterator.next();
+                if (partitions.contains(element.getRecordPosition().getTopicPartition())) {
+                    elementIterator.remove();
+                    int size = PendingElement.sizeOf(element.getRecord());
+                    matchBuffer.bytes -= size;
+                    this.numberOfElements--;
+                    this.bytes -= size;
+                }
+            }
+            if (matchBuffer.spillStream != null) {
+                for (TopicPartition partition : partitions) {
+                    if (matchBuffer.spilledOffsets.remove(partition) != null) {
+                        // All records of the partition which have been spilled so far are skipped
+                        matchBuffer.removedSpilledRecords.put(partition, matchBuffer.numberOfSpilledRecords);
+                    }
+                }
+            }
+            if (matchBuffer.elements.isEmpty() && matchBuffer.spilledOffsets.isEmpty()) {
+                iterator.remove();
+                if (matchBuffer.spillStream != null) {
+                    matchBuffer.closeSpillStream();
+                    if (!matchBuffer.spillFile.delete()) {
+                        logger.warn("Cannot delete spill file {}", matchBuffer.spillFile);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements in memory (over all matches).
+     *
+     * @return Number of elements in memory
+     */
+    public int getNumberOfElements() {
+        return this.numberOfElements;
+    }
+
+    /**
+     * Returns the estimated memory consumption (in bytes) of the elements in memory (over all matches).
+     *
+     * @return Estimated memory consumption (in bytes)
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Buffer of a single match.
+     */
+    private class MatchBuffer {
+
+        /**
+         * Match identifier
+         */
+        private final String matchId;
+
+        /**
+         * Time (in ms) when the first element of the match has been added
+         */
+        private final long creationTime;
+
+        /**
+         * Elements in memory
+         */
+        private final ArrayDeque<PendingElement> elements;
+
+        /**
+         * Estimated memory consumption (in bytes) of the elements in memory
+         */
+        private long bytes;
+
+        /**
+         * Spill file
+         */
+        private File spillFile;
+
+        /**
+         * Output stream to the spill file (null if the match has not spilled yet)
+         */
+        private DataOutputStream spillStream;
+
+        /**
+         * Offsets of the spilled records per partition (side index such that the spill file does not have to be read to discard them)
+         */
+        private final Map<TopicPartition, SpilledOffsets> spilledOffsets;
+
+        /**
+         * Number of records which have been appended to the spill file
+         */
+        private long numberOfSpilledRecords;
+
+        /**
+         * Number of spilled records (counted from the start of the spill file) up to which the records of a removed partition are skipped when the spill file is read
+         */
+        private final Map<TopicPartition, Long> removedSpilledRecords;
+
+        /**
+         * MatchBuffer constructor.
+         *
+         * @param matchId      Match identifier
+         * @param creationTime Time (in ms) when the first element of the match has been added
+         */
+        private MatchBuffer(String matchId, long creationTime) {
+            this.matchId = matchId;
+            this.creationTime = creationTime;
+            this.elements = new ArrayDeque<>();
+            this.bytes = 0;
+            this.spilledOffsets = new HashMap<>();
+            this.numberOfSpilledRecords = 0;
+            this.removedSpilledRecords = new HashMap<>();
+        }
+
+        /**
+         * Appends a record to the spill file and its position to the side index.
+         *
+         * @param record         Kafka record
+         * @param recordPosition Position of the Kafka record
+         * @return True if the record has been spilled
+         */
+        private boolean spill(ConsumerRecord<String, byte[]> record, RecordPosition recordPosition) {
+            try {
+                if (this.spillStream == null) {
+                    this.spillFile = new File(PendingElementBuffer.this.spillDirectory, URLEncoder.encode(this.matchId, "UTF-8") + ".spill");
+                    this.spillStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.spillFile)));
+                    logger.info("Memory budget of match {} is exhausted. Spill further elements to {}.", this.matchId, this.spillFile);
+                }
+                SpilledRecordReader.write(this.spillStream, record);
+            } catch (UnsupportedEncodingException e) {
+                logger.error("Cannot encode spill file name for match {}.", this.matchId, e);
+                return false;
+            } catch (IOException e) {
+                logger.error("Cannot spill record {} of match {}.", record, this.matchId, e);
+                return false;
+            }
+            SpilledOffsets spilledOffsets = this.spilledOffsets.get(recordPosition.getTopicPartition());
+            if (spilledOffsets == null) {
+                spilledOffsets = new SpilledOffsets();
+                this.spilledOffsets.put(recordPosition.getTopicPartition(), spilledOffsets);
+            }
+            spilledOffsets.add(recordPosition.getOffset());
+            this.numberOfSpilledRecords++;
+            return true;
+        }
+
+        /**
+         * Closes the output stream to the spill file (the spill file is kept).
+         */
+        private void closeSpillStream() {
+            try {
+                this.spillStream.close();
+            } catch (IOException e) {
+                logger.error("Cannot close spill file {} of match {}.", this.spillFile, this.matchId, e);
+            }
+        }
+    }
+
+    /**
+     * Offsets of the spilled records of a match in a single partition (growable primitive array).
+     */
+    private static class SpilledOffsets {
+
+        /**
+         * Offsets (only the first size entries are used)
+         */
+        private long[] offsets = new long[16];
+
+        /**
+         * Number of offsets
+         */
+        private int size = 0;
+
+        /**
+         * Adds an offset.
+         *
+         * @param offset Offset
+         */
+        private void add(long offset) {
+            if (this.size == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+            }
+            this.offsets[this.size++] = offset;
+        }
+    }
+}
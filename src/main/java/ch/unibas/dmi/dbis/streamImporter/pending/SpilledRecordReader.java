@@ -0,0 +1,188 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.pending;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reader which streams the spilled records of a match from its spill file in chunks (such that the spilled records are never loaded into memory at once).
+ * Deletes the spill file when it is closed.
+ */
+public class SpilledRecordReader implements Closeable {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SpilledRecordReader.class);
+
+    /**
+     * Reader for a match without spilled records
+     */
+    static final SpilledRecordReader EMPTY = new SpilledRecordReader();
+
+    /**
+     * Spill file (null for the empty reader)
+     */
+    private final File spillFile;
+
+    /**
+     * Input stream from the spill file (null for the empty reader)
+     */
+    private final DataInputStream in;
+
+    /**
+     * Maximum estimated size (in bytes) of a chunk (a chunk contains at least one record)
+     */
+    private final long maxChunkBytes;
+
+    /**
+     * Number of records (counted from the start of the spill file) up to which the records of a removed partition are skipped
+     */
+    private final Map<TopicPartition, Long> removedRecords;
+
+    /**
+     * Number of records which have been read
+     */
+    private long numberOfReadRecords;
+
+    /**
+     * Flag that indicates if the end of the spill file has been reached
+     */
+    private boolean endReached;
+
+    /**
+     * SpilledRecordReader constructor (empty reader).
+     */
+    private SpilledRecordReader() {
+        this.spillFile = null;
+        this.in = null;
+        this.maxChunkBytes = 0;
+        this.removedRecords = Collections.emptyMap();
+        this.numberOfReadRecords = 0;
+        this.endReached = true;
+    }
+
+    /**
+     * SpilledRecordReader constructor.
+     *
+     * @param spillFile     Spill file
+     * @param maxChunkBytes  Maximum estimated size (in bytes) of a chunk
+     * @param removedRecords Number of records (counted from the start of the spill file) up to which the records of a removed partition are skipped
+     * @throws IOException Thrown if the spill file cannot be opened
+     */
+    SpilledRecordReader(File spillFile, long maxChunkBytes, Map<TopicPartition, Long> removedRecords) throws IOException {
+        this.spillFile = spillFile;
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+        this.maxChunkBytes = maxChunkBytes;
+        this.removedRecords = removedRecords;
+        this.numberOfReadRecords = 0;
+        this.endReached = false;
+    }
+
+    /**
+     * Appends a record to a spill file.
+     *
+     * @param out    Output stream to the spill file
+     * @param record Kafka record
+     * @throws IOException Thrown if the record cannot be written
+     */
+    static void write(DataOutputStream out, ConsumerRecord<String, byte[]> record) throws IOException {
+        out.writeUTF(record.topic());
+        out.writeInt(record.partition());
+        out.writeLong(record.offset());
+        out.writeBoolean(record.key() != null);
+        if (record.key() != null) {
+            out.writeUTF(record.key());
+        }
+        out.writeInt(record.value().length);
+        out.write(record.value());
+    }
+
+    /**
+     * Reads the next chunk of spilled records (in the order in which they have been spilled).
+     * Records of removed partitions are skipped.
+     *
+     * @return Spilled records (empty if all records have been read)
+     * @throws IOException Thrown if the spill file cannot be read
+     */
+    public List<ConsumerRecord<String, byte[]>> nextChunk() throws IOException {
+        if (this.endReached) {
+            return Collections.emptyList();
+        }
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        long chunkBytes = 0;
+        while (records.isEmpty() || chunkBytes < this.maxChunkBytes) {
+            String topic;
+            try {
+                topic = this.in.readUTF();
+            } catch (EOFException e) {
+                this.endReached = true;
+                break;
+            }
+            int partition = this.in.readInt();
+            long offset = this.in.readLong();
+            String key = this.in.readBoolean() ? this.in.readUTF() : null;
+            byte[] value = new byte[this.in.readInt()];
+            this.in.readFully(value);
+            long recordIndex = this.numberOfReadRecords++;
+            Long removedRecords = this.removedRecords.get(new TopicPartition(topic, partition));
+            if (removedRecords != null && recordIndex < removedRecords) {
+                continue;
+            }
+            ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(topic, partition, offset, key, value);
+            records.add(record);
+            chunkBytes += PendingElement.sizeOf(record);
+        }
+        return records;
+    }
+
+    /**
+     * Closes the spill file and deletes it.
+     */
+    @Override
+    public void close() {
+        if (this.spillFile == null) {
+            return;
+        }
+        try {
+            this.in.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close spill file {}", this.spillFile, e);
+        }
+        if (!this.spillFile.delete()) {
+            logger.warn("Cannot delete spill file {}", this.spillFile);
+        }
+    }
+}
@@ -23,8 +23,12 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Helper class for reading typed values from a properties object.
@@ -269,4 +273,61 @@ public class PropertyReadHelper {
             return null; // never reached
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a regular expression from the properties object.
+     *
+     * @param properties Properties object
+     * @param key        Key
+     * @return Compiled regular expression
+     * @throws PropertyHasWrongFormatException Thrown if the value has the wrong format.
+     * @throws PropertyDoesNotExistException   Thrown if the key does not exist.
+     */
+    public static Pattern readPattern(Properties properties, String key) throws PropertyHasWrongFormatException, PropertyDoesNotExistException {
+        if (properties.containsKey(key)) {
+            String value = properties.getProperty(key);
+            value = value.trim();
+            try {
+                return Pattern.compile(value);
+            } catch (PatternSyntaxException e) {
+                throw new PropertyHasWrongFormatException(key, "regular expression", value);
+            }
+        } else {
+            throw new PropertyDoesNotExistException(key);
+        }
+    }
+
+    /**
+     * Reads a regular expression from the properties object or dies in case of an exception.
+     *
+     * @param properties Properties object
+     * @param key        Key
+     * @return Compiled regular expression
+     */
+    public static Pattern readPatternOrDie(Properties properties, String key) {
+        try {
+            return readPattern(properties, key);
+        } catch (Exception e) {
+            logger.error("Unable to read regular expression for key {} from properties", key, e);
+            System.exit(1);
+            return null; // never reached
+        }
+    }
+
+    /**
+     * Reads all string values whose keys start with a prefix from the properties object.
+     *
+     * @param properties Properties object
+     * @param prefix     Prefix of the keys
+     * @return String values by key without the prefix (empty if no key starts with the prefix)
+     */
+    public static Map<String, String> readStringsWithPrefix(Properties properties, String prefix) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix) && key.length() > prefix.length()) {
+                result.put(key.substring(prefix.length()), properties.getProperty(key).trim());
+            }
+        }
+        return result;
+    }
+}
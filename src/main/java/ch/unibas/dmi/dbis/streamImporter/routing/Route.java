@@ -0,0 +1,164 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.routing;
+
+import ch.unibas.dmi.dbis.streamImporter.metrics.Counter;
+import ch.unibas.dmi.dbis.streamImporter.writer.CollectionWriter;
+
+/**
+ * Route of the records of a topic (decided once per topic from its first decoded data stream element).
+ */
+public final class Route {
+
+    /**
+     * Route of topics whose data stream elements are not stored (their records are completed without being decoded)
+     */
+    public static final Route IGNORE = new Route(Type.IGNORE, null, null, false);
+
+    /**
+     * Route of topics with matchMetadata stream elements (which update the match context)
+     */
+    public static final Route MATCH_METADATA = new Route(Type.MATCH_METADATA, null, null, false);
+
+    /**
+     * Type of the route
+     */
+    private final Type type;
+
+    /**
+     * Collection writer for the documents (null if the route is not of type COLLECTION)
+     */
+    private final CollectionWriter collectionWriter;
+
+    /**
+     * Counter of the data stream elements dropped by the sampling policy of the stream (null if the data stream elements are not filtered by a sampling policy)
+     */
+    private final Counter sampledOutCounter;
+
+    /**
+     * Specifies if the data stream elements are grouped into state buckets
+     */
+    private final boolean bucketed;
+
+    /**
+     * Route constructor.
+     *
+     * @param type             Type of the route
+     * @param collectionWriter  Collection writer for the documents (null if the route is not of type COLLECTION)
+     * @param sampledOutCounter Counter of the data stream elements dropped by the sampling policy (null if the data stream elements are not filtered by a sampling policy)
+     * @param bucketed          Specifies if the data stream elements are grouped into state buckets
+     */
+    private Route(Type type, CollectionWriter collectionWriter, Counter sampledOutCounter, boolean bucketed) {
+        this.type = type;
+        this.collectionWriter = collectionWriter;
+        this.sampledOutCounter = sampledOutCounter;
+        this.bucketed = bucketed;
+    }
+
+    /**
+     * Creates a route to a collection.
+     *
+     * @param collectionWriter  Collection writer for the documents
+     * @param sampledOutCounter Counter of the data stream elements dropped by the sampling policy (null if the data stream elements are not filtered by a sampling policy before they are encoded)
+     * @param bucketed          Specifies if the data stream elements are grouped into state buckets
+     * @return Route
+     */
+    public static Route toCollection(CollectionWriter collectionWriter, Counter sampledOutCounter, boolean bucketed) {
+        return new Route(Type.COLLECTION, collectionWriter, sampledOutCounter, bucketed);
+    }
+
+    /**
+     * Checks if the records of the topic are ignored.
+     *
+     * @return True if the records are completed without being decoded
+     */
+    public boolean isIgnored() {
+        return this.type == Type.IGNORE;
+    }
+
+    /**
+     * Checks if the topic contains matchMetadata stream elements.
+     *
+     * @return True if the data stream elements update the match context
+     */
+    public boolean isMatchMetadata() {
+        return this.type == Type.MATCH_METADATA;
+    }
+
+    /**
+     * Checks if the data stream elements can be encoded by the decode workers (i.e., they are stored one document per element without sampling).
+     *
+     * @return True if the data stream elements can be encoded as soon as they are decoded
+     */
+    public boolean isPreEncodable() {
+        return this.type == Type.COLLECTION && this.sampledOutCounter == null && !this.bucketed;
+    }
+
+    /**
+     * Returns the collection writer for the documents.
+     *
+     * @return Collection writer (null if the route is not of type COLLECTION)
+     */
+    public CollectionWriter getCollectionWriter() {
+        return this.collectionWriter;
+    }
+
+    /**
+     * Checks if the data stream elements are filtered by a sampling policy.
+     *
+     * @return True if the data stream elements are filtered by a sampling policy before they are encoded
+     */
+    public boolean isSampled() {
+        return this.sampledOutCounter != null;
+    }
+
+    /**
+     * Returns the counter of the data stream elements dropped by the sampling policy (resolved once when the route is created).
+     *
+     * @return Counter (null if the data stream elements are not filtered by a sampling policy)
+     */
+    public Counter getSampledOutCounter() {
+        return this.sampledOutCounter;
+    }
+
+    /**
+     * Checks if the data stream elements are grouped into state buckets.
+     *
+     * @return True if the data stream elements are grouped into state buckets
+     */
+    public boolean isBucketed() {
+        return this.bucketed;
+    }
+
+    @Override
+    public String toString() {
+        if (this.type == Type.COLLECTION) {
+            return this.collectionWriter.getName() + (isSampled() ? " (sampled)" : "") + (this.bucketed ? " (bucketed)" : "");
+        }
+        return this.type.toString();
+    }
+
+    /**
+     * Type of a route.
+     */
+    private enum Type {
+        IGNORE, MATCH_METADATA, COLLECTION
+    }
+}
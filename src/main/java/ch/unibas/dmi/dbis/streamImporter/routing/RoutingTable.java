@@ -0,0 +1,87 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routing table which maps every topic to the route of its records.
+ * The route of a topic is learned from its first decoded data stream element. Afterwards, the records of ignored topics cost only a lookup (no decoding).
+ * Can be read by the decode workers concurrently.
+ */
+public class RoutingTable {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RoutingTable.class);
+
+    /**
+     * Route per topic
+     */
+    private final Map<String, Route> routes;
+
+    /**
+     * RoutingTable constructor.
+     */
+    public RoutingTable() {
+        this.routes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the route of a topic.
+     *
+     * @param topic Topic
+     * @return Route (null if the route of the topic has not been learned yet)
+     */
+    public Route get(String topic) {
+        return this.routes.get(topic);
+    }
+
+    /**
+     * Stores the route of a topic unless another route has been stored concurrently.
+     *
+     * @param topic Topic
+     * @param route Route
+     * @return Route of the topic
+     */
+    public Route learn(String topic, Route route) {
+        Route existingRoute = this.routes.putIfAbsent(topic, route);
+        if (existingRoute != null) {
+            return existingRoute;
+        }
+        logger.info("Route records of topic {} to {}", topic, route);
+        return route;
+    }
+
+    /**
+     * Removes the routes of all topics which are no longer assigned (such that the routes are learned again after a subscription change).
+     *
+     * @param topics Assigned topics
+     */
+    public void retainTopics(Collection<String> topics) {
+        this.routes.keySet().retainAll(topics);
+    }
+}
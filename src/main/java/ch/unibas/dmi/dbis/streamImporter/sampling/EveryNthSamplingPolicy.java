@@ -0,0 +1,64 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.sampling;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+
+import java.util.Map;
+
+/**
+ * Sampling policy which stores every nth data stream element (per match and object), starting with the first one.
+ */
+public class EveryNthSamplingPolicy implements SamplingPolicy {
+
+    /**
+     * Every nth element is stored
+     */
+    private final int n;
+
+    /**
+     * Number of handled elements per match and object (bounded to the most recently used keys)
+     */
+    private final Map<String, Long> counters;
+
+    /**
+     * EveryNthSamplingPolicy constructor.
+     *
+     * @param n Every nth element is stored
+     */
+    public EveryNthSamplingPolicy(int n) {
+        this.n = n;
+        this.counters = new SamplingStates<>(SamplingStates.MAX_SAMPLING_KEYS);
+    }
+
+    @Override
+    public boolean accept(AbstractImmutableDataStreamElement dataStreamElement) {
+        String samplingKey = SamplingPolicies.getSamplingKey(dataStreamElement);
+        Long counter = this.counters.get(samplingKey);
+        long count = counter == null ? 0 : counter;
+        this.counters.put(samplingKey, count + 1);
+        return count % this.n == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "one of every " + this.n + " elements";
+    }
+}
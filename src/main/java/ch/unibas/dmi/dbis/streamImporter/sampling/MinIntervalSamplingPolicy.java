@@ -0,0 +1,68 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.sampling;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+
+import java.util.Map;
+
+/**
+ * Sampling policy which stores at most one data stream element per interval (per match and object, based on the generation timestamps).
+ */
+public class MinIntervalSamplingPolicy implements SamplingPolicy {
+
+    /**
+     * Minimum time (in ms) between the generation timestamps of two stored elements
+     */
+    private final long minInterval;
+
+    /**
+     * Generation timestamp (in ms) of the last stored element per match and object (bounded to the most recently used keys)
+     */
+    private final Map<String, Long> lastStoredGenerationTimestamps;
+
+    /**
+     * MinIntervalSamplingPolicy constructor.
+     *
+     * @param minInterval Minimum time (in ms) between the generation timestamps of two stored elements
+     */
+    public MinIntervalSamplingPolicy(long minInterval) {
+        this.minInterval = minInterval;
+        this.lastStoredGenerationTimestamps = new SamplingStates<>(SamplingStates.MAX_SAMPLING_KEYS);
+    }
+
+    @Override
+    public boolean accept(AbstractImmutableDataStreamElement dataStreamElement) {
+        String samplingKey = SamplingPolicies.getSamplingKey(dataStreamElement);
+        long generationTimestamp = dataStreamElement.getGenerationTimestamp();
+        Long lastStoredGenerationTimestamp = this.lastStoredGenerationTimestamps.get(samplingKey);
+        // Elements which are older than the last stored one (e.g., after a replay) are stored such that no gap remains
+        if (lastStoredGenerationTimestamp == null || generationTimestamp - lastStoredGenerationTimestamp >= this.minInterval || generationTimestamp < lastStoredGenerationTimestamp) {
+            this.lastStoredGenerationTimestamps.put(samplingKey, generationTimestamp);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "at most one element per " + this.minInterval + " ms";
+    }
+}
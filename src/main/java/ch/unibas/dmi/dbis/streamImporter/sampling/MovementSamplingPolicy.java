@@ -0,0 +1,79 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.sampling;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import ch.unibas.dmi.dbis.streamTeam.dataStructures.Geometry;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sampling policy which stores a data stream element only if its (first) position has moved at least a threshold since the last stored element (per match and object).
+ * Elements without position are always stored.
+ */
+public class MovementSamplingPolicy implements SamplingPolicy {
+
+    /**
+     * Minimum distance between the positions of two stored elements
+     */
+    private final double threshold;
+
+    /**
+     * Position of the last stored element per match and object (bounded to the most recently used keys)
+     */
+    private final Map<String, Geometry.Vector> lastStoredPositions;
+
+    /**
+     * MovementSamplingPolicy constructor.
+     *
+     * @param threshold Minimum distance between the positions of two stored elements
+     */
+    public MovementSamplingPolicy(double threshold) {
+        this.threshold = threshold;
+        this.lastStoredPositions = new SamplingStates<>(SamplingStates.MAX_SAMPLING_KEYS);
+    }
+
+    @Override
+    public boolean accept(AbstractImmutableDataStreamElement dataStreamElement) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException {
+        List<Geometry.Vector> positions = dataStreamElement.getPositionsList();
+        if (positions == null || positions.isEmpty()) {
+            return true;
+        }
+        Geometry.Vector position = positions.get(0);
+        String samplingKey = SamplingPolicies.getSamplingKey(dataStreamElement);
+        Geometry.Vector lastStoredPosition = this.lastStoredPositions.get(samplingKey);
+        if (lastStoredPosition != null) {
+            double dx = position.x - lastStoredPosition.x;
+            double dy = position.y - lastStoredPosition.y;
+            double dz = position.z - lastStoredPosition.z;
+            if (dx * dx + dy * dy + dz * dz < this.threshold * this.threshold) {
+                return false;
+            }
+        }
+        this.lastStoredPositions.put(samplingKey, position);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "movement of at least " + this.threshold;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.sampling;
+
+import ch.unibas.dmi.dbis.streamImporter.propertiesHelper.PropertyHasWrongFormatException;
+import ch.unibas.dmi.dbis.streamImporter.propertiesHelper.PropertyReadHelper;
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Sampling policies per stream.
+ * Configured with one property per stream: sampling.[streamName]=everyNth:[n] | minInterval:[ms] | movement:[distance].
+ * Streams without policy are stored completely.
+ */
+public class SamplingPolicies {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SamplingPolicies.class);
+
+    /**
+     * Prefix of the sampling properties
+     */
+    private static final String PROPERTY_PREFIX = "sampling.";
+
+    /**
+     * Sampling policy per stream name
+     */
+    private final Map<String, SamplingPolicy> policies;
+
+    /**
+     * SamplingPolicies constructor.
+     *
+     * @param policies Sampling policy per stream name
+     */
+    public SamplingPolicies(Map<String, SamplingPolicy> policies) {
+        this.policies = new HashMap<>(policies);
+    }
+
+    /**
+     * Reads the sampling policies from the properties object or dies in case of an exception.
+     *
+     * @param properties Properties object
+     * @return Sampling policies
+     */
+    public static SamplingPolicies readOrDie(Properties properties) {
+        Map<String, SamplingPolicy> policies = new HashMap<>();
+        for (Map.Entry<String, String> entry : PropertyReadHelper.readStringsWithPrefix(properties, PROPERTY_PREFIX).entrySet()) {
+            try {
+                SamplingPolicy policy = parse(PROPERTY_PREFIX + entry.getKey(), entry.getValue());
+                policies.put(entry.getKey(), policy);
+                logger.info("Sampling policy for stream {}: {}", entry.getKey(), policy);
+            } catch (PropertyHasWrongFormatException e) {
+                logger.error("Unable to read sampling policy for key {} from properties", PROPERTY_PREFIX + entry.getKey(), e);
+                System.exit(1);
+            }
+        }
+        return new SamplingPolicies(policies);
+    }
+
+    /**
+     * Parses a sampling policy.
+     *
+     * @param key   Key of the property
+     * @param value Value of the property (everyNth:[n] | minInterval:[ms] | movement:[distance])
+     * @return Sampling policy
+     * @throws PropertyHasWrongFormatException Thrown if the value has the wrong format.
+     */
+    static SamplingPolicy parse(String key, String value) throws PropertyHasWrongFormatException {
+        String[] parts = value.split(":", 2);
+        if (parts.length == 2) {
+            String parameter = parts[1].trim();
+            try {
+                switch (parts[0].trim()) {
+                    case "everyNth":
+                        int n = Integer.parseInt(parameter);
+                        if (n > 0) {
+                            return new EveryNthSamplingPolicy(n);
+                        }
+                        break;
+                    case "minInterval":
+                        long minInterval = Long.parseLong(parameter);
+                        if (minInterval >= 0) {
+                            return new MinIntervalSamplingPolicy(minInterval);
+                        }
+                        break;
+                    case "movement":
+                        double threshold = Double.parseDouble(parameter);
+                        if (threshold >= 0.0) {
+                            return new MovementSamplingPolicy(threshold);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                // handled below
+            }
+        }
+        throw new PropertyHasWrongFormatException(key, "sampling policy (everyNth:[n], minInterval:[ms], or movement:[distance])", value);
+    }
+
+    /**
+     * Checks if a stream has a sampling policy.
+     *
+     * @param streamName Name of the stream
+     * @return True if the stream has a sampling policy
+     */
+    public boolean hasPolicy(String streamName) {
+        return this.policies.containsKey(streamName);
+    }
+
+    /**
+     * Decides if a data stream element is stored (according to the sampling policy of its stream).
+     * Must only be called by the consumption loop.
+     *
+     * @param dataStreamElement Data stream element
+     * @return True if the data stream element is stored (always true for streams without sampling policy)
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element
+     */
+    public boolean accept(AbstractImmutableDataStreamElement dataStreamElement) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException {
+        SamplingPolicy policy = this.policies.get(dataStreamElement.getStreamName());
+        return policy == null || policy.accept(dataStreamElement);
+    }
+
+    /**
+     * Returns the key under which the sampling policies keep their state for a data stream element (match and objects).
+     *
+     * @param dataStreamElement Data stream element
+     * @return Sampling key
+     */
+    static String getSamplingKey(AbstractImmutableDataStreamElement dataStreamElement) {
+        List<String> objectIdentifiers = dataStreamElement.getObjectIdentifiersList();
+        return objectIdentifiers == null || objectIdentifiers.isEmpty() ? dataStreamElement.getKey() : dataStreamElement.getKey() + "/" + String.join(",", objectIdentifiers);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.sampling;
+
+import ch.unibas.dmi.dbis.streamTeam.dataStreamElements.AbstractImmutableDataStreamElement;
+
+/**
+ * Policy which decides if a data stream element of a stream is stored or dropped (downsampling of high-frequency streams).
+ * Policies keep their state per match and object and are only called by the consumption loop (in the order in which the elements are handled).
+ */
+public interface SamplingPolicy {
+
+    /**
+     * Decides if a data stream element is stored.
+     *
+     * @param dataStreamElement Data stream element
+     * @return True if the data stream element is stored, false if it is dropped
+     * @throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException Thrown if an information could not be retrieved from the data stream element
+     */
+    boolean accept(AbstractImmutableDataStreamElement dataStreamElement) throws AbstractImmutableDataStreamElement.CannotRetrieveInformationException;
+}
@@ -0,0 +1,56 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.sampling;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * State of a sampling policy per match and object, bounded to the most recently used sampling keys (LRU) such that the state of finished matches does not accumulate over the lifetime of the importer.
+ * If the state of a key has been evicted, the next element of the key is handled as the first one (i.e., it is stored).
+ *
+ * @param <V> Type of the state
+ */
+class SamplingStates<V> extends LinkedHashMap<String, V> {
+
+    /**
+     * Maximum number of sampling keys whose state is kept per policy
+     */
+    static final int MAX_SAMPLING_KEYS = 65536;
+
+    /**
+     * Maximum number of sampling keys whose state is kept
+     */
+    private final int maxSamplingKeys;
+
+    /**
+     * SamplingStates constructor.
+     *
+     * @param maxSamplingKeys Maximum number of sampling keys whose state is kept
+     */
+    SamplingStates(int maxSamplingKeys) {
+        super(16, 0.75f, true); // access order
+        this.maxSamplingKeys = maxSamplingKeys;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > this.maxSamplingKeys;
+    }
+}
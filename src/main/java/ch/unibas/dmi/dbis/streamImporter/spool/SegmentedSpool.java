@@ -0,0 +1,332 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.spool;
+
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Segmented on-disk FIFO of BSON document batches.
+ * Every batch is appended sequentially (with FileChannel) as a record consisting of its length, the CRC32 checksum of its documents, and the concatenated BSON documents.
+ * The lengths of the records are also kept in memory such that a corrupted record can be skipped without losing the following records.
+ * If a segment exceeds the segment size, a new segment is started. Segments are deleted as soon as all their records have been taken.
+ * The spool is not fsynced and does not survive a restart (the leftover segments are deleted when the spool is opened) since the offsets of the spooled records are not committed before they have been written to MongoDB.
+ * Thread-safe.
+ */
+public class SegmentedSpool {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedSpool.class);
+
+    /**
+     * File name suffix of the segments
+     */
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    /**
+     * Size (in bytes) of the record header (length and checksum)
+     */
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Directory of the segments
+     */
+    private final File directory;
+
+    /**
+     * Maximum size (in bytes) of a segment (a segment contains at least one record)
+     */
+    private final long segmentBytes;
+
+    /**
+     * Segments which contain records which have not been taken yet (oldest first)
+     */
+    private final LinkedList<Segment> segments;
+
+    /**
+     * Lengths (in bytes, without header) of the records which have not been taken yet (oldest first)
+     */
+    private final Deque<Integer> recordLengths;
+
+    /**
+     * Number of the next segment
+     */
+    private long nextSegmentNumber;
+
+    /**
+     * Size (in bytes) of the records which have not been taken yet
+     */
+    private long bytes;
+
+    /**
+     * SegmentedSpool constructor.
+     * Creates the directory and deletes the leftover segments of a previous run.
+     *
+     * @param directory    Directory of the segments
+     * @param segmentBytes Maximum size (in bytes) of a segment
+     * @throws IOException Thrown if the directory cannot be created
+     */
+    public SegmentedSpool(File directory, long segmentBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segments = new LinkedList<>();
+        this.recordLengths = new ArrayDeque<>();
+        this.nextSegmentNumber = 0;
+        this.bytes = 0;
+
+        File[] leftoverSegments = directory.listFiles();
+        if (leftoverSegments != null) {
+            for (File leftoverSegment : leftoverSegments) {
+                if (leftoverSegment.getName().endsWith(SEGMENT_SUFFIX)) {
+                    logger.info("Delete leftover spool segment {} (its records are consumed again since their offsets have not been committed)", leftoverSegment);
+                    if (!leftoverSegment.delete()) {
+                        logger.warn("Cannot delete leftover spool segment {}", leftoverSegment);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of documents as a new record.
+     *
+     * @param documents Documents
+     * @throws IOException Thrown if the record cannot be written
+     */
+    public synchronized void append(List<RawBsonDocument> documents) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[documents.size() + 1];
+        CRC32 checksum = new CRC32();
+        int length = 0;
+        for (int i = 0; i < documents.size(); ++i) {
+            ByteBuffer buffer = documents.get(i).getByteBuffer().asNIO();
+            length += buffer.remaining();
+            checksum.update(buffer.duplicate());
+            buffers[i + 1] = buffer;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(length).putInt((int) checksum.getValue()).flip();
+        buffers[0] = header;
+
+        Segment segment = this.segments.peekLast();
+        if (segment == null || (segment.writePosition > 0 && segment.writePosition + HEADER_BYTES + length > this.segmentBytes)) {
+            segment = openSegment();
+        }
+        long recordBytes = HEADER_BYTES + length;
+        long writtenBytes = 0;
+        try {
+            while (writtenBytes < recordBytes) {
+                writtenBytes += segment.channel.write(buffers);
+            }
+        } catch (IOException e) {
+            // Cut the partially written record such that the segment stays readable
+            segment.channel.truncate(segment.writePosition);
+            segment.channel.position(segment.writePosition);
+            throw e;
+        }
+        segment.writePosition += recordBytes;
+        this.bytes += recordBytes;
+        this.recordLengths.addLast(length);
+    }
+
+    /**
+     * Takes the oldest record and returns its documents.
+     * The record is removed even if it cannot be read.
+     *
+     * @return Documents (null if the spool is empty)
+     * @throws IOException Thrown if the record cannot be read or its checksum does not match
+     */
+    public synchronized List<RawBsonDocument> take() throws IOException {
+        Segment segment = this.segments.peekFirst();
+        while (segment != null && segment.readPosition >= segment.writePosition) {
+            if (segment == this.segments.peekLast()) {
+                return null;
+            }
+            this.segments.removeFirst().delete();
+            segment = this.segments.peekFirst();
+        }
+        if (segment == null) {
+            return null;
+        }
+
+        int length = this.recordLengths.removeFirst();
+        long recordPosition = segment.readPosition;
+        segment.readPosition += HEADER_BYTES + length;
+        this.bytes -= HEADER_BYTES + length;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        segment.read(header, recordPosition);
+        header.flip();
+        int storedLength = header.getInt();
+        int expectedChecksum = header.getInt();
+        if (storedLength != length) {
+            throw new IOException("Corrupted header of spool record in " + segment.file + " at position " + recordPosition + " (length " + storedLength + " instead of " + length + ")");
+        }
+
+        byte[] payload = new byte[length];
+        segment.read(ByteBuffer.wrap(payload), recordPosition + HEADER_BYTES);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload, 0, length);
+        if ((int) checksum.getValue() != expectedChecksum) {
+            throw new IOException("Checksum mismatch of spool record in " + segment.file + " at position " + recordPosition);
+        }
+
+        List<RawBsonDocument> documents = new ArrayList<>();
+        ByteBuffer sizes = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 0;
+        while (offset < length) {
+            int documentSize = sizes.getInt(offset);
+            documents.add(new RawBsonDocument(payload, offset, documentSize));
+            offset += documentSize;
+        }
+        return documents;
+    }
+
+    /**
+     * Returns the size of the records which have not been taken yet.
+     *
+     * @return Size (in bytes)
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the number of records which have not been taken yet.
+     *
+     * @return Number of records
+     */
+    public synchronized int getNumberOfRecords() {
+        return this.recordLengths.size();
+    }
+
+    /**
+     * Closes and deletes all segments.
+     */
+    public synchronized void close() {
+        for (Segment segment : this.segments) {
+            segment.delete();
+        }
+        this.segments.clear();
+        this.recordLengths.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Opens a new segment.
+     *
+     * @return Segment
+     * @throws IOException Thrown if the segment cannot be created
+     */
+    private Segment openSegment() throws IOException {
+        File file = new File(this.directory, String.format("%020d", this.nextSegmentNumber++) + SEGMENT_SUFFIX);
+        Segment segment = new Segment(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        this.segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Segment file.
+     */
+    private static class Segment {
+
+        /**
+         * File of the segment
+         */
+        private final File file;
+
+        /**
+         * Channel to the file (sequential writes at the end, positional reads)
+         */
+        private final FileChannel channel;
+
+        /**
+         * Position of the next record which has not been taken yet
+         */
+        private long readPosition;
+
+        /**
+         * End of the last record
+         */
+        private long writePosition;
+
+        /**
+         * Segment constructor.
+         *
+         * @param file    File of the segment
+         * @param channel Channel to the file
+         */
+        private Segment(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+            this.readPosition = 0;
+            this.writePosition = 0;
+        }
+
+        /**
+         * Reads bytes at a position until the buffer is full.
+         *
+         * @param buffer   Buffer
+         * @param position Position in the file
+         * @throws IOException Thrown if the end of the file is reached before the buffer is full
+         */
+        private void read(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int readBytes = this.channel.read(buffer, position);
+                if (readBytes < 0) {
+                    throw new IOException("Unexpected end of spool segment " + this.file);
+                }
+                position += readBytes;
+            }
+        }
+
+        /**
+         * Closes and deletes the segment file.
+         */
+        private void delete() {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close spool segment {}", this.file, e);
+            }
+            if (!this.file.delete()) {
+                logger.warn("Cannot delete spool segment {}", this.file);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.storage;
+
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+
+/**
+ * Document sink which can insert documents without blocking the calling thread for the round trip.
+ */
+public interface AsyncDocumentSink extends DocumentSink {
+
+    /**
+     * Starts an unordered insert of many documents (i.e., a failing document does not prevent the insert of the remaining documents) and returns immediately.
+     * The callback is invoked exactly once by a thread of the driver (and must thus not block).
+     *
+     * @param documents Documents (must not be modified until the callback has been invoked)
+     * @param callback  Callback which is invoked when the insert has completed
+     */
+    void insertManyAsync(List<RawBsonDocument> documents, InsertCallback callback);
+}
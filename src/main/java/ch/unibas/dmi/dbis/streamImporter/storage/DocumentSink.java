@@ -0,0 +1,44 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.storage;
+
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+
+/**
+ * Target of the documents of a single collection.
+ */
+public interface DocumentSink {
+
+    /**
+     * Returns the name of the collection.
+     *
+     * @return Name of the collection
+     */
+    String getName();
+
+    /**
+     * Inserts many documents (unordered, i.e., a failing document does not prevent the insert of the remaining documents).
+     * Throws a com.mongodb.MongoBulkWriteException if single documents could not be inserted and a com.mongodb.MongoException if the whole insert failed.
+     *
+     * @param documents Documents
+     */
+    void insertMany(List<RawBsonDocument> documents);
+}
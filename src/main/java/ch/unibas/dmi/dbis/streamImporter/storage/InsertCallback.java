@@ -0,0 +1,40 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.storage;
+
+import com.mongodb.MongoException;
+
+/**
+ * Callback which is invoked when an asynchronous insert has completed.
+ */
+public interface InsertCallback {
+
+    /**
+     * Invoked when all documents have been inserted.
+     */
+    void onSuccess();
+
+    /**
+     * Invoked when the insert has failed.
+     *
+     * @param exception com.mongodb.MongoBulkWriteException if single documents could not be inserted, com.mongodb.MongoException if the whole insert failed
+     */
+    void onFailure(MongoException exception);
+}
@@ -0,0 +1,61 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.storage;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+
+/**
+ * Document sink which inserts the documents into a MongoDB collection.
+ */
+public class MongoDocumentSink implements DocumentSink {
+
+    /**
+     * Options for the unordered bulk inserts
+     */
+    private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+    /**
+     * MongoDB collection
+     */
+    private final MongoCollection<RawBsonDocument> collection;
+
+    /**
+     * MongoDocumentSink constructor.
+     *
+     * @param collection MongoDB collection
+     */
+    public MongoDocumentSink(MongoCollection<Document> collection) {
+        this.collection = collection.withDocumentClass(RawBsonDocument.class);
+    }
+
+    @Override
+    public String getName() {
+        return this.collection.getNamespace().getCollectionName();
+    }
+
+    @Override
+    public void insertMany(List<RawBsonDocument> documents) {
+        this.collection.insertMany(documents, UNORDERED);
+    }
+}
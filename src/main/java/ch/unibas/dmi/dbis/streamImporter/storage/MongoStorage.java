@@ -0,0 +1,165 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.storage;
+
+import ch.unibas.dmi.dbis.streamImporter.offsets.MongoOffsetStore;
+import ch.unibas.dmi.dbis.streamImporter.offsets.OffsetStore;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage backed by a MongoDB database.
+ * The documents are either inserted with the blocking driver (one writer thread per in-flight insert) or with the reactive streams driver (many in-flight inserts without a thread per insert). The offsets and the match contexts are always accessed with the blocking driver.
+ */
+public class MongoStorage implements Storage {
+
+    /**
+     * Name of the index on _id (which is never dropped)
+     */
+    private static final String ID_INDEX_NAME = "_id_";
+
+    /**
+     * MongoDB client
+     */
+    private final MongoClient mongoClient;
+
+    /**
+     * MongoDB database
+     */
+    private final MongoDatabase database;
+
+    /**
+     * Reactive streams MongoDB client for the asynchronous inserts (null if the documents are inserted with the blocking driver)
+     */
+    private final com.mongodb.reactivestreams.client.MongoClient reactiveMongoClient;
+
+    /**
+     * Reactive streams MongoDB database (null if the documents are inserted with the blocking driver)
+     */
+    private final com.mongodb.reactivestreams.client.MongoDatabase reactiveDatabase;
+
+    /**
+     * MongoStorage constructor.
+     *
+     * @param connectionString MongoDB connection string
+     * @param databaseName     Name of the database
+     * @param asyncWrites      Flag that indicates if the documents are inserted asynchronously with the reactive streams driver or with the blocking driver
+     */
+    public MongoStorage(String connectionString, String databaseName, boolean asyncWrites) {
+        this.mongoClient = new MongoClient(new MongoClientURI(connectionString));
+        this.database = this.mongoClient.getDatabase(databaseName);
+        if (asyncWrites) {
+            this.reactiveMongoClient = MongoClients.create(connectionString);
+            this.reactiveDatabase = this.reactiveMongoClient.getDatabase(databaseName);
+        } else {
+            this.reactiveMongoClient = null;
+            this.reactiveDatabase = null;
+        }
+    }
+
+    @Override
+    public DocumentSink getDocumentSink(String collectionName) {
+        if (this.reactiveDatabase != null) {
+            return new ReactiveMongoDocumentSink(this.reactiveDatabase.getCollection(collectionName));
+        }
+        return new MongoDocumentSink(this.database.getCollection(collectionName));
+    }
+
+    @Override
+    public OffsetStore getOffsetStore(String collectionName, String groupId) {
+        return new MongoOffsetStore(this.database.getCollection(collectionName), groupId);
+    }
+
+    @Override
+    public List<Document> loadMatchContexts(String collectionName) {
+        Bson filter = Filters.and(Filters.exists("generationTimestampFirstDataStreamElement"), Filters.exists("matchStartVideoOffset"));
+        Bson projection = Projections.include("matchId", "generationTimestampFirstDataStreamElement", "matchStartVideoOffset");
+        return this.database.getCollection(collectionName).find(filter).projection(projection).into(new ArrayList<Document>());
+    }
+
+    @Override
+    public int dropSecondaryIndexes(String collectionName, String droppedIndexesCollectionName) {
+        MongoCollection<Document> collection = this.database.getCollection(collectionName);
+        MongoCollection<Document> droppedIndexesCollection = this.database.getCollection(droppedIndexesCollectionName);
+        Document storedDefinitions = droppedIndexesCollection.find(Filters.eq("_id", collectionName)).first();
+        List<Document> indexDefinitions = storedDefinitions == null ? new ArrayList<Document>() : new ArrayList<>(storedDefinitions.getList("indexes", Document.class));
+        Set<String> indexNames = new HashSet<>();
+        for (Document indexDefinition : indexDefinitions) {
+            indexNames.add(indexDefinition.getString("name"));
+        }
+
+        List<String> droppedIndexNames = new ArrayList<>();
+        for (Document indexDefinition : collection.listIndexes()) {
+            String indexName = indexDefinition.getString("name");
+            if (!ID_INDEX_NAME.equals(indexName)) {
+                // The version and namespace are assigned by the server when the index is rebuilt
+                indexDefinition.remove("v");
+                indexDefinition.remove("ns");
+                if (indexNames.add(indexName)) {
+                    indexDefinitions.add(indexDefinition);
+                }
+                droppedIndexNames.add(indexName);
+            }
+        }
+
+        // The definitions are stored before the indexes are dropped such that they are not lost if the importer crashes
+        droppedIndexesCollection.replaceOne(Filters.eq("_id", collectionName), new Document("_id", collectionName).append("indexes", indexDefinitions), new ReplaceOptions().upsert(true));
+        for (String indexName : droppedIndexNames) {
+            collection.dropIndex(indexName);
+        }
+        return droppedIndexNames.size();
+    }
+
+    @Override
+    public int rebuildSecondaryIndexes(String collectionName, String droppedIndexesCollectionName) {
+        MongoCollection<Document> droppedIndexesCollection = this.database.getCollection(droppedIndexesCollectionName);
+        Document storedDefinitions = droppedIndexesCollection.find(Filters.eq("_id", collectionName)).first();
+        if (storedDefinitions == null) {
+            return 0;
+        }
+        List<Document> indexDefinitions = storedDefinitions.getList("indexes", Document.class);
+        if (!indexDefinitions.isEmpty()) {
+            // All indexes are built in a single pass over the collection
+            this.database.runCommand(new Document("createIndexes", collectionName).append("indexes", indexDefinitions));
+        }
+        droppedIndexesCollection.deleteOne(Filters.eq("_id", collectionName));
+        return indexDefinitions.size();
+    }
+
+    @Override
+    public void close() {
+        if (this.reactiveMongoClient != null) {
+            this.reactiveMongoClient.close();
+        }
+        this.mongoClient.close();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.storage;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Document sink which inserts the documents into a MongoDB collection with the reactive streams driver (without holding a thread for the round trip).
+ */
+public class ReactiveMongoDocumentSink implements AsyncDocumentSink {
+
+    /**
+     * Options for the unordered bulk inserts
+     */
+    private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+    /**
+     * MongoDB collection
+     */
+    private final MongoCollection<RawBsonDocument> collection;
+
+    /**
+     * ReactiveMongoDocumentSink constructor.
+     *
+     * @param collection MongoDB collection
+     */
+    public ReactiveMongoDocumentSink(MongoCollection<Document> collection) {
+        this.collection = collection.withDocumentClass(RawBsonDocument.class);
+    }
+
+    @Override
+    public String getName() {
+        return this.collection.getNamespace().getCollectionName();
+    }
+
+    @Override
+    public void insertManyAsync(List<RawBsonDocument> documents, InsertCallback callback) {
+        this.collection.insertMany(documents, UNORDERED).subscribe(new InsertSubscriber(callback));
+    }
+
+    @Override
+    public void insertMany(List<RawBsonDocument> documents) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final MongoException[] failure = new MongoException[1];
+        insertManyAsync(documents, new InsertCallback() {
+            @Override
+            public void onSuccess() {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(MongoException exception) {
+                failure[0] = exception;
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted while waiting for the insert into " + getName(), e);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Subscriber which translates the result of an insert publisher into an invocation of an insert callback.
+     */
+    private static class InsertSubscriber implements Subscriber<InsertManyResult> {
+
+        /**
+         * Callback which is invoked when the insert has completed
+         */
+        private final InsertCallback callback;
+
+        /**
+         * InsertSubscriber constructor.
+         *
+         * @param callback Callback which is invoked when the insert has completed
+         */
+        private InsertSubscriber(InsertCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(1); // the publisher emits a single InsertManyResult
+        }
+
+        @Override
+        public void onNext(InsertManyResult insertManyResult) {
+            // The insert is only complete with onComplete
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.callback.onFailure(throwable instanceof MongoException ? (MongoException) throwable : new MongoException(String.valueOf(throwable.getMessage()), throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            this.callback.onSuccess();
+        }
+    }
+}
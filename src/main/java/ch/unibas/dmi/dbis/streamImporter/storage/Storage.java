@@ -0,0 +1,79 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.storage;
+
+import ch.unibas.dmi.dbis.streamImporter.offsets.OffsetStore;
+import org.bson.Document;
+
+import java.util.List;
+
+/**
+ * Storage to which the importer writes the documents and its offsets (MongoDB in production, in-memory stand-ins for benchmarks).
+ */
+public interface Storage {
+
+    /**
+     * Returns the document sink for a collection.
+     *
+     * @param collectionName Name of the collection
+     * @return Document sink
+     */
+    DocumentSink getDocumentSink(String collectionName);
+
+    /**
+     * Returns the store for the offsets of a consumer group.
+     *
+     * @param collectionName Name of the collection in which the offsets are stored
+     * @param groupId        Consumer group identifier
+     * @return Offset store
+     */
+    OffsetStore getOffsetStore(String collectionName, String groupId);
+
+    /**
+     * Loads the match context of all matches whose match documents contain it.
+     *
+     * @param collectionName Name of the collection for storing the match metadata
+     * @return Documents with the fields matchId, generationTimestampFirstDataStreamElement, and matchStartVideoOffset
+     */
+    List<Document> loadMatchContexts(String collectionName);
+
+    /**
+     * Drops the secondary indexes (all indexes except the one on _id) of a collection and stores their definitions such that they can be rebuilt (see rebuildSecondaryIndexes).
+     * The definitions of indexes which have been dropped before but not rebuilt yet (e.g., since a backfill has crashed) are kept.
+     *
+     * @param collectionName               Name of the collection
+     * @param droppedIndexesCollectionName Name of the collection in which the definitions of the dropped indexes are stored
+     * @return Number of dropped indexes
+     */
+    int dropSecondaryIndexes(String collectionName, String droppedIndexesCollectionName);
+
+    /**
+     * Rebuilds the secondary indexes of a collection which have been dropped with dropSecondaryIndexes and removes their stored definitions.
+     *
+     * @param collectionName               Name of the collection
+     * @param droppedIndexesCollectionName Name of the collection in which the definitions of the dropped indexes are stored
+     * @return Number of rebuilt indexes
+     */
+    int rebuildSecondaryIndexes(String collectionName, String droppedIndexesCollectionName);
+
+    /**
+     * Closes the storage.
+     */
+    void close();
+}
@@ -0,0 +1,153 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.freshness.DocumentOrigin;
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulator which collects documents for a collection across multiple iterations of the consumption loop.
+ * A batch is complete as soon as it reaches the maximum number of documents or the maximum BSON size, or as soon as its first document is older than the linger time (whichever happens first).
+ * Not thread-safe (only used by the consumption loop).
+ */
+class BatchAccumulator {
+
+    /**
+     * Controller of the maximum number of documents per batch
+     */
+    private final BatchSizeController batchSizeController;
+
+    /**
+     * Maximum BSON size (in bytes) per batch
+     */
+    private final long maxBytes;
+
+    /**
+     * Maximum time (in ms) a document waits in the accumulator
+     */
+    private final long linger;
+
+    /**
+     * Documents of the current batch
+     */
+    private List<RawBsonDocument> documents;
+
+    /**
+     * Positions of the Kafka records the documents of the current batch have been generated from (a document may have been generated from several records)
+     */
+    private List<RecordPosition> recordPositions;
+
+    /**
+     * Origins of the documents of the current batch
+     */
+    private List<DocumentOrigin> origins;
+
+    /**
+     * BSON size (in bytes) of the current batch
+     */
+    private long bytes;
+
+    /**
+     * Time (in ms) when the first document has been added to the current batch
+     */
+    private long firstDocumentTime;
+
+    /**
+     * BatchAccumulator constructor.
+     *
+     * @param batchSizeController Controller of the maximum number of documents per batch
+     * @param maxBytes            Maximum BSON size (in bytes) per batch
+     * @param linger              Maximum time (in ms) a document waits in the accumulator
+     */
+    BatchAccumulator(BatchSizeController batchSizeController, long maxBytes, long linger) {
+        this.batchSizeController = batchSizeController;
+        this.maxBytes = maxBytes;
+        this.linger = linger;
+        this.documents = new ArrayList<>();
+        this.recordPositions = new ArrayList<>();
+        this.origins = new ArrayList<>();
+        this.bytes = 0;
+    }
+
+    /**
+     * Adds a document to the current batch.
+     *
+     * @param document       Document
+     * @param recordPosition Position of the Kafka record the document has been generated from
+     * @param origin         Origin of the document
+     * @return True if the batch is complete (due to its number of documents or its BSON size)
+     */
+    boolean add(RawBsonDocument document, RecordPosition recordPosition, DocumentOrigin origin) {
+        if (this.documents.isEmpty()) {
+            this.firstDocumentTime = System.currentTimeMillis();
+        }
+        this.documents.add(document);
+        this.recordPositions.add(recordPosition);
+        this.origins.add(origin);
+        this.bytes += document.getByteBuffer().remaining();
+        return this.documents.size() >= this.batchSizeController.getBatchSize() || this.bytes >= this.maxBytes;
+    }
+
+    /**
+     * Adds a document which has been generated from several Kafka records to the current batch.
+     *
+     * @param document        Document
+     * @param recordPositions Positions of the Kafka records the document has been generated from
+     * @param origin          Origin of the document
+     * @return True if the batch is complete (due to its number of documents or its BSON size)
+     */
+    boolean add(RawBsonDocument document, List<RecordPosition> recordPositions, DocumentOrigin origin) {
+        if (this.documents.isEmpty()) {
+            this.firstDocumentTime = System.currentTimeMillis();
+        }
+        this.documents.add(document);
+        this.recordPositions.addAll(recordPositions);
+        this.origins.add(origin);
+        this.bytes += document.getByteBuffer().remaining();
+        return this.documents.size() >= this.batchSizeController.getBatchSize() || this.bytes >= this.maxBytes;
+    }
+
+    /**
+     * Checks if the linger time of the current batch has expired.
+     *
+     * @param now Current time (in ms)
+     * @return True if the current batch is not empty and its first document is older than the linger time
+     */
+    boolean isLingerExpired(long now) {
+        return !this.documents.isEmpty() && now - this.firstDocumentTime >= this.linger;
+    }
+
+    /**
+     * Removes the current batch from the accumulator.
+     *
+     * @return Current batch
+     */
+    DocumentBatch drain() {
+        DocumentBatch batch = new DocumentBatch(this.documents, this.recordPositions, this.origins, false);
+        this.documents = new ArrayList<>();
+        this.recordPositions = new ArrayList<>();
+        this.origins = new ArrayList<>();
+        this.bytes = 0;
+        return batch;
+    }
+}
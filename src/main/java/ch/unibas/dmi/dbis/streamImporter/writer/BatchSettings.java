@@ -0,0 +1,168 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.propertiesHelper.PropertyReadHelper;
+
+import java.util.Properties;
+
+/**
+ * Batching settings of the collection writers (mongodb.batch*, overridden by backfill.* in the backfill mode).
+ * A batch is submitted as soon as it contains the maximum number of documents or the maximum number of bytes or its first document has waited for the linger time.
+ */
+public final class BatchSettings {
+
+    /**
+     * Initial maximum number of documents per batch
+     */
+    private final int maxDocuments;
+
+    /**
+     * Lower bound for the maximum number of documents per batch
+     */
+    private final int minDocuments;
+
+    /**
+     * Upper bound for the maximum number of documents per batch
+     */
+    private final int maxDocumentsLimit;
+
+    /**
+     * Target insert latency (in ms) per batch
+     */
+    private final long targetLatency;
+
+    /**
+     * Maximum BSON size (in bytes) per batch
+     */
+    private final long maxBytes;
+
+    /**
+     * Maximum time (in ms) a document waits for further documents before its batch is submitted
+     */
+    private final long linger;
+
+    /**
+     * BatchSettings constructor.
+     *
+     * @param maxDocuments      Initial maximum number of documents per batch
+     * @param minDocuments      Lower bound for the maximum number of documents per batch (equal to maxDocuments for a fixed batch size)
+     * @param maxDocumentsLimit Upper bound for the maximum number of documents per batch (equal to maxDocuments for a fixed batch size)
+     * @param targetLatency     Target insert latency (in ms) per batch (the batch size grows while the latency stays below it and shrinks if it is exceeded)
+     * @param maxBytes          Maximum BSON size (in bytes) per batch
+     * @param linger            Maximum time (in ms) a document waits for further documents before its batch is submitted
+     */
+    public BatchSettings(int maxDocuments, int minDocuments, int maxDocumentsLimit, long targetLatency, long maxBytes, long linger) {
+        this.maxDocuments = maxDocuments;
+        this.minDocuments = minDocuments;
+        this.maxDocumentsLimit = maxDocumentsLimit;
+        this.targetLatency = targetLatency;
+        this.maxBytes = maxBytes;
+        this.linger = linger;
+    }
+
+    /**
+     * Reads the batching settings from the properties object or dies in case of an exception.
+     * In the backfill mode, the order of the batches does not matter, hence the batches are written with the largest size (mongodb.batchMaxDocumentsLimit documents and backfill.batchMaxBytes bytes).
+     *
+     * @param properties Properties object
+     * @param backfill   Specifies if the importer runs in the backfill mode
+     * @return Batching settings
+     */
+    public static BatchSettings readOrDie(Properties properties, boolean backfill) {
+        int maxDocuments = PropertyReadHelper.readIntOrDie(properties, "mongodb.batchMaxDocuments");
+        boolean adaptiveBatching = PropertyReadHelper.readBooleanOrDie(properties, "mongodb.adaptiveBatching");
+        int minDocuments = adaptiveBatching ? PropertyReadHelper.readIntOrDie(properties, "mongodb.batchMinDocuments") : maxDocuments;
+        int maxDocumentsLimit = adaptiveBatching ? PropertyReadHelper.readIntOrDie(properties, "mongodb.batchMaxDocumentsLimit") : maxDocuments;
+        long targetLatency = PropertyReadHelper.readLongOrDie(properties, "mongodb.batchTargetLatency");
+        long maxBytes = PropertyReadHelper.readLongOrDie(properties, "mongodb.batchMaxBytes");
+        long linger = PropertyReadHelper.readLongOrDie(properties, "mongodb.batchLinger");
+        if (backfill) {
+            maxDocuments = PropertyReadHelper.readIntOrDie(properties, "mongodb.batchMaxDocumentsLimit");
+            minDocuments = maxDocuments;
+            maxDocumentsLimit = maxDocuments;
+            maxBytes = PropertyReadHelper.readLongOrDie(properties, "backfill.batchMaxBytes");
+        }
+        return new BatchSettings(maxDocuments, minDocuments, maxDocumentsLimit, targetLatency, maxBytes, linger);
+    }
+
+    /**
+     * Creates the controller of the maximum number of documents per batch of a collection.
+     *
+     * @param collectionName Name of the collection (for logging)
+     * @return Batch size controller
+     */
+    BatchSizeController createBatchSizeController(String collectionName) {
+        return new BatchSizeController(collectionName, this.maxDocuments, this.minDocuments, this.maxDocumentsLimit, this.targetLatency);
+    }
+
+    /**
+     * Returns the initial maximum number of documents per batch.
+     *
+     * @return Initial maximum number of documents per batch
+     */
+    public int getMaxDocuments() {
+        return this.maxDocuments;
+    }
+
+    /**
+     * Returns the lower bound for the maximum number of documents per batch.
+     *
+     * @return Lower bound for the maximum number of documents per batch
+     */
+    public int getMinDocuments() {
+        return this.minDocuments;
+    }
+
+    /**
+     * Returns the upper bound for the maximum number of documents per batch.
+     *
+     * @return Upper bound for the maximum number of documents per batch
+     */
+    public int getMaxDocumentsLimit() {
+        return this.maxDocumentsLimit;
+    }
+
+    /**
+     * Returns the target insert latency per batch.
+     *
+     * @return Target insert latency (in ms) per batch
+     */
+    public long getTargetLatency() {
+        return this.targetLatency;
+    }
+
+    /**
+     * Returns the maximum BSON size per batch.
+     *
+     * @return Maximum BSON size (in bytes) per batch
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Returns the maximum time a document waits for further documents before its batch is submitted.
+     *
+     * @return Linger time (in ms)
+     */
+    public long getLinger() {
+        return this.linger;
+    }
+}
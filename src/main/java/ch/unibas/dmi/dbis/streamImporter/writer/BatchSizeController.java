@@ -0,0 +1,119 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) controller for the maximum number of documents per batch of a collection writer.
+ * Grows the batch size while full batches are inserted within the target latency and halves it if the latency exceeds the target or documents have to be retried (e.g., during replica set elections or index builds).
+ * The batch size is read by the consumption loop and updated by the writer threads.
+ */
+class BatchSizeController {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BatchSizeController.class);
+
+    /**
+     * Factor by which the batch size is multiplied if the latency exceeds the target or documents have to be retried
+     */
+    private static final double DECREASE_FACTOR = 0.5;
+
+    /**
+     * Name of the collection (for logging)
+     */
+    private final String collectionName;
+
+    /**
+     * Minimum batch size
+     */
+    private final int minBatchSize;
+
+    /**
+     * Maximum batch size
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Number of documents by which the batch size grows after a fast full batch
+     */
+    private final int increment;
+
+    /**
+     * Target latency (in ns) per batch
+     */
+    private final long targetLatencyNanos;
+
+    /**
+     * Current batch size
+     */
+    private volatile int batchSize;
+
+    /**
+     * BatchSizeController constructor.
+     * The batch size is fixed if the minimum and the maximum batch size are equal to the initial batch size.
+     *
+     * @param collectionName   Name of the collection (for logging)
+     * @param initialBatchSize Initial batch size
+     * @param minBatchSize     Minimum batch size
+     * @param maxBatchSize     Maximum batch size
+     * @param targetLatency    Target latency (in ms) per batch
+     */
+    BatchSizeController(String collectionName, int initialBatchSize, int minBatchSize, int maxBatchSize, long targetLatency) {
+        this.collectionName = collectionName;
+        this.minBatchSize = Math.max(1, Math.min(minBatchSize, initialBatchSize));
+        this.maxBatchSize = Math.max(maxBatchSize, initialBatchSize);
+        this.increment = Math.max(1, initialBatchSize / 10);
+        this.targetLatencyNanos = targetLatency * 1000000L;
+        this.batchSize = initialBatchSize;
+    }
+
+    /**
+     * Returns the current batch size.
+     *
+     * @return Maximum number of documents per batch
+     */
+    int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Adapts the batch size to the outcome of an insert.
+     * Only full batches increase the batch size (batches submitted due to their linger time or BSON size say nothing about larger batches).
+     *
+     * @param documents    Number of documents of the batch
+     * @param latencyNanos Latency (in ns) of the insert (including retries)
+     * @param retried      True if documents of the batch had to be retried
+     */
+    synchronized void onBatchWritten(int documents, long latencyNanos, boolean retried) {
+        int oldBatchSize = this.batchSize;
+        if (retried || latencyNanos > this.targetLatencyNanos) {
+            this.batchSize = Math.max(this.minBatchSize, (int) (oldBatchSize * DECREASE_FACTOR));
+        } else if (documents >= oldBatchSize) {
+            this.batchSize = Math.min(this.maxBatchSize, oldBatchSize + this.increment);
+        }
+        if (this.batchSize < oldBatchSize) {
+            logger.debug("Decrease batch size of {} from {} to {} (latency {} ms, retried: {})", this.collectionName, oldBatchSize, this.batchSize, latencyNanos / 1000000, retried);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.spool.SegmentedSpool;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Spool of the document batches of a collection writer which cannot be inserted right away (MongoDB is unavailable or the writer is saturated).
+ * The documents are stored in a segmented spool on disk, the positions and origins of their Kafka records stay in memory (their offsets are not committed before the batch has been written).
+ * The batches are taken in the order in which they have been appended. While the spool is active (it contains batches or a taken batch has not been handed over yet), further batches are appended to preserve the order.
+ * Thread-safe.
+ */
+class BatchSpool {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BatchSpool.class);
+
+    /**
+     * Name of the collection
+     */
+    private final String collectionName;
+
+    /**
+     * Segmented spool for the documents
+     */
+    private final SegmentedSpool segmentedSpool;
+
+    /**
+     * Maximum size (in bytes) of the spooled documents
+     */
+    private final long maxBytes;
+
+    /**
+     * Spooled batches without documents (oldest first)
+     */
+    private final Deque<DocumentBatch> spooledBatches;
+
+    /**
+     * Specifies if a batch has been taken but not handed over yet
+     */
+    private boolean taken;
+
+    /**
+     * BatchSpool constructor.
+     *
+     * @param collectionName Name of the collection
+     * @param segmentedSpool Segmented spool for the documents
+     * @param maxBytes       Maximum size (in bytes) of the spooled documents
+     */
+    BatchSpool(String collectionName, SegmentedSpool segmentedSpool, long maxBytes) {
+        this.collectionName = collectionName;
+        this.segmentedSpool = segmentedSpool;
+        this.maxBytes = maxBytes;
+        this.spooledBatches = new ArrayDeque<>();
+        this.taken = false;
+    }
+
+    /**
+     * Appends a batch unless the spool is full.
+     *
+     * @param documentBatch Batch of documents
+     * @return True if the batch has been appended
+     */
+    synchronized boolean append(DocumentBatch documentBatch) {
+        if (this.segmentedSpool.getBytes() >= this.maxBytes) {
+            return false;
+        }
+        try {
+            this.segmentedSpool.append(documentBatch.getDocuments());
+        } catch (IOException e) {
+            logger.warn("Cannot spool batch of {} documents for {}.", documentBatch.getDocuments().size(), this.collectionName, e);
+            return false;
+        }
+        this.spooledBatches.addLast(new DocumentBatch(Collections.<RawBsonDocument>emptyList(), documentBatch.getRecordPositions(), documentBatch.getOrigins(), true));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Appends a batch if the spool is active (to preserve the order of the batches).
+     *
+     * @param documentBatch Batch of documents
+     * @return True if the batch has been appended
+     */
+    synchronized boolean appendIfActive(DocumentBatch documentBatch) {
+        return isActive() && append(documentBatch);
+    }
+
+    /**
+     * Takes the oldest batch. Waits at most timeout ms if the spool is empty.
+     * The spool stays active until the taken batch has been handed over.
+     *
+     * @param timeout Maximum time (in ms) to wait
+     * @return Batch of documents (null if the spool is empty)
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting
+     * @throws IOException          Thrown if the batch cannot be read (its records are never completed, hence the importer has to be restarted to consume them again)
+     */
+    synchronized DocumentBatch take(long timeout) throws InterruptedException, IOException {
+        if (this.spooledBatches.isEmpty()) {
+            wait(timeout);
+        }
+        DocumentBatch spooledBatch = this.spooledBatches.pollFirst();
+        if (spooledBatch == null) {
+            return null;
+        }
+        List<RawBsonDocument> documents;
+        try {
+            documents = this.segmentedSpool.take();
+        } catch (IOException e) {
+            throw new IOException("Cannot read spooled batch of " + spooledBatch.getRecordPositions().size() + " documents for " + this.collectionName + " (records from " + spooledBatch.getRecordPositions().get(0) + ")", e);
+        }
+        this.taken = true;
+        return new DocumentBatch(documents, spooledBatch.getRecordPositions(), spooledBatch.getOrigins(), true);
+    }
+
+    /**
+     * Marks the taken batch as handed over (to the queue or to MongoDB).
+     */
+    synchronized void handOver() {
+        this.taken = false;
+    }
+
+    /**
+     * Checks if the spool contains batches or a taken batch has not been handed over yet.
+     *
+     * @return True if the spool is active
+     */
+    synchronized boolean isActive() {
+        return this.taken || !this.spooledBatches.isEmpty();
+    }
+
+    /**
+     * Returns the number of spooled batches.
+     *
+     * @return Number of spooled batches
+     */
+    synchronized int getNumberOfBatches() {
+        return this.spooledBatches.size();
+    }
+
+    /**
+     * Returns the size of the spooled documents.
+     *
+     * @return Size (in bytes)
+     */
+    long getBytes() {
+        return this.segmentedSpool.getBytes();
+    }
+
+    /**
+     * Returns the fraction of the maximum size which is in use.
+     *
+     * @return Utilization (between 0 and 1)
+     */
+    double getUtilization() {
+        return Math.min(1.0, (double) getBytes() / this.maxBytes);
+    }
+
+    /**
+     * Deletes the spool. Logs the batches which have not been written (their records are consumed again after the restart).
+     */
+    synchronized void close() {
+        if (!this.spooledBatches.isEmpty()) {
+            logger.warn("{} spooled batches for {} have not been written. Their records are consumed again after the restart.", this.spooledBatches.size(), this.collectionName);
+            this.spooledBatches.clear();
+        }
+        this.segmentedSpool.close();
+    }
+}
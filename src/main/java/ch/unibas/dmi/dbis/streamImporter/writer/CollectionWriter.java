@@ -0,0 +1,1238 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.freshness.DocumentOrigin;
+import ch.unibas.dmi.dbis.streamImporter.freshness.FreshnessTracker;
+import ch.unibas.dmi.dbis.streamImporter.metrics.Counter;
+import ch.unibas.dmi.dbis.streamImporter.metrics.Gauge;
+import ch.unibas.dmi.dbis.streamImporter.metrics.Histogram;
+import ch.unibas.dmi.dbis.streamImporter.metrics.MetricsRegistry;
+import ch.unibas.dmi.dbis.streamImporter.offsets.OffsetTracker;
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import ch.unibas.dmi.dbis.streamImporter.storage.AsyncDocumentSink;
+import ch.unibas.dmi.dbis.streamImporter.storage.DocumentSink;
+import ch.unibas.dmi.dbis.streamImporter.storage.InsertCallback;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Writer for a single MongoDB collection.
+ * Has its own batch accumulator, its own bounded queue of document batches, and its own writer thread(s) such that the collections are written in parallel and a slow collection does not delay the others.
+ * Documents are encoded to BSON when they are added such that the accumulator knows the BSON size of the batch.
+ * The queue capacity limits the number of batches which are in flight for the collection. If the queue is full, submitting blocks (backpressure).
+ * Batches are inserted with unordered bulk writes such that a single failing document does not abort the rest of the batch.
+ * Documents which failed individually with a transient error are retried (with exponential backoff), all other documents which failed individually are published to the failed document channel (with a single insert per batch).
+ * If the whole insert fails (e.g., network error or no primary), the batch is retried with exponential backoff until MongoDB is available again. Its records stay pending in the meantime.
+ * As soon as all documents of a batch are written (or stored in the failed document collection), the Kafka records they have been generated from are completed in the offset tracker and the freshness of the committed documents is recorded.
+ * If the sink is asynchronous, the batches are inserted without writer threads: at most maxInFlightBatches inserts are in flight per collection and submitting blocks until one of them has completed (backpressure). Their completions and retries (including those of the failed documents) are handled by a single completion thread which does not sleep during backoffs (retries are scheduled).
+ * If a spool is configured, batches are spooled to disk instead of blocking the consumption loop if the writer is saturated, and batches whose insert failed since MongoDB is unavailable are spooled instead of being retried.
+ * A replayer thread probes MongoDB with the oldest spooled batch until it is available again and then hands the spooled batches over to the writer in order (the offsets of their records are only committed after they have been written).
+ * In the idempotent mode, the _id of every document is derived from the position(s) of its Kafka record(s) and duplicate key errors are treated as success such that replays and redeliveries do not lead to duplicates.
+ */
+public class CollectionWriter {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(CollectionWriter.class);
+
+    /**
+     * Timeout (in ms) after which a waiting writer thread checks if it should stop
+     */
+    private static final long TAKE_TIMEOUT = 100;
+
+    /**
+     * Maximum backoff (in ms) between two attempts to insert a batch while MongoDB is unavailable
+     */
+    private static final long MAX_BACKOFF = 30000;
+
+    /**
+     * Error code for duplicate keys (https://github.com/mongodb/mongo/blob/master/src/mongo/base/error_codes.yml)
+     */
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    /**
+     * Error codes which indicate a transient error, i.e., the write might succeed if it is retried (https://github.com/mongodb/mongo/blob/master/src/mongo/base/error_codes.yml)
+     */
+    private static final Set<Integer> TRANSIENT_ERROR_CODES = new HashSet<>(Arrays.asList(
+            6, // HostUnreachable
+            7, // HostNotFound
+            50, // MaxTimeMSExpired
+            89, // NetworkTimeout
+            91, // ShutdownInProgress
+            112, // WriteConflict
+            189, // PrimarySteppedDown
+            262, // ExceededTimeLimit
+            9001, // SocketException
+            10107, // NotWritablePrimary
+            11600, // InterruptedAtShutdown
+            11602, // InterruptedDueToReplStateChange
+            13435, // NotPrimaryNoSecondaryOk
+            13436 // NotPrimaryOrSecondary
+    ));
+
+    /**
+     * Codec for encoding the documents
+     */
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    /**
+     * Encoder context for encoding the documents (writes the _id field first)
+     */
+    private static final EncoderContext COLLECTIBLE_ENCODER_CONTEXT = EncoderContext.builder().isEncodingCollectibleDocument(true).build();
+
+    /**
+     * Sink of the collection
+     */
+    private final DocumentSink sink;
+
+    /**
+     * Controller of the maximum number of documents per batch (adapted to the observed insert latency)
+     */
+    private final BatchSizeController batchSizeController;
+
+    /**
+     * Asynchronous sink of the collection (null if the batches are inserted by the writer threads)
+     */
+    private final AsyncDocumentSink asyncSink;
+
+    /**
+     * Maximum number of asynchronous inserts which are in flight
+     */
+    private final int maxInFlightBatches;
+
+    /**
+     * Permits for the asynchronous inserts which are in flight (null if the batches are inserted by the writer threads)
+     */
+    private final Semaphore inFlightPermits;
+
+    /**
+     * Executor which handles the completions of the asynchronous inserts and schedules their retries (null if the batches are inserted by the writer threads)
+     */
+    private final ScheduledExecutorService completionExecutor;
+
+    /**
+     * Accumulator for the batch which is currently filled by the consumption loop
+     */
+    private final BatchAccumulator batchAccumulator;
+
+    /**
+     * Queue of document batches which have not been written yet
+     */
+    private final BlockingQueue<DocumentBatch> queue;
+
+    /**
+     * Writer threads
+     */
+    private final List<Thread> writerThreads;
+
+    /**
+     * Spool for the batches which cannot be inserted right away (null if spooling is disabled)
+     */
+    private final BatchSpool spool;
+
+    /**
+     * Replayer thread which hands the spooled batches over to the writer (null if spooling is disabled)
+     */
+    private final Thread replayerThread;
+
+    /**
+     * Throughput and latency statistics
+     */
+    private final CollectionWriterStatistics statistics;
+
+    /**
+     * Side channel for documents which cannot be inserted
+     */
+    private final FailedDocumentChannel failedDocumentChannel;
+
+    /**
+     * Maximum number of retries for documents which failed individually with a transient error (and for batches while the writer is closing)
+     */
+    private final int maxRetries;
+
+    /**
+     * Backoff (in ms) before the first retry (doubled for every further retry)
+     */
+    private final long retryBackoff;
+
+    /**
+     * Tracker for the offsets of the Kafka records whose documents have not been written yet
+     */
+    private final OffsetTracker offsetTracker;
+
+    /**
+     * Flag that indicates if the _id of the documents is derived from the position of their Kafka record (idempotent mode) or not
+     */
+    private final boolean idempotentWrites;
+
+    /**
+     * Tracker for the freshness of the written documents
+     */
+    private final FreshnessTracker freshnessTracker;
+
+    /**
+     * Number of documents added by the consumption loop
+     */
+    private final Counter addedDocuments;
+
+    /**
+     * Latency (in s) of the inserts of the batches (including retries)
+     */
+    private final Histogram insertLatency;
+
+    /**
+     * Number of documents per batch
+     */
+    private final Histogram batchSize;
+
+    /**
+     * Flag that indicates if the writer threads should continue taking document batches from the queue or not
+     */
+    private volatile boolean runFlag;
+
+    /**
+     * Flag that indicates if the replayer thread should continue replaying the spooled batches or not
+     */
+    private volatile boolean replayerRunFlag;
+
+    /**
+     * Flag that indicates if MongoDB is available (unset as soon as a batch has been spooled since MongoDB is unavailable, set as soon as the replayer has inserted a spooled batch)
+     */
+    private volatile boolean sinkAvailable;
+
+    /**
+     * Flag that indicates if the writer is closing (batches which still cannot be inserted after the maximum number of retries are given up and their records are consumed again after the restart)
+     */
+    private volatile boolean closing;
+
+    /**
+     * Flag that indicates if a batch could not be written due to an unexpected error (its records are not completed and the importer has to be restarted)
+     */
+    private volatile boolean failed;
+
+    /**
+     * CollectionWriter constructor.
+     *
+     * @param sink                  Sink of the collection
+     * @param queueCapacity         Maximum number of document batches in the queue
+     * @param numberOfWriterThreads Number of writer threads (not used if the sink is asynchronous)
+     * @param maxInFlightBatches    Maximum number of asynchronous inserts which are in flight (only used if the sink is asynchronous)
+     * @param failedDocumentChannel Side channel for documents which cannot be inserted
+     * @param retrySettings         Retry settings (the backoff is doubled for every further retry up to 30 s)
+     * @param batchSizeController   Controller of the maximum number of documents per batch
+     * @param batchSettings         Batching settings (maximum BSON size per batch and linger time)
+     * @param spool                 Spool for the batches which cannot be inserted right away (null if spooling is disabled)
+     * @param offsetTracker         Tracker for the offsets of the Kafka records whose documents have not been written yet
+     * @param idempotentWrites      Flag that indicates if the _id of the documents is derived from the position of their Kafka record (idempotent mode) or not
+     * @param metricsRegistry       Registry for the runtime metrics
+     * @param freshnessTracker      Tracker for the freshness of the written documents
+     */
+    CollectionWriter(DocumentSink sink, int queueCapacity, int numberOfWriterThreads, int maxInFlightBatches, FailedDocumentChannel failedDocumentChannel, RetrySettings retrySettings, BatchSizeController batchSizeController, BatchSettings batchSettings, BatchSpool spool, OffsetTracker offsetTracker, boolean idempotentWrites, MetricsRegistry metricsRegistry, FreshnessTracker freshnessTracker) {
+        this.sink = sink;
+        this.freshnessTracker = freshnessTracker;
+        this.offsetTracker = offsetTracker;
+        this.idempotentWrites = idempotentWrites;
+        this.batchSizeController = batchSizeController;
+        this.batchAccumulator = new BatchAccumulator(batchSizeController, batchSettings.getMaxBytes(), batchSettings.getLinger());
+        this.failedDocumentChannel = failedDocumentChannel;
+        this.maxRetries = retrySettings.getMaxRetries();
+        this.retryBackoff = retrySettings.getBackoff();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.statistics = new CollectionWriterStatistics();
+        this.writerThreads = new LinkedList<>();
+        this.maxInFlightBatches = maxInFlightBatches;
+        final String name = getName();
+        if (sink instanceof AsyncDocumentSink) {
+            this.asyncSink = (AsyncDocumentSink) sink;
+            this.inFlightPermits = new Semaphore(maxInFlightBatches);
+            this.completionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CollectionWriter-" + name + "-completion");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            metricsRegistry.gauge("writer_inflight_batches", "Asynchronous inserts which are in flight", new Gauge() {
+                @Override
+                public double getValue() {
+                    return getInFlightBatches();
+                }
+            }, "collection", name);
+        } else {
+            this.asyncSink = null;
+            this.inFlightPermits = null;
+            this.completionExecutor = null;
+            for (int i = 0; i < numberOfWriterThreads; ++i) {
+                Thread writerThread = new Thread(new WriterRunnable(), "CollectionWriter-" + name + "-" + i);
+                this.writerThreads.add(writerThread);
+            }
+        }
+        this.runFlag = true;
+        this.spool = spool;
+        this.replayerRunFlag = true;
+        this.sinkAvailable = true;
+        this.closing = false;
+        if (spool != null) {
+            this.replayerThread = new Thread(new ReplayerRunnable(), "CollectionWriter-" + name + "-replayer");
+            metricsRegistry.gauge("spool_bytes", "Size of the batches which have been spooled to disk and not been written yet", new Gauge() {
+                @Override
+                public double getValue() {
+                    return CollectionWriter.this.spool.getBytes();
+                }
+            }, "collection", name);
+            metricsRegistry.gauge("spool_batches", "Batches which have been spooled to disk and not been written yet", new Gauge() {
+                @Override
+                public double getValue() {
+                    return CollectionWriter.this.spool.getNumberOfBatches();
+                }
+            }, "collection", name);
+        } else {
+            this.replayerThread = null;
+        }
+
+        this.addedDocuments = metricsRegistry.counter("documents_added_total", "Documents produced by the consumption loop", "collection", name);
+        this.insertLatency = metricsRegistry.histogram("insert_latency_seconds", "Latency of the inserts of the batches (including retries)", Histogram.LATENCY_BUCKETS, "collection", name);
+        this.batchSize = metricsRegistry.histogram("batch_size_documents", "Number of documents per batch", Histogram.BATCH_SIZE_BUCKETS, "collection", name);
+        metricsRegistry.counterFunction("documents_written_total", "Documents written to MongoDB", new Gauge() {
+            @Override
+            public double getValue() {
+                return CollectionWriter.this.statistics.getDocuments();
+            }
+        }, "collection", name);
+        metricsRegistry.counterFunction("documents_failed_total", "Documents published to the failed document channel", new Gauge() {
+            @Override
+            public double getValue() {
+                return CollectionWriter.this.statistics.getFailedDocuments();
+            }
+        }, "collection", name);
+        metricsRegistry.counterFunction("documents_retried_total", "Document retries", new Gauge() {
+            @Override
+            public double getValue() {
+                return CollectionWriter.this.statistics.getRetriedDocuments();
+            }
+        }, "collection", name);
+        metricsRegistry.gauge("batch_size_limit_documents", "Current maximum number of documents per batch (adapted to the observed insert latency)", new Gauge() {
+            @Override
+            public double getValue() {
+                return CollectionWriter.this.batchSizeController.getBatchSize();
+            }
+        }, "collection", name);
+        metricsRegistry.gauge("writer_queue_size", "Document batches waiting to be written", new Gauge() {
+            @Override
+            public double getValue() {
+                return getQueueSize();
+            }
+        }, "collection", name);
+    }
+
+    /**
+     * Starts the writer threads.
+     */
+    void start() {
+        if (this.asyncSink != null) {
+            logger.info("Insert into {} asynchronously with at most {} batches in flight", getName(), this.maxInFlightBatches);
+        }
+        for (Thread writerThread : this.writerThreads) {
+            writerThread.start();
+        }
+        if (this.replayerThread != null) {
+            this.replayerThread.start();
+        }
+    }
+
+    /**
+     * Adds a document to the current batch and submits the batch if it is complete.
+     * Must only be called by the consumption loop.
+     *
+     * @param document       Document
+     * @param recordPosition Position of the Kafka record the document has been generated from
+     * @param origin         Origin of the document
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in the queue
+     */
+    public void add(Document document, RecordPosition recordPosition, DocumentOrigin origin) throws InterruptedException {
+        if (!document.containsKey("_id")) {
+            document.put("_id", createDocumentId(recordPosition));
+        }
+        add(encode(document), recordPosition, origin);
+    }
+
+    /**
+     * Adds an already encoded document to the current batch and submits the batch if it is complete.
+     * The document must already contain its _id (see createDocumentId).
+     * Must only be called by the consumption loop.
+     *
+     * @param document       BSON document
+     * @param recordPosition Position of the Kafka record the document has been generated from
+     * @param origin         Origin of the document
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in the queue
+     */
+    public void add(RawBsonDocument document, RecordPosition recordPosition, DocumentOrigin origin) throws InterruptedException {
+        this.addedDocuments.increment();
+        if (this.batchAccumulator.add(document, recordPosition, origin)) {
+            submit(this.batchAccumulator.drain());
+        }
+    }
+
+    /**
+     * Adds an already encoded document which has been generated from several Kafka records (e.g., a state bucket) to the current batch and submits the batch if it is complete.
+     * The records are completed as soon as the document has been written.
+     * Must only be called by the consumption loop.
+     *
+     * @param document        BSON document
+     * @param recordPositions Positions of the Kafka records the document has been generated from
+     * @param origin          Origin of the document
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in the queue
+     */
+    public void add(RawBsonDocument document, List<RecordPosition> recordPositions, DocumentOrigin origin) throws InterruptedException {
+        this.addedDocuments.increment();
+        if (this.batchAccumulator.add(document, recordPositions, origin)) {
+            submit(this.batchAccumulator.drain());
+        }
+    }
+
+    /**
+     * Creates the _id for the document generated from a Kafka record (derived from the position of the record in case of idempotent writes).
+     *
+     * @param recordPosition Position of the Kafka record the document is generated from
+     * @return _id
+     */
+    public BsonValue createDocumentId(RecordPosition recordPosition) {
+        return this.idempotentWrites ? new BsonString(recordPosition.toDocumentId()) : new BsonObjectId(new ObjectId());
+    }
+
+    /**
+     * Creates the _id for a document generated from several Kafka records (e.g., a state bucket).
+     * In case of idempotent writes, the _id is derived from the positions of all records (first position, number of records, and a checksum over all positions) such that only a document generated from exactly the same records is treated as already inserted.
+     *
+     * @param recordPositions Positions of the Kafka records the document is generated from (not empty)
+     * @return _id
+     */
+    public BsonValue createDocumentId(List<RecordPosition> recordPositions) {
+        if (!this.idempotentWrites) {
+            return new BsonObjectId(new ObjectId());
+        }
+        CRC32 checksum = new CRC32();
+        for (RecordPosition recordPosition : recordPositions) {
+            checksum.update(recordPosition.toDocumentId().getBytes(StandardCharsets.UTF_8));
+            checksum.update('\n');
+        }
+        return new BsonString(recordPositions.get(0).toDocumentId() + "+" + recordPositions.size() + "-" + Long.toHexString(checksum.getValue()));
+    }
+
+    /**
+     * Submits the current batch if its linger time has expired.
+     * Must only be called by the consumption loop.
+     *
+     * @param now Current time (in ms)
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in the queue
+     */
+    void submitIfLingerExpired(long now) throws InterruptedException {
+        if (this.batchAccumulator.isLingerExpired(now)) {
+            submit(this.batchAccumulator.drain());
+        }
+    }
+
+    /**
+     * Submits the current batch regardless of its size and age.
+     * Must only be called by the consumption loop.
+     *
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in the queue
+     */
+    void submitCurrentBatch() throws InterruptedException {
+        submit(this.batchAccumulator.drain());
+    }
+
+    /**
+     * Submits a batch of documents.
+     * Spools the batch if the spool is active (to preserve the order) or if the queue is full (or the maximum number of asynchronous inserts is in flight).
+     * Blocks if the batch has to be spooled but the spool is full or disabled.
+     *
+     * @param documentBatch Batch of documents (ignored if empty)
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in the queue
+     */
+    private void submit(DocumentBatch documentBatch) throws InterruptedException {
+        if (documentBatch.isEmpty() || (this.spool != null && this.spool.appendIfActive(documentBatch))) {
+            return;
+        }
+        if (this.asyncSink != null) {
+            if (!this.inFlightPermits.tryAcquire()) {
+                if (this.spool != null && this.spool.append(documentBatch)) {
+                    return;
+                }
+                this.inFlightPermits.acquire();
+            }
+            new AsyncInsert(documentBatch).attempt();
+        } else if (!this.queue.offer(documentBatch)) {
+            if (this.spool != null && this.spool.append(documentBatch)) {
+                return;
+            }
+            this.queue.put(documentBatch);
+        }
+    }
+
+    /**
+     * Hands a spooled batch over to the writer threads (or inserts it asynchronously). Blocks if the queue is full (or if the maximum number of asynchronous inserts is in flight).
+     *
+     * @param documentBatch Batch of documents
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in the queue
+     */
+    private void enqueue(DocumentBatch documentBatch) throws InterruptedException {
+        if (this.asyncSink != null) {
+            this.inFlightPermits.acquire();
+            new AsyncInsert(documentBatch).attempt();
+        } else {
+            this.queue.put(documentBatch);
+        }
+    }
+
+    /**
+     * Checks if an insert failed since MongoDB is unavailable (e.g., no primary, network error, or timeout).
+     *
+     * @param e Exception of the insert
+     * @return True if MongoDB is unavailable
+     */
+    private static boolean isUnavailable(MongoException e) {
+        return !(e instanceof MongoBulkWriteException) && (e instanceof MongoSocketException || e instanceof MongoTimeoutException || e instanceof MongoNotPrimaryException || e instanceof MongoNodeIsRecoveringException || TRANSIENT_ERROR_CODES.contains(e.getCode()));
+    }
+
+    /**
+     * Spools a batch whose insert failed since MongoDB is unavailable and marks MongoDB as unavailable.
+     *
+     * @param documentBatch Batch of documents
+     * @param e             Exception of the insert
+     * @return True if the batch has been spooled, false if it has to be retried (spooling is disabled or the spool is full)
+     */
+    private boolean spoolUnavailable(DocumentBatch documentBatch, MongoException e) {
+        if (this.spool == null || !this.spool.append(documentBatch)) {
+            return false;
+        }
+        if (this.sinkAvailable) {
+            this.sinkAvailable = false;
+            logger.warn("{} is unavailable due to {}: {}. Spool its batches until it is available again.", getName(), e.getClass().getSimpleName(), e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Marks the writer as closing such that batches which still cannot be inserted after the maximum number of retries are given up (and a consumption loop which waits for free space in the queue is released).
+     * Can be called by any thread.
+     */
+    void beginClose() {
+        this.closing = true;
+    }
+
+    /**
+     * Stops the writer threads after all document batches in the queue have been written (or waits until all asynchronous inserts have completed).
+     * Batches which still cannot be inserted after the maximum number of retries are given up (their records are consumed again after the restart).
+     * Before, the replayer thread hands the remaining spooled batches over to the writer unless MongoDB is unavailable (the records of batches which are left in the spool are consumed again after the restart).
+     */
+    void close() {
+        this.closing = true;
+        if (this.replayerThread != null) {
+            this.replayerRunFlag = false;
+            try {
+                this.replayerThread.join();
+            } catch (InterruptedException e) {
+                logger.trace("InterruptedException while waiting for replayer thread.", e);
+            }
+        }
+        if (this.asyncSink != null) {
+            this.inFlightPermits.acquireUninterruptibly(this.maxInFlightBatches);
+            this.inFlightPermits.release(this.maxInFlightBatches);
+            this.completionExecutor.shutdown();
+        }
+        this.runFlag = false;
+        for (Thread writerThread : this.writerThreads) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                logger.trace("InterruptedException while waiting for writer thread.", e);
+            }
+        }
+        if (this.spool != null) {
+            this.spool.close();
+        }
+    }
+
+    /**
+     * Returns the name of the collection.
+     *
+     * @return Name of the collection
+     */
+    public String getName() {
+        return this.sink.getName();
+    }
+
+    /**
+     * Returns the number of document batches in the queue.
+     *
+     * @return Number of document batches in the queue
+     */
+    public int getQueueSize() {
+        return this.queue.size();
+    }
+
+    /**
+     * Returns the number of asynchronous inserts which are in flight.
+     *
+     * @return Number of asynchronous inserts which are in flight (0 if the batches are inserted by the writer threads)
+     */
+    public int getInFlightBatches() {
+        return this.asyncSink == null ? 0 : this.maxInFlightBatches - this.inFlightPermits.availablePermits();
+    }
+
+    /**
+     * Returns the utilization of the writer, i.e., the fraction of the queue capacity (or of the asynchronous inserts) which is in use.
+     * If spooling is enabled, the utilization is the fraction of the maximum spool size which is in use (since the queue only overflows into the spool).
+     * Submitting blocks as soon as the utilization reaches 1.
+     *
+     * @return Utilization (between 0 and 1)
+     */
+    public double getUtilization() {
+        if (this.spool != null) {
+            return this.spool.getUtilization();
+        }
+        if (this.asyncSink != null) {
+            return (double) getInFlightBatches() / this.maxInFlightBatches;
+        }
+        int queueSize = this.queue.size();
+        return (double) queueSize / (queueSize + this.queue.remainingCapacity());
+    }
+
+    /**
+     * Returns the throughput and latency statistics.
+     *
+     * @return Throughput and latency statistics
+     */
+    public CollectionWriterStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Encodes a document to BSON.
+     * The _id is assigned before encoding (and not by the driver) such that retries of the document cannot lead to duplicates.
+     *
+     * @param document Document
+     * @return BSON document
+     */
+    static RawBsonDocument encode(Document document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            DOCUMENT_CODEC.encode(writer, document, COLLECTIBLE_ENCODER_CONTEXT);
+        }
+        return new RawBsonDocument(buffer.getInternalBuffer(), 0, buffer.getPosition());
+    }
+
+    /**
+     * Inserts the documents of a batch into the sink of the collection.
+     * Retries the documents which failed with a transient error (or the whole batch if the insert failed as a whole) and publishes the documents which failed individually and permanently to the failed document channel.
+     * Spools the batch if its first attempt failed since MongoDB is unavailable.
+     *
+     * @param documentBatch Batch of documents
+     * @return Documents which have been published to the failed document channel (identity set, null if the batch has been spooled or given up while closing)
+     */
+    private Set<RawBsonDocument> insertMany(DocumentBatch documentBatch) {
+        List<RawBsonDocument> documents = documentBatch.getDocuments();
+        long startTime = System.nanoTime();
+        Set<RawBsonDocument> failedDocuments = Collections.newSetFromMap(new IdentityHashMap<RawBsonDocument, Boolean>());
+        List<RawBsonDocument> failedEntries = new ArrayList<>();
+        List<RawBsonDocument> remainingDocuments = new ArrayList<>(documents); // random access for the indices of the write errors
+        int attempt = 0;
+        while (!remainingDocuments.isEmpty()) {
+            try {
+                this.sink.insertMany(remainingDocuments);
+                remainingDocuments = Collections.emptyList();
+            } catch (MongoException e) {
+                if (attempt == 0 && isUnavailable(e) && spoolUnavailable(documentBatch, e)) {
+                    return null;
+                }
+                remainingDocuments = handleInsertFailure(e, remainingDocuments, attempt, documentBatch.isSpooled(), failedDocuments, failedEntries);
+            }
+
+            if (!remainingDocuments.isEmpty()) {
+                if (isGivingUp(attempt)) {
+                    logGiveUp(documentBatch);
+                    return null;
+                }
+                this.statistics.recordRetriedDocuments(remainingDocuments.size());
+                sleepBackoff(attempt);
+                ++attempt;
+            }
+        }
+        if (!publishFailedDocuments(documentBatch, failedEntries)) {
+            return null;
+        }
+        recordInsert(documents.size(), System.nanoTime() - startTime, attempt);
+        return failedDocuments;
+    }
+
+    /**
+     * Publishes the documents of a batch which failed individually to the failed document channel (with a single insert).
+     * Retries with exponential backoff if the failed document collection cannot be written.
+     *
+     * @param documentBatch Batch of documents
+     * @param failedEntries Entries of the documents which failed individually (see FailedDocumentChannel.createEntry)
+     * @return True if the entries have been stored, false if they have been given up while closing
+     */
+    private boolean publishFailedDocuments(DocumentBatch documentBatch, List<RawBsonDocument> failedEntries) {
+        int attempt = 0;
+        while (true) {
+            try {
+                this.failedDocumentChannel.publish(failedEntries);
+                return true;
+            } catch (MongoException e) {
+                if (isGivingUp(attempt)) {
+                    logGiveUp(documentBatch);
+                    return false;
+                }
+                logger.warn("Cannot store {} failed documents of {} due to {}: {}", failedEntries.size(), getName(), e.getClass().getSimpleName(), e.getMessage());
+                sleepBackoff(attempt);
+                ++attempt;
+            }
+        }
+    }
+
+    /**
+     * Checks if a batch which still cannot be inserted is given up (only while the writer is closing and after the maximum number of retries).
+     *
+     * @param attempt Number of the failed insert attempt (0 for the first attempt)
+     * @return True if the batch is given up
+     */
+    private boolean isGivingUp(int attempt) {
+        return this.closing && attempt >= this.maxRetries;
+    }
+
+    /**
+     * Logs that a batch has been given up while closing.
+     *
+     * @param documentBatch Batch of documents
+     */
+    private void logGiveUp(DocumentBatch documentBatch) {
+        logger.error("Give up inserting a batch of {} documents into {} while closing. Its records are not completed and consumed again after the restart.", documentBatch.getDocuments().size(), getName());
+    }
+
+    /**
+     * Returns the backoff before the next insert attempt (exponential, at most MAX_BACKOFF).
+     *
+     * @param attempt Number of the failed insert attempt (0 for the first attempt)
+     * @return Backoff (in ms)
+     */
+    private long getBackoff(int attempt) {
+        return Math.min(this.retryBackoff << Math.min(attempt, 20), MAX_BACKOFF);
+    }
+
+    /**
+     * Waits for the backoff before the next insert attempt.
+     *
+     * @param attempt Number of the failed insert attempt (0 for the first attempt)
+     */
+    private void sleepBackoff(int attempt) {
+        try {
+            Thread.sleep(getBackoff(attempt));
+        } catch (InterruptedException e) {
+            logger.trace("InterruptedException during retry backoff.", e);
+        }
+    }
+
+    /**
+     * Handles a failed insert attempt.
+     * Collects the documents which failed individually and permanently (or too often) for the failed document channel and returns the documents which have to be retried.
+     * If the whole insert failed, all documents are retried (the documents are never published to the failed document channel in this case since they have not been rejected by MongoDB).
+     *
+     * @param e                  Exception of the insert attempt
+     * @param remainingDocuments Documents of the insert attempt
+     * @param attempt            Number of the insert attempt (0 for the first attempt)
+     * @param spooled            Specifies if the documents have been read from the spool (they might have been inserted partially before they have been spooled)
+     * @param failedDocuments    Documents which failed permanently (the newly failed documents are added)
+     * @param failedEntries      Entries of the documents which failed permanently for the failed document channel (the entries of the newly failed documents are added)
+     * @return Documents which have to be retried
+     */
+    private List<RawBsonDocument> handleInsertFailure(MongoException e, List<RawBsonDocument> remainingDocuments, int attempt, boolean spooled, Set<RawBsonDocument> failedDocuments, List<RawBsonDocument> failedEntries) {
+        if (e instanceof MongoBulkWriteException) {
+            MongoBulkWriteException bulkWriteException = (MongoBulkWriteException) e;
+            if (bulkWriteException.getWriteConcernError() != null) {
+                logger.warn("Write concern error during insert into {}: {}", getName(), bulkWriteException.getWriteConcernError().getMessage());
+            }
+            List<RawBsonDocument> retryDocuments = new ArrayList<>();
+            for (BulkWriteError writeError : bulkWriteException.getWriteErrors()) {
+                RawBsonDocument document = remainingDocuments.get(writeError.getIndex());
+                if ((attempt > 0 || spooled || this.idempotentWrites) && writeError.getCode() == DUPLICATE_KEY_ERROR_CODE) {
+                    // The document has already been inserted by a previous attempt (the _id is assigned before the first attempt and kept in the spool) or before a restart (idempotent mode)
+                    this.statistics.recordDuplicateDocument();
+                    continue;
+                }
+                if (TRANSIENT_ERROR_CODES.contains(writeError.getCode()) && attempt < this.maxRetries) {
+                    retryDocuments.add(document);
+                } else {
+                    this.statistics.recordFailedDocument();
+                    failedDocuments.add(document);
+                    failedEntries.add(this.failedDocumentChannel.createEntry(getName(), document, writeError.getCode(), writeError.getMessage()));
+                }
+            }
+            return retryDocuments;
+        }
+
+        // The whole bulk write failed (e.g., network error or no primary), hence all documents are retried
+        logger.warn("Cannot insert {} documents into {} due to {} (attempt {}): {}", remainingDocuments.size(), getName(), e.getClass().getSimpleName(), attempt + 1, e.getMessage());
+        return remainingDocuments;
+    }
+
+    /**
+     * Records an unexpected error while writing a batch (e.g., a bug, a failing document encoder, or an unreadable spooled batch) instead of letting the writer thread die.
+     * The records of the batch are not completed such that they are consumed again after the restart of the importer (which stops as soon as a collection writer has failed).
+     *
+     * @param e Unexpected error
+     */
+    private void fail(Exception e) {
+        logger.error("Unexpected error while writing into {}. The importer stops and the records which have not been completed are consumed again after the restart.", getName(), e);
+        this.failed = true;
+    }
+
+    /**
+     * Checks if a batch could not be written due to an unexpected error.
+     *
+     * @return True if the collection writer has failed
+     */
+    public boolean hasFailed() {
+        return this.failed;
+    }
+
+    /**
+     * Records the statistics of a completed insert and reports it to the batch size controller.
+     *
+     * @param documents    Number of documents of the batch
+     * @param latencyNanos Latency (in ns) of the insert (including retries)
+     * @param attempts     Number of retries
+     */
+    private void recordInsert(int documents, long latencyNanos, int attempts) {
+        this.statistics.recordBatch(documents, latencyNanos);
+        this.insertLatency.observe(latencyNanos / 1e9);
+        this.batchSize.observe(documents);
+        this.batchSizeController.onBatchWritten(documents, latencyNanos, attempts > 0);
+    }
+
+    /**
+     * Completes a batch after all its documents have been persisted (inserted, already inserted before (duplicate key), or stored in the failed document collection): records the freshness of the committed documents and completes the Kafka records in the offset tracker.
+     * Must not be called for a batch with documents whose insert has been given up, since their records have to be consumed again.
+     *
+     * @param documentBatch   Batch of documents
+     * @param failedDocuments Documents which have been published to the failed document channel
+     */
+    private void completeBatch(DocumentBatch documentBatch, Set<RawBsonDocument> failedDocuments) {
+        recordCommit(documentBatch, failedDocuments);
+        this.offsetTracker.completeAll(documentBatch.getRecordPositions());
+    }
+
+    /**
+     * Records the freshness of the committed documents of a batch (all documents which have not been published to the failed document channel).
+     * The end of the insert is used as commit time for all documents of the batch.
+     *
+     * @param documentBatch   Batch of documents
+     * @param failedDocuments Documents which have been published to the failed document channel
+     */
+    private void recordCommit(DocumentBatch documentBatch, Set<RawBsonDocument> failedDocuments) {
+        long commitTime = System.currentTimeMillis();
+        if (failedDocuments.isEmpty()) {
+            this.freshnessTracker.recordCommit(getName(), documentBatch.getOrigins(), commitTime);
+        } else {
+            List<RawBsonDocument> documents = documentBatch.getDocuments();
+            List<DocumentOrigin> committedOrigins = new ArrayList<>(documents.size());
+            for (int i = 0; i < documents.size(); ++i) {
+                if (!failedDocuments.contains(documents.get(i))) {
+                    committedOrigins.add(documentBatch.getOrigins().get(i));
+                }
+            }
+            this.freshnessTracker.recordCommit(getName(), committedOrigins, commitTime);
+        }
+    }
+
+    /**
+     * Runnable of a writer thread.
+     */
+    private class WriterRunnable implements Runnable {
+
+        /**
+         * Continuously takes document batches from the queue and writes them to MongoDB.
+         * Stops as soon as the run flag is unset and the queue is empty.
+         */
+        @Override
+        public void run() {
+            while (CollectionWriter.this.runFlag || !CollectionWriter.this.queue.isEmpty()) {
+                try {
+                    DocumentBatch documentBatch = CollectionWriter.this.queue.poll(TAKE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (documentBatch != null) {
+                        if (!CollectionWriter.this.sinkAvailable && CollectionWriter.this.spool.append(documentBatch)) {
+                            continue; // Do not wait for the timeout of every batch while MongoDB is unavailable
+                        }
+                        Set<RawBsonDocument> failedDocuments = insertMany(documentBatch);
+                        if (failedDocuments != null) {
+                            completeBatch(documentBatch, failedDocuments);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    logger.trace("InterruptedException in writer thread.", e);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Asynchronous insert of a document batch (including its retries).
+     * The insert attempts are started by the consumption loop (first attempt) or the completion thread (retries), their results are handled by the completion thread.
+     */
+    private class AsyncInsert implements InsertCallback {
+
+        /**
+         * Batch of documents
+         */
+        private final DocumentBatch documentBatch;
+
+        /**
+         * Start time (in ns) of the first attempt
+         */
+        private final long startTime;
+
+        /**
+         * Documents which failed permanently (identity set)
+         */
+        private final Set<RawBsonDocument> failedDocuments;
+
+        /**
+         * Entries of the documents which failed permanently for the failed document channel
+         */
+        private final List<RawBsonDocument> failedEntries;
+
+        /**
+         * Documents of the current attempt
+         */
+        private List<RawBsonDocument> remainingDocuments;
+
+        /**
+         * Number of the current attempt (0 for the first attempt)
+         */
+        private int attempt;
+
+        /**
+         * Number of the current attempt to publish the documents which failed permanently (0 for the first attempt)
+         */
+        private int publishAttempt;
+
+        /**
+         * AsyncInsert constructor.
+         *
+         * @param documentBatch Batch of documents
+         */
+        private AsyncInsert(DocumentBatch documentBatch) {
+            this.documentBatch = documentBatch;
+            this.startTime = System.nanoTime();
+            this.failedDocuments = Collections.newSetFromMap(new IdentityHashMap<RawBsonDocument, Boolean>());
+            this.failedEntries = new ArrayList<>();
+            this.remainingDocuments = new ArrayList<>(documentBatch.getDocuments()); // random access for the indices of the write errors
+            this.attempt = 0;
+            this.publishAttempt = 0;
+        }
+
+        /**
+         * Starts an insert attempt for the remaining documents.
+         */
+        private void attempt() {
+            try {
+                CollectionWriter.this.asyncSink.insertManyAsync(this.remainingDocuments, this);
+            } catch (MongoException e) {
+                onFailure(e);
+            } catch (RuntimeException e) {
+                fail(e);
+                CollectionWriter.this.inFlightPermits.release();
+            }
+        }
+
+        @Override
+        public void onSuccess() {
+            CollectionWriter.this.completionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleResultOrFail(null);
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(final MongoException exception) {
+            CollectionWriter.this.completionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleResultOrFail(exception);
+                }
+            });
+        }
+
+        /**
+         * Handles the result of an insert attempt (on the completion thread) and fails the collection writer (and releases the permit of the batch) if this throws an unexpected error.
+         *
+         * @param exception Exception of the insert attempt (null if all documents have been inserted)
+         */
+        private void handleResultOrFail(MongoException exception) {
+            try {
+                handleResult(exception);
+            } catch (RuntimeException e) {
+                fail(e);
+                CollectionWriter.this.inFlightPermits.release(); // handleResult releases the permit only as its last step
+            }
+        }
+
+        /**
+         * Handles the result of an insert attempt (on the completion thread).
+         * Spools the batch if its first attempt failed since MongoDB is unavailable.
+         * Otherwise, schedules a retry for the documents which failed with a transient error (or for the whole batch) or publishes the documents which failed permanently (asynchronously, the batch is completed and its permit released when they have been stored).
+         *
+         * @param exception Exception of the insert attempt (null if all documents have been inserted)
+         */
+        private void handleResult(MongoException exception) {
+            if (exception == null) {
+                this.remainingDocuments = Collections.emptyList();
+            } else {
+                if (this.attempt == 0 && isUnavailable(exception) && spoolUnavailable(this.documentBatch, exception)) {
+                    CollectionWriter.this.inFlightPermits.release();
+                    return;
+                }
+                this.remainingDocuments = handleInsertFailure(exception, this.remainingDocuments, this.attempt, this.documentBatch.isSpooled(), this.failedDocuments, this.failedEntries);
+            }
+
+            if (!this.remainingDocuments.isEmpty()) {
+                if (isGivingUp(this.attempt)) {
+                    logGiveUp(this.documentBatch);
+                    CollectionWriter.this.inFlightPermits.release();
+                    return;
+                }
+                CollectionWriter.this.statistics.recordRetriedDocuments(this.remainingDocuments.size());
+                long backoff = getBackoff(this.attempt);
+                ++this.attempt;
+                CollectionWriter.this.completionExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        attempt();
+                    }
+                }, backoff, TimeUnit.MILLISECONDS);
+            } else {
+                publish();
+            }
+        }
+
+        /**
+         * Publishes the documents which failed permanently to the failed document channel without blocking the completion thread (its result is handled by the completion thread).
+         */
+        private void publish() {
+            try {
+                CollectionWriter.this.failedDocumentChannel.publishAsync(this.failedEntries, new InsertCallback() {
+                    @Override
+                    public void onSuccess() {
+                        CollectionWriter.this.completionExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                handlePublishResultOrFail(null);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(final MongoException exception) {
+                        CollectionWriter.this.completionExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                handlePublishResultOrFail(exception);
+                            }
+                        });
+                    }
+                });
+            } catch (RuntimeException e) {
+                fail(e);
+                CollectionWriter.this.inFlightPermits.release();
+            }
+        }
+
+        /**
+         * Handles the result of publishing the documents which failed permanently (on the completion thread) and fails the collection writer (and releases the permit of the batch) if this throws an unexpected error.
+         *
+         * @param exception Exception of the publish attempt (null if all entries have been stored)
+         */
+        private void handlePublishResultOrFail(MongoException exception) {
+            try {
+                handlePublishResult(exception);
+            } catch (RuntimeException e) {
+                fail(e);
+                CollectionWriter.this.inFlightPermits.release(); // handlePublishResult releases the permit only as its last step
+            }
+        }
+
+        /**
+         * Handles the result of publishing the documents which failed permanently (on the completion thread).
+         * Completes the batch and releases its permit if the entries have been stored, otherwise schedules a retry (with exponential backoff) such that the completion thread is not blocked during the backoff.
+         *
+         * @param exception Exception of the publish attempt (null if all entries have been stored)
+         */
+        private void handlePublishResult(MongoException exception) {
+            if (exception == null) {
+                recordInsert(this.documentBatch.getDocuments().size(), System.nanoTime() - this.startTime, this.attempt);
+                completeBatch(this.documentBatch, this.failedDocuments);
+                CollectionWriter.this.inFlightPermits.release();
+                return;
+            }
+            if (isGivingUp(this.publishAttempt)) {
+                logGiveUp(this.documentBatch);
+                CollectionWriter.this.inFlightPermits.release();
+                return;
+            }
+            logger.warn("Cannot store {} failed documents of {} due to {}: {}", this.failedEntries.size(), getName(), exception.getClass().getSimpleName(), exception.getMessage());
+            long backoff = getBackoff(this.publishAttempt);
+            ++this.publishAttempt;
+            CollectionWriter.this.completionExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    publish();
+                }
+            }, backoff, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runnable of the replayer thread.
+     */
+    private class ReplayerRunnable implements Runnable {
+
+        /**
+         * Continuously takes the oldest spooled batch and hands it over to the writer (if MongoDB is available) or inserts it itself (to probe if MongoDB is available again).
+         * Stops as soon as the run flag is unset and the spool has been drained (or MongoDB is unavailable), or if a spooled batch cannot be read (the collection writer fails).
+         */
+        @Override
+        public void run() {
+            while (CollectionWriter.this.replayerRunFlag || (CollectionWriter.this.sinkAvailable && CollectionWriter.this.spool.isActive())) {
+                try {
+                    DocumentBatch documentBatch = CollectionWriter.this.spool.take(TAKE_TIMEOUT);
+                    if (documentBatch != null) {
+                        try {
+                            if (CollectionWriter.this.sinkAvailable) {
+                                enqueue(documentBatch);
+                            } else {
+                                probe(documentBatch);
+                            }
+                        } finally {
+                            CollectionWriter.this.spool.handOver();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    logger.trace("InterruptedException in replayer thread.", e);
+                } catch (IOException e) {
+                    // The records of the batch are never completed, hence the importer stops and they are consumed again after the restart
+                    fail(e);
+                    return;
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        /**
+         * Inserts a spooled batch while MongoDB is unavailable. Retries the batch (with exponential backoff) until MongoDB is available again and then marks MongoDB as available.
+         * Gives up if the run flag is unset and the batch still cannot be inserted (the records of the batch are consumed again after the restart).
+         *
+         * @param documentBatch Spooled batch of documents
+         * @throws InterruptedException Thrown if the replayer thread is interrupted during the backoff
+         */
+        private void probe(DocumentBatch documentBatch) throws InterruptedException {
+            long startTime = System.nanoTime();
+            Set<RawBsonDocument> failedDocuments = Collections.newSetFromMap(new IdentityHashMap<RawBsonDocument, Boolean>());
+            List<RawBsonDocument> failedEntries = new ArrayList<>();
+            List<RawBsonDocument> remainingDocuments = new ArrayList<>(documentBatch.getDocuments()); // random access for the indices of the write errors
+            int attempt = 0;
+            long backoff = CollectionWriter.this.retryBackoff;
+            while (!remainingDocuments.isEmpty()) {
+                try {
+                    CollectionWriter.this.sink.insertMany(remainingDocuments);
+                    remainingDocuments = Collections.emptyList();
+                } catch (MongoException e) {
+                    if (isUnavailable(e)) {
+                        logger.warn("Cannot replay spooled batch into {} due to {}: {} (next attempt in {} ms)", getName(), e.getClass().getSimpleName(), e.getMessage(), backoff);
+                    } else {
+                        remainingDocuments = handleInsertFailure(e, remainingDocuments, attempt, true, failedDocuments, failedEntries);
+                        ++attempt;
+                    }
+                }
+
+                if (!remainingDocuments.isEmpty()) {
+                    if (!CollectionWriter.this.replayerRunFlag) {
+                        logger.warn("Stop replaying the spool of {} since it is still unavailable.", getName());
+                        return;
+                    }
+                    CollectionWriter.this.statistics.recordRetriedDocuments(remainingDocuments.size());
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff << 1, MAX_BACKOFF);
+                }
+            }
+            if (!publishFailedDocuments(documentBatch, failedEntries)) {
+                return;
+            }
+            recordInsert(documentBatch.getDocuments().size(), System.nanoTime() - startTime, attempt);
+            completeBatch(documentBatch, failedDocuments);
+            CollectionWriter.this.sinkAvailable = true;
+            logger.info("{} is available again. Replay {} spooled batches.", getName(), CollectionWriter.this.spool.getNumberOfBatches());
+        }
+    }
+}
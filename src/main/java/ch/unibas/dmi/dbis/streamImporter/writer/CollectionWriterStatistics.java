@@ -0,0 +1,178 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency statistics of a collection writer.
+ * Updated by the writer threads and read by the thread which reports the statistics.
+ */
+public class CollectionWriterStatistics {
+
+    /**
+     * Number of written batches
+     */
+    private final AtomicLong batches;
+
+    /**
+     * Number of written documents
+     */
+    private final AtomicLong documents;
+
+    /**
+     * Number of documents which have been published to the failed document channel
+     */
+    private final AtomicLong failedDocuments;
+
+    /**
+     * Number of document retries
+     */
+    private final AtomicLong retriedDocuments;
+
+    /**
+     * Number of documents which have been skipped since they have already been inserted before
+     */
+    private final AtomicLong duplicateDocuments;
+
+    /**
+     * Sum of the write latencies (in ns) of all written batches
+     */
+    private final AtomicLong totalLatencyNanos;
+
+    /**
+     * Maximum write latency (in ns) of a batch since the last reset of the interval statistics
+     */
+    private final AtomicLong maxLatencyNanos;
+
+    /**
+     * CollectionWriterStatistics constructor.
+     */
+    CollectionWriterStatistics() {
+        this.batches = new AtomicLong();
+        this.documents = new AtomicLong();
+        this.failedDocuments = new AtomicLong();
+        this.retriedDocuments = new AtomicLong();
+        this.duplicateDocuments = new AtomicLong();
+        this.totalLatencyNanos = new AtomicLong();
+        this.maxLatencyNanos = new AtomicLong();
+    }
+
+    /**
+     * Records a written batch.
+     *
+     * @param numberOfDocuments Number of documents in the batch
+     * @param latencyNanos      Write latency (in ns)
+     */
+    void recordBatch(int numberOfDocuments, long latencyNanos) {
+        this.batches.incrementAndGet();
+        this.documents.addAndGet(numberOfDocuments);
+        this.totalLatencyNanos.addAndGet(latencyNanos);
+        long currentMax = this.maxLatencyNanos.get();
+        while (latencyNanos > currentMax && !this.maxLatencyNanos.compareAndSet(currentMax, latencyNanos)) {
+            currentMax = this.maxLatencyNanos.get();
+        }
+    }
+
+    /**
+     * Records a document which has been published to the failed document channel.
+     */
+    void recordFailedDocument() {
+        this.failedDocuments.incrementAndGet();
+    }
+
+    /**
+     * Records document retries.
+     *
+     * @param numberOfDocuments Number of documents which are retried
+     */
+    void recordRetriedDocuments(int numberOfDocuments) {
+        this.retriedDocuments.addAndGet(numberOfDocuments);
+    }
+
+    /**
+     * Records a document which has been skipped since it has already been inserted before.
+     */
+    void recordDuplicateDocument() {
+        this.duplicateDocuments.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of written batches.
+     *
+     * @return Number of written batches
+     */
+    public long getBatches() {
+        return this.batches.get();
+    }
+
+    /**
+     * Returns the number of written documents.
+     *
+     * @return Number of written documents
+     */
+    public long getDocuments() {
+        return this.documents.get();
+    }
+
+    /**
+     * Returns the number of documents which have been published to the failed document channel.
+     *
+     * @return Number of failed documents
+     */
+    public long getFailedDocuments() {
+        return this.failedDocuments.get();
+    }
+
+    /**
+     * Returns the number of document retries.
+     *
+     * @return Number of document retries
+     */
+    public long getRetriedDocuments() {
+        return this.retriedDocuments.get();
+    }
+
+    /**
+     * Returns the number of documents which have been skipped since they have already been inserted before.
+     *
+     * @return Number of duplicate documents
+     */
+    public long getDuplicateDocuments() {
+        return this.duplicateDocuments.get();
+    }
+
+    /**
+     * Returns the sum of the write latencies (in ns) of all written batches.
+     *
+     * @return Sum of the write latencies (in ns)
+     */
+    public long getTotalLatencyNanos() {
+        return this.totalLatencyNanos.get();
+    }
+
+    /**
+     * Returns the maximum write latency (in ns) of a batch since the last call of this method and resets it.
+     *
+     * @return Maximum write latency (in ns) since the last call
+     */
+    public long getAndResetMaxLatencyNanos() {
+        return this.maxLatencyNanos.getAndSet(0);
+    }
+}
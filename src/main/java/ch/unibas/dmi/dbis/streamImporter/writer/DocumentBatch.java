@@ -0,0 +1,111 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.freshness.DocumentOrigin;
+import ch.unibas.dmi.dbis.streamImporter.offsets.RecordPosition;
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+
+/**
+ * Batch of documents for a collection together with the positions of the Kafka records and the data stream elements they have been generated from.
+ */
+class DocumentBatch {
+
+    /**
+     * Documents
+     */
+    private final List<RawBsonDocument> documents;
+
+    /**
+     * Positions of the Kafka records the documents have been generated from
+     */
+    private final List<RecordPosition> recordPositions;
+
+    /**
+     * Origins of the documents
+     */
+    private final List<DocumentOrigin> origins;
+
+    /**
+     * Specifies if the batch has been read from the spool (its documents might have been inserted partially before it has been spooled)
+     */
+    private final boolean spooled;
+
+    /**
+     * DocumentBatch constructor.
+     *
+     * @param documents       Documents
+     * @param recordPositions Positions of the Kafka records the documents have been generated from
+     * @param origins         Origins of the documents
+     * @param spooled         Specifies if the batch has been read from the spool
+     */
+    DocumentBatch(List<RawBsonDocument> documents, List<RecordPosition> recordPositions, List<DocumentOrigin> origins, boolean spooled) {
+        this.documents = documents;
+        this.recordPositions = recordPositions;
+        this.origins = origins;
+        this.spooled = spooled;
+    }
+
+    /**
+     * Returns the documents.
+     *
+     * @return Documents
+     */
+    List<RawBsonDocument> getDocuments() {
+        return this.documents;
+    }
+
+    /**
+     * Returns the positions of the Kafka records the documents have been generated from.
+     *
+     * @return Positions of the Kafka records
+     */
+    List<RecordPosition> getRecordPositions() {
+        return this.recordPositions;
+    }
+
+    /**
+     * Returns the origins of the documents.
+     *
+     * @return Origins of the documents
+     */
+    List<DocumentOrigin> getOrigins() {
+        return this.origins;
+    }
+
+    /**
+     * Checks if the batch has been read from the spool.
+     *
+     * @return True if the documents might have been inserted partially before the batch has been spooled
+     */
+    boolean isSpooled() {
+        return this.spooled;
+    }
+
+    /**
+     * Checks if the batch contains no documents.
+     *
+     * @return True if the batch contains no documents
+     */
+    boolean isEmpty() {
+        return this.documents.isEmpty();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.storage.AsyncDocumentSink;
+import ch.unibas.dmi.dbis.streamImporter.storage.DocumentSink;
+import ch.unibas.dmi.dbis.streamImporter.storage.InsertCallback;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import java.util.List;
+
+/**
+ * Side channel for documents which cannot be inserted into their target collection (e.g., because they are rejected by the schema validator).
+ * Stores them together with the error in a separate collection without validator such that they can be inspected and re-imported later.
+ * Only documents which failed individually are published (if the whole insert fails, MongoDB is unavailable and the failed document collection would not be reachable either).
+ */
+public class FailedDocumentChannel {
+
+    /**
+     * Error code for duplicate keys (https://github.com/mongodb/mongo/blob/master/src/mongo/base/error_codes.yml)
+     */
+    private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    /**
+     * Sink for the failed documents
+     */
+    private final DocumentSink failedDocumentsSink;
+
+    /**
+     * FailedDocumentChannel constructor.
+     *
+     * @param failedDocumentsSink Sink for the failed documents
+     */
+    public FailedDocumentChannel(DocumentSink failedDocumentsSink) {
+        this.failedDocumentsSink = failedDocumentsSink;
+    }
+
+    /**
+     * Creates the entry of a document which cannot be inserted into its target collection.
+     * The _id of the entry is assigned when it is encoded such that publishing it again after a failed attempt does not lead to duplicates.
+     *
+     * @param collectionName Name of the target collection
+     * @param document       Document
+     * @param errorCode      Error code
+     * @param errorMessage   Error message
+     * @return Entry (BSON document)
+     */
+    RawBsonDocument createEntry(String collectionName, RawBsonDocument document, int errorCode, String errorMessage) {
+        Document entry = new Document("collection", collectionName)
+                .append("errorCode", errorCode)
+                .append("errorMessage", errorMessage)
+                .append("failedAt", System.currentTimeMillis())
+                .append("document", document);
+        return CollectionWriter.encode(entry);
+    }
+
+    /**
+     * Stores the entries of documents which cannot be inserted into their target collection with a single insert.
+     * Entries which have already been stored by a previous attempt (duplicate key) are treated as stored.
+     *
+     * @param entries Entries (see createEntry)
+     * @throws com.mongodb.MongoException Thrown if not all entries could be stored (the caller retries them)
+     */
+    void publish(List<RawBsonDocument> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            this.failedDocumentsSink.insertMany(entries);
+        } catch (MongoBulkWriteException e) {
+            if (!isAlreadyStored(e)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stores the entries of documents which cannot be inserted into their target collection with a single insert without blocking the calling thread for the round trip (if the sink for the failed documents is asynchronous, otherwise the entries are stored before this method returns).
+     * Entries which have already been stored by a previous attempt (duplicate key) are treated as stored.
+     *
+     * @param entries  Entries (see createEntry)
+     * @param callback Callback which is invoked when the entries have been stored (onSuccess) or not all entries could be stored (onFailure, the caller retries them)
+     */
+    void publishAsync(List<RawBsonDocument> entries, final InsertCallback callback) {
+        if (entries.isEmpty()) {
+            callback.onSuccess();
+            return;
+        }
+        if (!(this.failedDocumentsSink instanceof AsyncDocumentSink)) {
+            try {
+                publish(entries);
+            } catch (MongoException e) {
+                callback.onFailure(e);
+                return;
+            }
+            callback.onSuccess();
+            return;
+        }
+        ((AsyncDocumentSink) this.failedDocumentsSink).insertManyAsync(entries, new InsertCallback() {
+            @Override
+            public void onSuccess() {
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onFailure(MongoException exception) {
+                if (exception instanceof MongoBulkWriteException && isAlreadyStored((MongoBulkWriteException) exception)) {
+                    callback.onSuccess();
+                } else {
+                    callback.onFailure(exception);
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks if the entries of a failed insert have all been stored before (only duplicate key errors and no write concern error).
+     *
+     * @param e Exception of the insert
+     * @return True if all entries are stored
+     */
+    private static boolean isAlreadyStored(MongoBulkWriteException e) {
+        for (BulkWriteError writeError : e.getWriteErrors()) {
+            if (writeError.getCode() != DUPLICATE_KEY_ERROR_CODE) {
+                return false;
+            }
+        }
+        return e.getWriteConcernError() == null;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.freshness.FreshnessTracker;
+import ch.unibas.dmi.dbis.streamImporter.metrics.MetricsRegistry;
+import ch.unibas.dmi.dbis.streamImporter.offsets.OffsetTracker;
+import ch.unibas.dmi.dbis.streamImporter.spool.SegmentedSpool;
+import ch.unibas.dmi.dbis.streamImporter.storage.DocumentSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer stage which decouples the consumption loop from the MongoDB writes.
+ * Manages one collection writer per target collection (such that the collections are written in parallel) and periodically logs their throughput and latency as well as the freshness of the written data.
+ */
+public class MongoWriter {
+
+    /**
+     * Slf4j logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MongoWriter.class);
+
+    /**
+     * Maximum number of document batches per collection which are waiting to be written
+     */
+    private final int queueCapacity;
+
+    /**
+     * Number of writer threads per collection
+     */
+    private final int numberOfWriterThreads;
+
+    /**
+     * Interval (in ms) in which the statistics are logged
+     */
+    private final long statisticsInterval;
+
+    /**
+     * Side channel for documents which cannot be inserted
+     */
+    private final FailedDocumentChannel failedDocumentChannel;
+
+    /**
+     * Maximum number of asynchronous inserts per collection which are in flight (only used if the sinks are asynchronous)
+     */
+    private final int maxInFlightBatches;
+
+    /**
+     * Retry settings
+     */
+    private final RetrySettings retrySettings;
+
+    /**
+     * Batching settings
+     */
+    private final BatchSettings batchSettings;
+
+    /**
+     * Spool settings
+     */
+    private final SpoolSettings spoolSettings;
+
+    /**
+     * Tracker for the offsets of the Kafka records whose documents have not been written yet
+     */
+    private final OffsetTracker offsetTracker;
+
+    /**
+     * Flag that indicates if the _id of the documents is derived from the position of their Kafka record (idempotent mode) or not
+     */
+    private final boolean idempotentWrites;
+
+    /**
+     * Registry for the runtime metrics
+     */
+    private final MetricsRegistry metricsRegistry;
+
+    /**
+     * Tracker for the freshness of the written documents
+     */
+    private final FreshnessTracker freshnessTracker;
+
+    /**
+     * Collection writers
+     */
+    private final List<CollectionWriter> collectionWriters;
+
+    /**
+     * StatisticsReporter
+     */
+    private final StatisticsReporter statisticsReporter;
+
+    /**
+     * MongoWriter constructor.
+     *
+     * @param queueCapacity          Maximum number of document batches per collection which are waiting to be written
+     * @param numberOfWriterThreads  Number of writer threads per collection
+     * @param statisticsInterval     Interval (in ms) in which the statistics are logged
+     * @param maxInFlightBatches     Maximum number of asynchronous inserts per collection which are in flight (only used if the sinks are asynchronous)
+     * @param failedDocumentChannel  Side channel for documents which cannot be inserted
+     * @param retrySettings          Retry settings
+     * @param batchSettings          Batching settings
+     * @param spoolSettings          Spool settings
+     * @param offsetTracker          Tracker for the offsets of the Kafka records whose documents have not been written yet
+     * @param idempotentWrites       Flag that indicates if the _id of the documents is derived from the position of their Kafka record (idempotent mode) or not
+     * @param metricsRegistry        Registry for the runtime metrics
+     * @param freshnessTracker       Tracker for the freshness of the written documents
+     */
+    public MongoWriter(int queueCapacity, int numberOfWriterThreads, long statisticsInterval, int maxInFlightBatches, FailedDocumentChannel failedDocumentChannel, RetrySettings retrySettings, BatchSettings batchSettings, SpoolSettings spoolSettings, OffsetTracker offsetTracker, boolean idempotentWrites, MetricsRegistry metricsRegistry, FreshnessTracker freshnessTracker) {
+        this.queueCapacity = queueCapacity;
+        this.numberOfWriterThreads = numberOfWriterThreads;
+        this.statisticsInterval = statisticsInterval;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.failedDocumentChannel = failedDocumentChannel;
+        this.retrySettings = retrySettings;
+        this.batchSettings = batchSettings;
+        this.spoolSettings = spoolSettings;
+        this.offsetTracker = offsetTracker;
+        this.idempotentWrites = idempotentWrites;
+        this.metricsRegistry = metricsRegistry;
+        this.freshnessTracker = freshnessTracker;
+        this.collectionWriters = new LinkedList<>();
+        this.statisticsReporter = new StatisticsReporter();
+    }
+
+    /**
+     * Creates a collection writer for a collection.
+     *
+     * @param sink Sink of the collection
+     * @return Collection writer
+     */
+    public CollectionWriter createCollectionWriter(DocumentSink sink) {
+        BatchSizeController batchSizeController = this.batchSettings.createBatchSizeController(sink.getName());
+        BatchSpool spool = null;
+        if (this.spoolSettings.isEnabled()) {
+            try {
+                spool = new BatchSpool(sink.getName(), new SegmentedSpool(new File(this.spoolSettings.getDirectory(), sink.getName()), this.spoolSettings.getSegmentBytes()), this.spoolSettings.getMaxBytes());
+            } catch (IOException e) {
+                logger.error("Cannot create spool for {}. Spooling is disabled for this collection.", sink.getName(), e);
+            }
+        }
+        CollectionWriter collectionWriter = new CollectionWriter(sink, this.queueCapacity, this.numberOfWriterThreads, this.maxInFlightBatches, this.failedDocumentChannel, this.retrySettings, batchSizeController, this.batchSettings, spool, this.offsetTracker, this.idempotentWrites, this.metricsRegistry, this.freshnessTracker);
+        this.collectionWriters.add(collectionWriter);
+        return collectionWriter;
+    }
+
+    /**
+     * Returns the collection writers.
+     *
+     * @return Collection writers
+     */
+    public List<CollectionWriter> getCollectionWriters() {
+        return Collections.unmodifiableList(this.collectionWriters);
+    }
+
+    /**
+     * Starts the writer threads of all collection writers and the statistics reporter.
+     */
+    public void start() {
+        logger.info("Start {} MongoDB writer thread(s) for each of the {} collections (queue capacity per collection: {})", this.numberOfWriterThreads, this.collectionWriters.size(), this.queueCapacity);
+        for (CollectionWriter collectionWriter : this.collectionWriters) {
+            collectionWriter.start();
+        }
+        Thread statisticsReporterThread = new Thread(this.statisticsReporter, "MongoWriter-StatisticsReporter");
+        statisticsReporterThread.setDaemon(true);
+        statisticsReporterThread.start();
+    }
+
+    /**
+     * Submits the current batch of every collection writer whose linger time has expired.
+     * Has to be called regularly by the consumption loop such that batches are also submitted if no further documents arrive.
+     *
+     * @throws InterruptedException Thrown if the calling thread is interrupted while waiting for free space in a queue
+     */
+    public void submitExpiredBatches() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (CollectionWriter collectionWriter : this.collectionWriters) {
+            collectionWriter.submitIfLingerExpired(now);
+        }
+    }
+
+    /**
+     * Marks all collection writers as closing such that batches which cannot be inserted since MongoDB is unavailable are given up after the maximum number of retries (their records are consumed again after the restart).
+     * Can be called by any thread (e.g., when the importer is stopped while the consumption loop waits for a collection writer).
+     */
+    public void beginClose() {
+        for (CollectionWriter collectionWriter : this.collectionWriters) {
+            collectionWriter.beginClose();
+        }
+    }
+
+    /**
+     * Checks if a collection writer could not write a batch due to an unexpected error (the importer has to be stopped such that the records of the batch are consumed again after the restart).
+     *
+     * @return True if a collection writer has failed
+     */
+    public boolean hasFailed() {
+        for (CollectionWriter collectionWriter : this.collectionWriters) {
+            if (collectionWriter.hasFailed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Submits the current batches and stops all collection writers after all document batches in their queues have been written.
+     * Must only be called by the consumption loop.
+     */
+    public void close() {
+        this.statisticsReporter.statisticsReporterRunFlag = false;
+        for (CollectionWriter collectionWriter : this.collectionWriters) {
+            try {
+                collectionWriter.submitCurrentBatch();
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while submitting the last batch of {}.", collectionWriter.getName(), e);
+            }
+            collectionWriter.close();
+        }
+        logger.info("Closed MongoDB writer");
+    }
+
+    /**
+     * Reporter which periodically logs the throughput and latency of all collection writers and the freshness of the written data.
+     */
+    private class StatisticsReporter implements Runnable {
+
+        /**
+         * Flag that indicates if the StatisticsReporter should continue logging or not
+         */
+        private volatile boolean statisticsReporterRunFlag;
+
+        /**
+         * Number of written documents per collection at the time of the last report
+         */
+        private final Map<String, Long> lastDocuments;
+
+        /**
+         * Number of written batches per collection at the time of the last report
+         */
+        private final Map<String, Long> lastBatches;
+
+        /**
+         * Sum of the write latencies (in ns) per collection at the time of the last report
+         */
+        private final Map<String, Long> lastTotalLatencyNanos;
+
+        /**
+         * StatisticsReporter constructor.
+         */
+        private StatisticsReporter() {
+            this.statisticsReporterRunFlag = true;
+            this.lastDocuments = new HashMap<>();
+            this.lastBatches = new HashMap<>();
+            this.lastTotalLatencyNanos = new HashMap<>();
+        }
+
+        /**
+         * Continuously logs the statistics.
+         */
+        @Override
+        public void run() {
+            while (this.statisticsReporterRunFlag) {
+                try {
+                    Thread.sleep(MongoWriter.this.statisticsInterval);
+                } catch (InterruptedException e) {
+                    logger.trace("InterruptedException in StatisticsReporter", e);
+                }
+
+                for (CollectionWriter collectionWriter : MongoWriter.this.collectionWriters) {
+                    String name = collectionWriter.getName();
+                    CollectionWriterStatistics statistics = collectionWriter.getStatistics();
+
+                    long documents = statistics.getDocuments();
+                    long batches = statistics.getBatches();
+                    long totalLatencyNanos = statistics.getTotalLatencyNanos();
+                    long maxLatencyNanos = statistics.getAndResetMaxLatencyNanos();
+
+                    long intervalDocuments = documents - this.lastDocuments.getOrDefault(name, 0L);
+                    long intervalBatches = batches - this.lastBatches.getOrDefault(name, 0L);
+                    long intervalLatencyNanos = totalLatencyNanos - this.lastTotalLatencyNanos.getOrDefault(name, 0L);
+                    this.lastDocuments.put(name, documents);
+                    this.lastBatches.put(name, batches);
+                    this.lastTotalLatencyNanos.put(name, totalLatencyNanos);
+
+                    double documentsPerSecond = intervalDocuments * 1000.0 / MongoWriter.this.statisticsInterval;
+                    double avgLatencyMs = intervalBatches == 0 ? 0.0 : intervalLatencyNanos / 1e6 / intervalBatches;
+                    logger.info("Collection {}: {} documents/s, {} batches, avg latency {} ms, max latency {} ms, queue size {}, {} retries, {} duplicates, and {} failed documents in total", name, String.format("%.1f", documentsPerSecond), intervalBatches, String.format("%.2f", avgLatencyMs), String.format("%.2f", maxLatencyNanos / 1e6), collectionWriter.getQueueSize(), statistics.getRetriedDocuments(), statistics.getDuplicateDocuments(), statistics.getFailedDocuments());
+                }
+                MongoWriter.this.freshnessTracker.logSummary();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.propertiesHelper.PropertyReadHelper;
+
+import java.util.Properties;
+
+/**
+ * Retry settings of the collection writers (mongodb.maxRetries and mongodb.retryBackoff).
+ */
+public final class RetrySettings {
+
+    /**
+     * Maximum number of retries for documents which failed individually with a transient error (and for batches while the writer is closing)
+     */
+    private final int maxRetries;
+
+    /**
+     * Backoff (in ms) before the first retry (doubled for every further retry)
+     */
+    private final long backoff;
+
+    /**
+     * RetrySettings constructor.
+     *
+     * @param maxRetries Maximum number of retries for documents which failed individually with a transient error (and for batches while the writer is closing)
+     * @param backoff    Backoff (in ms) before the first retry (doubled for every further retry)
+     */
+    public RetrySettings(int maxRetries, long backoff) {
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Reads the retry settings from the properties object or dies in case of an exception.
+     *
+     * @param properties Properties object
+     * @return Retry settings
+     */
+    public static RetrySettings readOrDie(Properties properties) {
+        int maxRetries = PropertyReadHelper.readIntOrDie(properties, "mongodb.maxRetries");
+        long backoff = PropertyReadHelper.readLongOrDie(properties, "mongodb.retryBackoff");
+        return new RetrySettings(maxRetries, backoff);
+    }
+
+    /**
+     * Returns the maximum number of retries.
+     *
+     * @return Maximum number of retries for documents which failed individually with a transient error (and for batches while the writer is closing)
+     */
+    public int getMaxRetries() {
+        return this.maxRetries;
+    }
+
+    /**
+     * Returns the backoff before the first retry.
+     *
+     * @return Backoff (in ms) before the first retry (doubled for every further retry)
+     */
+    public long getBackoff() {
+        return this.backoff;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import ch.unibas.dmi.dbis.streamImporter.propertiesHelper.PropertyReadHelper;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Spool settings of the collection writers (spool.*).
+ */
+public final class SpoolSettings {
+
+    /**
+     * Directory for the spools of the collections (null if spooling is disabled)
+     */
+    private final File directory;
+
+    /**
+     * Maximum size (in bytes) of the spooled batches per collection
+     */
+    private final long maxBytes;
+
+    /**
+     * Maximum size (in bytes) of a spool segment
+     */
+    private final long segmentBytes;
+
+    /**
+     * SpoolSettings constructor.
+     *
+     * @param directory    Directory for the spools of the collections (empty if spooling is disabled)
+     * @param maxBytes     Maximum size (in bytes) of the spooled batches per collection
+     * @param segmentBytes Maximum size (in bytes) of a spool segment
+     */
+    public SpoolSettings(String directory, long maxBytes, long segmentBytes) {
+        this.directory = directory.trim().isEmpty() ? null : new File(directory.trim());
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Reads the spool settings from the properties object or dies in case of an exception.
+     *
+     * @param properties Properties object
+     * @return Spool settings
+     */
+    public static SpoolSettings readOrDie(Properties properties) {
+        String directory = PropertyReadHelper.readStringOrDie(properties, "spool.directory");
+        long maxBytes = PropertyReadHelper.readLongOrDie(properties, "spool.maxBytes");
+        long segmentBytes = PropertyReadHelper.readLongOrDie(properties, "spool.segmentBytes");
+        return new SpoolSettings(directory, maxBytes, segmentBytes);
+    }
+
+    /**
+     * Checks if spooling is enabled.
+     *
+     * @return True if the batches which cannot be inserted right away are spooled
+     */
+    public boolean isEnabled() {
+        return this.directory != null;
+    }
+
+    /**
+     * Returns the directory for the spools of the collections.
+     *
+     * @return Directory (null if spooling is disabled)
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Returns the maximum size of the spooled batches per collection.
+     *
+     * @return Maximum size (in bytes) of the spooled batches per collection
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Returns the maximum size of a spool segment.
+     *
+     * @return Maximum size (in bytes) of a spool segment
+     */
+    public long getSegmentBytes() {
+        return this.segmentBytes;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.offsets;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.ReplaceOneModel;
+import org.apache.kafka.common.TopicPartition;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the MongoOffsetStore (with an in-memory offsets collection) and of resuming after a restart from the offsets committed by the OffsetTracker.
+ */
+public class MongoOffsetStoreTest {
+
+    /**
+     * Consumer group of the importer
+     */
+    private static final String GROUP_ID = "streamImporter";
+
+    /**
+     * First test partition
+     */
+    private static final TopicPartition PARTITION_0 = new TopicPartition("states", 0);
+
+    /**
+     * Second test partition
+     */
+    private static final TopicPartition PARTITION_1 = new TopicPartition("states", 1);
+
+    /**
+     * In-memory offsets collection (survives the "restart" of the store)
+     */
+    private InMemoryCollection offsetsCollection;
+
+    /**
+     * Creates an empty offsets collection.
+     */
+    @Before
+    public void setUp() {
+        this.offsetsCollection = new InMemoryCollection();
+    }
+
+    /**
+     * Checks that the offsets are loaded by a new store (i.e., after a restart).
+     */
+    @Test
+    public void testStoredOffsetsAreLoadedAfterRestart() {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        offsets.put(PARTITION_0, 42L);
+        offsets.put(PARTITION_1, 7L);
+        createStore(GROUP_ID).store(offsets);
+
+        assertEquals(offsets, createStore(GROUP_ID).load(Arrays.asList(PARTITION_0, PARTITION_1)));
+    }
+
+    /**
+     * Checks that storing an offset again replaces the stored offset (one document per group and partition).
+     */
+    @Test
+    public void testStoreReplacesOffset() {
+        OffsetStore offsetStore = createStore(GROUP_ID);
+        offsetStore.store(Collections.singletonMap(PARTITION_0, 1L));
+        offsetStore.store(Collections.singletonMap(PARTITION_0, 2L));
+
+        assertEquals(1, this.offsetsCollection.documents.size());
+        assertEquals(Collections.singletonMap(PARTITION_0, 2L), offsetStore.load(Collections.singleton(PARTITION_0)));
+    }
+
+    /**
+     * Checks that only the offsets of the requested partitions are loaded.
+     */
+    @Test
+    public void testLoadOnlyRequestedPartitions() {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        offsets.put(PARTITION_0, 42L);
+        offsets.put(PARTITION_1, 7L);
+        OffsetStore offsetStore = createStore(GROUP_ID);
+        offsetStore.store(offsets);
+
+        assertEquals(Collections.singletonMap(PARTITION_1, 7L), offsetStore.load(Collections.singleton(PARTITION_1)));
+        assertTrue(offsetStore.load(Collections.singleton(new TopicPartition("events", 0))).isEmpty());
+    }
+
+    /**
+     * Checks that the offsets of different consumer groups (e.g., the importer and a backfill) do not interfere.
+     */
+    @Test
+    public void testGroupsAreIsolated() {
+        createStore(GROUP_ID).store(Collections.singletonMap(PARTITION_0, 100L));
+        createStore(GROUP_ID + ".backfill").store(Collections.singletonMap(PARTITION_0, 5L));
+
+        assertEquals(Collections.singletonMap(PARTITION_0, 100L), createStore(GROUP_ID).load(Collections.singleton(PARTITION_0)));
+        assertEquals(Collections.singletonMap(PARTITION_0, 5L), createStore(GROUP_ID + ".backfill").load(Collections.singleton(PARTITION_0)));
+    }
+
+    /**
+     * Checks that storing no offsets does not issue an (invalid) empty bulk write.
+     */
+    @Test
+    public void testStoreNothing() {
+        createStore(GROUP_ID).store(Collections.<TopicPartition, Long>emptyMap());
+        assertTrue(this.offsetsCollection.documents.isEmpty());
+    }
+
+    /**
+     * Checks that a restarted importer resumes at the first record whose document has not been written, i.e., the records which were in flight are consumed again instead of being lost.
+     */
+    @Test
+    public void testRestartResumesAtFirstUnwrittenRecord() {
+        OffsetTracker offsetTracker = new OffsetTracker();
+        OffsetStore offsetStore = createStore(GROUP_ID);
+        for (long offset = 0; offset < 5; ++offset) {
+            offsetTracker.register(new RecordPosition(PARTITION_0, offset));
+        }
+        // Records 0, 1, and 3 are written, 2 and 4 are still in flight when the importer crashes
+        offsetTracker.complete(new RecordPosition(PARTITION_0, 0));
+        offsetTracker.complete(new RecordPosition(PARTITION_0, 1));
+        offsetTracker.complete(new RecordPosition(PARTITION_0, 3));
+        Map<TopicPartition, Long> committableOffsets = offsetTracker.getCommittableOffsets();
+        offsetStore.store(committableOffsets);
+        offsetTracker.markCommitted(committableOffsets);
+
+        assertEquals(Collections.singletonMap(PARTITION_0, 2L), createStore(GROUP_ID).load(Collections.singleton(PARTITION_0)));
+    }
+
+    /**
+     * Creates an offset store on the in-memory offsets collection.
+     *
+     * @param groupId Consumer group identifier
+     * @return Offset store
+     */
+    @SuppressWarnings("unchecked")
+    private OffsetStore createStore(String groupId) {
+        MongoCollection<Document> collection = (MongoCollection<Document>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MongoCollection.class}, this.offsetsCollection);
+        return new MongoOffsetStore(collection, groupId);
+    }
+
+    /**
+     * Returns a proxy which implements an interface by delegating all calls to a handler.
+     *
+     * @param type    Interface
+     * @param handler Handler
+     * @param <T>     Type of the interface
+     * @return Proxy
+     */
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(MongoOffsetStoreTest.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * In-memory implementation of the collection methods used by the MongoOffsetStore (find with an equality filter and bulkWrite with replacements by _id).
+     */
+    private static class InMemoryCollection implements InvocationHandler {
+
+        /**
+         * Documents by _id
+         */
+        private final Map<Object, Document> documents = new LinkedHashMap<>();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "find":
+                    return find((Bson) args[0]);
+                case "bulkWrite":
+                    bulkWrite((List<?>) args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        /**
+         * Finds the documents which match an equality filter.
+         *
+         * @param filter Filter
+         * @return Iterable over the matching documents
+         */
+        private FindIterable<Document> find(Bson filter) {
+            BsonDocument filterDocument = filter.toBsonDocument(Document.class, MongoClientSettings.getDefaultCodecRegistry());
+            final List<Document> matchingDocuments = new ArrayList<>();
+            for (Document document : this.documents.values()) {
+                if (matches(document, filterDocument)) {
+                    matchingDocuments.add(document);
+                }
+            }
+            @SuppressWarnings("unchecked")
+            FindIterable<Document> findIterable = proxy(FindIterable.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("iterator") || method.getName().equals("cursor")) {
+                        final Iterator<Document> iterator = matchingDocuments.iterator();
+                        return proxy(MongoCursor.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                switch (method.getName()) {
+                                    case "hasNext":
+                                        return iterator.hasNext();
+                                    case "next":
+                                        return iterator.next();
+                                    case "close":
+                                        return null;
+                                    default:
+                                        throw new UnsupportedOperationException(method.getName());
+                                }
+                            }
+                        });
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+            return findIterable;
+        }
+
+        /**
+         * Applies replacements (upserts by _id).
+         *
+         * @param writeModels Write models
+         */
+        private void bulkWrite(List<?> writeModels) {
+            if (writeModels.isEmpty()) {
+                // Like MongoDB, which rejects empty bulk writes
+                throw new IllegalArgumentException("writes can not be an empty list");
+            }
+            for (Object writeModel : writeModels) {
+                Document replacement = (Document) ((ReplaceOneModel<?>) writeModel).getReplacement();
+                this.documents.put(replacement.get("_id"), replacement);
+            }
+        }
+
+        /**
+         * Checks if a document matches an equality filter.
+         *
+         * @param document       Document
+         * @param filterDocument Filter (field names and values)
+         * @return True if all fields of the filter are equal
+         */
+        private static boolean matches(Document document, BsonDocument filterDocument) {
+            for (String key : filterDocument.keySet()) {
+                Object value = document.get(key);
+                if (value == null || !value.toString().equals(filterDocument.getString(key).getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
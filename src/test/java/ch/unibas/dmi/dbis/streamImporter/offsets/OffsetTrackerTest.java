@@ -0,0 +1,186 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.offsets;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the OffsetTracker (the committable offset of a partition is the smallest offset whose document has not been durably written yet).
+ */
+public class OffsetTrackerTest {
+
+    /**
+     * First test partition
+     */
+    private static final TopicPartition PARTITION_0 = new TopicPartition("states", 0);
+
+    /**
+     * Second test partition
+     */
+    private static final TopicPartition PARTITION_1 = new TopicPartition("states", 1);
+
+    /**
+     * Tracker under test
+     */
+    private OffsetTracker offsetTracker;
+
+    /**
+     * Creates an empty tracker.
+     */
+    @Before
+    public void setUp() {
+        this.offsetTracker = new OffsetTracker();
+    }
+
+    /**
+     * Checks that nothing is committable before a record has been registered.
+     */
+    @Test
+    public void testNothingCommittableWithoutRecords() {
+        assertTrue(this.offsetTracker.getCommittableOffsets().isEmpty());
+    }
+
+    /**
+     * Checks that the committable offset stays at the smallest pending offset until all records before it are completed (out-of-order completion).
+     */
+    @Test
+    public void testCommittableOffsetIsSmallestPendingOffset() {
+        register(PARTITION_0, 10, 11, 12);
+        assertEquals(Long.valueOf(10), this.offsetTracker.getCommittableOffsets().get(PARTITION_0));
+
+        complete(PARTITION_0, 11, 12);
+        assertEquals(Long.valueOf(10), this.offsetTracker.getCommittableOffsets().get(PARTITION_0));
+
+        complete(PARTITION_0, 10);
+        assertEquals(Long.valueOf(13), this.offsetTracker.getCommittableOffsets().get(PARTITION_0));
+    }
+
+    /**
+     * Checks that completeAll completes every given record.
+     */
+    @Test
+    public void testCompleteAll() {
+        register(PARTITION_0, 0, 1);
+        register(PARTITION_1, 5);
+        this.offsetTracker.completeAll(Arrays.asList(new RecordPosition(PARTITION_0, 0), new RecordPosition(PARTITION_0, 1), new RecordPosition(PARTITION_1, 5)));
+
+        Map<TopicPartition, Long> committableOffsets = this.offsetTracker.getCommittableOffsets();
+        assertEquals(Long.valueOf(2), committableOffsets.get(PARTITION_0));
+        assertEquals(Long.valueOf(6), committableOffsets.get(PARTITION_1));
+    }
+
+    /**
+     * Checks that only the offsets which have changed since they have been marked as committed are returned.
+     */
+    @Test
+    public void testOnlyChangedOffsetsAreCommittable() {
+        register(PARTITION_0, 0);
+        register(PARTITION_1, 0);
+        complete(PARTITION_0, 0);
+        complete(PARTITION_1, 0);
+        this.offsetTracker.markCommitted(this.offsetTracker.getCommittableOffsets());
+        assertTrue(this.offsetTracker.getCommittableOffsets().isEmpty());
+
+        register(PARTITION_1, 1);
+        complete(PARTITION_1, 1);
+        assertEquals(Collections.singletonMap(PARTITION_1, 2L), this.offsetTracker.getCommittableOffsets());
+    }
+
+    /**
+     * Checks that a record which is registered again (e.g., after a seek) does not move the committable offset backwards past the registered records.
+     */
+    @Test
+    public void testRegisteredAgainAfterSeek() {
+        register(PARTITION_0, 5, 6);
+        complete(PARTITION_0, 5, 6);
+        register(PARTITION_0, 3);
+        assertEquals(Long.valueOf(3), this.offsetTracker.getCommittableOffsets().get(PARTITION_0));
+
+        complete(PARTITION_0, 3);
+        assertEquals(Long.valueOf(7), this.offsetTracker.getCommittableOffsets().get(PARTITION_0));
+    }
+
+    /**
+     * Checks that revoked partitions are not committable anymore and that late completions of their records (by the writer threads) are ignored.
+     */
+    @Test
+    public void testRemovedPartitionsAreNotCommittable() {
+        register(PARTITION_0, 0, 1);
+        register(PARTITION_1, 0);
+        this.offsetTracker.removePartitions(Collections.singleton(PARTITION_0));
+
+        complete(PARTITION_0, 0, 1);
+        Map<TopicPartition, Long> committableOffsets = this.offsetTracker.getCommittableOffsets();
+        assertFalse(committableOffsets.containsKey(PARTITION_0));
+        assertEquals(Long.valueOf(0), committableOffsets.get(PARTITION_1));
+
+        this.offsetTracker.markCommitted(Collections.singletonMap(PARTITION_0, 2L));
+        assertFalse(this.offsetTracker.getCommittableOffsets().containsKey(PARTITION_0));
+    }
+
+    /**
+     * Checks that a partition which is assigned again after a revocation is tracked from scratch (its pending records from before the revocation do not block it).
+     */
+    @Test
+    public void testReassignedPartitionStartsFresh() {
+        register(PARTITION_0, 0, 1, 2);
+        complete(PARTITION_0, 1, 2);
+        this.offsetTracker.removePartitions(Collections.singleton(PARTITION_0));
+
+        register(PARTITION_0, 8);
+        assertEquals(Long.valueOf(8), this.offsetTracker.getCommittableOffsets().get(PARTITION_0));
+
+        complete(PARTITION_0, 8);
+        assertEquals(Long.valueOf(9), this.offsetTracker.getCommittableOffsets().get(PARTITION_0));
+    }
+
+    /**
+     * Registers records of a partition.
+     *
+     * @param topicPartition Partition
+     * @param offsets        Offsets of the records
+     */
+    private void register(TopicPartition topicPartition, long... offsets) {
+        for (long offset : offsets) {
+            this.offsetTracker.register(new RecordPosition(topicPartition, offset));
+        }
+    }
+
+    /**
+     * Completes records of a partition.
+     *
+     * @param topicPartition Partition
+     * @param offsets        Offsets of the records
+     */
+    private void complete(TopicPartition topicPartition, long... offsets) {
+        for (long offset : offsets) {
+            this.offsetTracker.complete(new RecordPosition(topicPartition, offset));
+        }
+    }
+}
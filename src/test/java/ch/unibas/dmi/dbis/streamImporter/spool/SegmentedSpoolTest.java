@@ -0,0 +1,226 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.spool;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the SegmentedSpool (FIFO order, segment rollover and deletion, and detection of corrupted records by their checksum).
+ */
+public class SegmentedSpoolTest {
+
+    /**
+     * Size (in bytes) of the record header (length and checksum)
+     */
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Temporary directory for the segments
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Checks that the batches are taken in the order in which they have been appended and that the size is tracked.
+     *
+     * @throws IOException Thrown if the spool cannot be written or read
+     */
+    @Test
+    public void testFifo() throws IOException {
+        SegmentedSpool spool = new SegmentedSpool(this.temporaryFolder.newFolder("spool"), 1 << 20);
+        List<RawBsonDocument> batch1 = createBatch(0, 3);
+        List<RawBsonDocument> batch2 = createBatch(3, 1);
+        spool.append(batch1);
+        spool.append(batch2);
+        assertEquals(2, spool.getNumberOfRecords());
+        assertEquals(2 * HEADER_BYTES + bytesOf(batch1) + bytesOf(batch2), spool.getBytes());
+
+        assertEquals(batch1, spool.take());
+        assertEquals(batch2, spool.take());
+        assertNull(spool.take());
+        assertEquals(0, spool.getNumberOfRecords());
+        assertEquals(0, spool.getBytes());
+    }
+
+    /**
+     * Checks that a new segment is started when a record does not fit into the current segment and that the segments are deleted as soon as all their records have been taken.
+     *
+     * @throws IOException Thrown if the spool cannot be written or read
+     */
+    @Test
+    public void testSegmentRollover() throws IOException {
+        File directory = this.temporaryFolder.newFolder("spool");
+        List<RawBsonDocument> batch = createBatch(0, 2);
+        long recordBytes = HEADER_BYTES + bytesOf(batch);
+        // Two records fit into a segment
+        SegmentedSpool spool = new SegmentedSpool(directory, 2 * recordBytes);
+        for (int i = 0; i < 5; ++i) {
+            spool.append(createBatch(2 * i, 2));
+        }
+        assertEquals(3, countSegments(directory));
+
+        assertEquals(createBatch(0, 2), spool.take());
+        assertEquals(createBatch(2, 2), spool.take());
+        assertEquals(3, countSegments(directory));
+        // The first segment is deleted when the first record of the second segment is taken
+        assertEquals(createBatch(4, 2), spool.take());
+        assertEquals(2, countSegments(directory));
+        assertEquals(createBatch(6, 2), spool.take());
+        assertEquals(createBatch(8, 2), spool.take());
+        assertNull(spool.take());
+        assertEquals(1, countSegments(directory));
+
+        spool.close();
+        assertEquals(0, countSegments(directory));
+    }
+
+    /**
+     * Checks that a record which is larger than the segment size gets a segment of its own.
+     *
+     * @throws IOException Thrown if the spool cannot be written or read
+     */
+    @Test
+    public void testRecordLargerThanSegment() throws IOException {
+        File directory = this.temporaryFolder.newFolder("spool");
+        SegmentedSpool spool = new SegmentedSpool(directory, 16);
+        spool.append(createBatch(0, 4));
+        spool.append(createBatch(4, 4));
+        assertEquals(2, countSegments(directory));
+        assertEquals(createBatch(0, 4), spool.take());
+        assertEquals(createBatch(4, 4), spool.take());
+    }
+
+    /**
+     * Checks that a corrupted record fails with an IOException (instead of returning wrong documents) and that the following records can still be taken.
+     *
+     * @throws IOException Thrown if the spool cannot be written or read
+     */
+    @Test
+    public void testCorruptedRecordIsDetected() throws IOException {
+        File directory = this.temporaryFolder.newFolder("spool");
+        SegmentedSpool spool = new SegmentedSpool(directory, 1 << 20);
+        List<RawBsonDocument> batch1 = createBatch(0, 2);
+        spool.append(batch1);
+        spool.append(createBatch(2, 2));
+
+        // Flip a byte in the payload of the first record
+        File[] segments = directory.listFiles();
+        assertEquals(1, segments.length);
+        try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+            long position = HEADER_BYTES + bytesOf(batch1) - 2;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+
+        try {
+            spool.take();
+            fail("The corrupted record has been taken");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Checksum mismatch"));
+        }
+        assertEquals(createBatch(2, 2), spool.take());
+        assertNull(spool.take());
+    }
+
+    /**
+     * Checks that the leftover segments of a previous run are deleted when the spool is opened (their records are consumed again since their offsets have not been committed).
+     *
+     * @throws IOException Thrown if the spool cannot be written or read
+     */
+    @Test
+    public void testLeftoverSegmentsAreDeleted() throws IOException {
+        File directory = this.temporaryFolder.newFolder("spool");
+        SegmentedSpool previousSpool = new SegmentedSpool(directory, 1 << 20);
+        previousSpool.append(createBatch(0, 2));
+        assertEquals(1, countSegments(directory));
+
+        SegmentedSpool spool = new SegmentedSpool(directory, 1 << 20);
+        assertEquals(0, countSegments(directory));
+        assertNull(spool.take());
+    }
+
+    /**
+     * Creates a batch of documents with consecutive numbers.
+     *
+     * @param first             Number of the first document
+     * @param numberOfDocuments Number of documents
+     * @return Documents
+     */
+    private static List<RawBsonDocument> createBatch(int first, int numberOfDocuments) {
+        List<RawBsonDocument> documents = new ArrayList<>();
+        for (int i = first; i < first + numberOfDocuments; ++i) {
+            BsonDocument document = new BsonDocument("number", new BsonInt32(i)).append("playerId", new BsonString("A" + i));
+            documents.add(new RawBsonDocument(document, new BsonDocumentCodec()));
+        }
+        return documents;
+    }
+
+    /**
+     * Returns the BSON size of a batch.
+     *
+     * @param documents Documents
+     * @return Size (in bytes)
+     */
+    private static long bytesOf(List<RawBsonDocument> documents) {
+        long bytes = 0;
+        for (RawBsonDocument document : documents) {
+            bytes += document.getByteBuffer().remaining();
+        }
+        return bytes;
+    }
+
+    /**
+     * Counts the segment files of a spool.
+     *
+     * @param directory Directory of the segments
+     * @return Number of segments
+     */
+    private static int countSegments(File directory) {
+        int numberOfSegments = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".spool")) {
+                    ++numberOfSegments;
+                }
+            }
+        }
+        return numberOfSegments;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * StreamTeam
+ * Copyright (C) 2019  University of Basel
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ch.unibas.dmi.dbis.streamImporter.writer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the BatchSizeController (additive increase after fast full batches, multiplicative decrease after slow or retried batches, both within the bounds).
+ */
+public class BatchSizeControllerTest {
+
+    /**
+     * Target latency (in ms) of the tested controllers
+     */
+    private static final long TARGET_LATENCY = 100;
+
+    /**
+     * Latency (in ns) below the target
+     */
+    private static final long FAST = 10 * 1000000L;
+
+    /**
+     * Latency (in ns) above the target
+     */
+    private static final long SLOW = 500 * 1000000L;
+
+    /**
+     * Checks that the controller starts with the initial batch size.
+     */
+    @Test
+    public void testInitialBatchSize() {
+        assertEquals(1000, new BatchSizeController("states", 1000, 50, 20000, TARGET_LATENCY).getBatchSize());
+    }
+
+    /**
+     * Checks that the batch size grows by a tenth of the initial batch size after every fast full batch.
+     */
+    @Test
+    public void testAdditiveIncrease() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 50, 20000, TARGET_LATENCY);
+        controller.onBatchWritten(1000, FAST, false);
+        assertEquals(1100, controller.getBatchSize());
+        controller.onBatchWritten(1100, FAST, false);
+        assertEquals(1200, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that batches which are not full (submitted due to their linger time or BSON size) do not change the batch size.
+     */
+    @Test
+    public void testPartialBatchKeepsBatchSize() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 50, 20000, TARGET_LATENCY);
+        controller.onBatchWritten(999, FAST, false);
+        assertEquals(1000, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that the batch size is halved if the latency exceeds the target (also for batches which are not full).
+     */
+    @Test
+    public void testMultiplicativeDecreaseOnSlowBatch() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 50, 20000, TARGET_LATENCY);
+        controller.onBatchWritten(10, SLOW, false);
+        assertEquals(500, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that the batch size is halved if documents had to be retried (even if the batch was fast).
+     */
+    @Test
+    public void testMultiplicativeDecreaseOnRetry() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 50, 20000, TARGET_LATENCY);
+        controller.onBatchWritten(1000, FAST, true);
+        assertEquals(500, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that the batch size does not grow above the maximum batch size.
+     */
+    @Test
+    public void testUpperBound() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 50, 1250, TARGET_LATENCY);
+        for (int i = 0; i < 10; ++i) {
+            controller.onBatchWritten(controller.getBatchSize(), FAST, false);
+        }
+        assertEquals(1250, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that the batch size does not shrink below the minimum batch size.
+     */
+    @Test
+    public void testLowerBound() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 50, 20000, TARGET_LATENCY);
+        for (int i = 0; i < 10; ++i) {
+            controller.onBatchWritten(controller.getBatchSize(), SLOW, false);
+        }
+        assertEquals(50, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that the batch size recovers after a decrease.
+     */
+    @Test
+    public void testRecoveryAfterDecrease() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 50, 20000, TARGET_LATENCY);
+        controller.onBatchWritten(1000, SLOW, false);
+        assertEquals(500, controller.getBatchSize());
+        for (int i = 0; i < 5; ++i) {
+            controller.onBatchWritten(controller.getBatchSize(), FAST, false);
+        }
+        assertEquals(1000, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that the batch size is fixed if the bounds are equal to the initial batch size (adaptive batching disabled or backfill).
+     */
+    @Test
+    public void testFixedBatchSize() {
+        BatchSizeController controller = new BatchSizeController("states", 1000, 1000, 1000, TARGET_LATENCY);
+        controller.onBatchWritten(1000, FAST, false);
+        assertEquals(1000, controller.getBatchSize());
+        controller.onBatchWritten(1000, SLOW, true);
+        assertEquals(1000, controller.getBatchSize());
+    }
+
+    /**
+     * Checks that inconsistent bounds are corrected (the initial batch size lies within the bounds and the minimum is at least 1).
+     */
+    @Test
+    public void testBoundsIncludeInitialBatchSize() {
+        BatchSizeController controller = new BatchSizeController("states", 10, 0, 5, TARGET_LATENCY);
+        // The maximum is raised to the initial batch size
+        controller.onBatchWritten(10, FAST, false);
+        assertEquals(10, controller.getBatchSize());
+        for (int i = 0; i < 10; ++i) {
+            controller.onBatchWritten(controller.getBatchSize(), SLOW, false);
+        }
+        assertEquals(1, controller.getBatchSize());
+    }
+}